@@ -0,0 +1,47 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.nebelnidas.kfdl.core.EpisodeType;
+import com.github.nebelnidas.kfdl.core.KontrafunkScraper;
+import com.github.nebelnidas.kfdl.core.KontrafunkScraper.WebsiteEpisodeData;
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
+import com.github.nebelnidas.kfdl.core.StreamingEpisodePage;
+
+/**
+ * Measures parsing the stored episode page and extracting the episode data from it, without
+ * the HTTP round trip {@link EpisodePageBenchmark} includes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EpisodeExtractionBenchmark {
+	private KontrafunkScraper scraper;
+	private SpreakerEpisodeData spreakerData;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		String html = EpisodePageBenchmark.readFixture("episode-page.html");
+
+		scraper = new KontrafunkScraper(url -> StreamingEpisodePage.parse(new StringReader(html), KontrafunkScraper.SECTION_IDS), null);
+		spreakerData = new SpreakerEpisodeData("KONTRAFUNK aktuell vom 26. April 2024", null, "", LocalDate.of(2024, 4, 26),
+				LocalDate.of(2024, 4, 26), "", "audio/mpeg", 0, 0, EpisodeType.AKTUELL);
+	}
+
+	@Benchmark
+	public WebsiteEpisodeData extract() throws IOException {
+		return scraper.getEpisodeInfo("https://kontrafunk.radio/episode", spreakerData);
+	}
+}
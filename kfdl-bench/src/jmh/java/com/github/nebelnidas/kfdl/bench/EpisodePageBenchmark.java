@@ -0,0 +1,94 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.nebelnidas.kfdl.core.EpisodeType;
+import com.github.nebelnidas.kfdl.core.HtmlUnitEpisodePageLoader;
+import com.github.nebelnidas.kfdl.core.KontrafunkScraper;
+import com.github.nebelnidas.kfdl.core.KontrafunkScraper.WebsiteEpisodeData;
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
+import com.github.nebelnidas.kfdl.core.StreamingEpisodePageLoader;
+
+/**
+ * Compares the episode page extraction engines on a stored page served from localhost.
+ * Run with {@code gradlew :kfdl-bench:jmh}; the GC profiler reports the allocations per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EpisodePageBenchmark {
+	@Param({"STREAMING", "HTMLUNIT"})
+	public String engine;
+
+	private HttpServer server;
+	private String url;
+	private KontrafunkScraper scraper;
+	private SpreakerEpisodeData spreakerData;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		byte[] body = readFixture("episode-page.html").getBytes(StandardCharsets.UTF_8);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/episode", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/episode";
+
+		scraper = switch (engine) {
+			case "STREAMING" -> new KontrafunkScraper(new StreamingEpisodePageLoader(KontrafunkScraper.SECTION_IDS), null);
+			case "HTMLUNIT" -> new KontrafunkScraper(new HtmlUnitEpisodePageLoader(), null);
+			default -> throw new IllegalArgumentException(engine);
+		};
+		spreakerData = new SpreakerEpisodeData("KONTRAFUNK aktuell vom 26. April 2024", null, "", LocalDate.of(2024, 4, 26),
+				LocalDate.of(2024, 4, 26), "", "audio/mpeg", 0, 0, EpisodeType.AKTUELL);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	/**
+	 * Fetch and extraction of a whole page, the way {@code Kfdl} uses the scraper.
+	 */
+	@Benchmark
+	public WebsiteEpisodeData fetchAndExtract() throws IOException {
+		return scraper.getEpisodeInfo(url, spreakerData);
+	}
+
+	static String readFixture(String name) throws IOException {
+		try (InputStream in = EpisodePageBenchmark.class.getClassLoader().getResourceAsStream(name)) {
+			if (in == null) {
+				throw new IOException("Missing fixture " + name);
+			}
+
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
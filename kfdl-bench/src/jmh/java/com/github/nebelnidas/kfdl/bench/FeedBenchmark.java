@@ -0,0 +1,98 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor;
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
+
+/**
+ * Measures parsing a synthetic Spreaker feed, including the title normalization each item goes through.
+ * The titles cycle through the spellings the real feed has used over time, so every normalization
+ * step is exercised.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedBenchmark {
+	private static final DateTimeFormatter pubDateFormatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy", Locale.ENGLISH);
+	private static final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMMM", Locale.GERMAN);
+
+	@Param({"1000", "10000"})
+	public int items;
+
+	private byte[] feed;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<rss version=\"2.0\" xmlns:itunes=\"http://www.itunes.com/dtds/podcast-1.0.dtd\"><channel>\n"
+				+ "<title>Kontrafunk</title>\n");
+		LocalDate date = LocalDate.of(2024, 12, 31);
+
+		for (int i = 0; i < items; i++, date = date.minusDays(1)) {
+			builder.append("<item><title>").append(getTitle(date, i)).append("</title>")
+					.append("<description><![CDATA[ Die Sendung vom ").append(date).append(" mit allen Beiträgen. ]]></description>")
+					.append("<guid>https://api.spreaker.com/episode/").append(50_000_000 + i).append("</guid>")
+					.append("<pubDate>").append(date.format(pubDateFormatter)).append(" 06:00:00 +0000</pubDate>")
+					.append("<enclosure url=\"https://api.spreaker.com/download/episode/").append(50_000_000 + i)
+					.append("/kontrafunk_aktuell.mp3\" length=\"").append(80_000_000 + i).append("\" type=\"audio/mpeg\"/>")
+					.append("<itunes:duration>").append(3600 + i % 600).append("</itunes:duration></item>\n");
+		}
+
+		feed = builder.append("</channel></rss>\n").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String getTitle(LocalDate date, int index) {
+		int day = date.getDayOfMonth();
+		int month = date.getMonthValue();
+		int year = date.getYear();
+
+		if (year == 2022 && index % 2 == 0) {
+			return String.format(Locale.ROOT, "KONTRAFUNK aktuell %d.%d.%02d", day, month, year % 100);
+		}
+
+		return switch (index % 5) {
+			case 0 -> String.format(Locale.ROOT, "KONTRAFUNK aktuell vom %d. %s %d", day, date.format(monthFormatter), year);
+			case 1 -> String.format(Locale.ROOT, "Kontrafunk aktuell vom %d.%d.%d", day, month, year);
+			case 2 -> String.format(Locale.ROOT, "KONTRAFUNK aktuell vom %02d.%02d.%d", day, month, year);
+			case 3 -> String.format(Locale.ROOT, "KONTRAFUNK  aktuell am %02d. %s %d", day, date.format(monthFormatter), year);
+			default -> String.format(Locale.ROOT, "KONTRAFUNK: der Wochenrückblick vom %02d.%d.%d", day, month, year);
+		};
+	}
+
+	@Benchmark
+	public int parseFeed() throws XMLStreamException, IOException {
+		int count = 0;
+
+		try (InputStream in = new ByteArrayInputStream(feed)) {
+			Iterator<SpreakerEpisodeData> iterator = SpreakerEpisodeExtractor.iterateItems(in);
+
+			while (iterator.hasNext()) {
+				iterator.next();
+				count++;
+			}
+		}
+
+		return count;
+	}
+}
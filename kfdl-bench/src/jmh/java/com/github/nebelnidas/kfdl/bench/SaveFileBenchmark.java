@@ -0,0 +1,96 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.nebelnidas.kfdl.core.DownloadState;
+import com.github.nebelnidas.kfdl.core.SaveFileEntry;
+import com.github.nebelnidas.kfdl.core.SaveFileHandler;
+
+/**
+ * Measures loading, updating and saving save files of different sizes. Writes skip the fsync,
+ * so the numbers show kfdl's own overhead rather than the disk's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveFileBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int entries;
+
+	private Path dir;
+	private Path saveFile;
+	private SaveFileHandler handler;
+	private int nextUpdate;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("kfdl-bench");
+		saveFile = dir.resolve("kfdl-state.txt");
+		handler = open();
+
+		for (int i = 0; i < entries; i++) {
+			handler.add(createEntry(i, DownloadState.SUCCESSFUL));
+		}
+
+		handler.flush().join();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		handler.close();
+
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private SaveFileHandler open() {
+		return new SaveFileHandler(saveFile, Duration.ofSeconds(1), false);
+	}
+
+	private static SaveFileEntry createEntry(int index, DownloadState state) {
+		return new SaveFileEntry(LocalDate.of(2022, 1, 1).plusDays(index),
+				"https://kontrafunk.radio/images/audio/sendungen/" + index + "_Kontrafunk_aktuell.mp3", state);
+	}
+
+	/**
+	 * Reads the whole save file, the way every run starts.
+	 */
+	@Benchmark
+	public Set<SaveFileEntry> load() {
+		try (SaveFileHandler loader = open()) {
+			return loader.getEpisodes();
+		}
+	}
+
+	/**
+	 * Records a single state change and waits for it to be appended, compacting the file now and then.
+	 */
+	@Benchmark
+	public void addAndFlush() {
+		int index = nextUpdate++ % entries;
+		handler.add(createEntry(index, nextUpdate % 2 == 0 ? DownloadState.SUCCESSFUL : DownloadState.DOWNLOADING));
+		handler.flush().join();
+	}
+}
@@ -0,0 +1,137 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.nebelnidas.kfdl.core.ThreadingMode;
+
+/**
+ * Compares the fixed thread pool {@code Downloader} used to have against the semaphore-bounded
+ * executors of each {@link ThreadingMode}, with many blocking requests to a slow localhost server
+ * in flight. The peak number of platform threads is reported as a secondary result. Virtual threads
+ * need the benchmark JVM to be Java 21 or newer, otherwise {@code VIRTUAL} falls back to platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ThreadingBenchmark.requestsPerInvocation)
+public class ThreadingBenchmark {
+	static final int requestsPerInvocation = 2000;
+	private static final long responseDelayMillis = 20;
+
+	@Param({"FIXED_POOL", "PLATFORM", "VIRTUAL"})
+	public String executor;
+
+	@Param({"64", "512"})
+	public int concurrency;
+
+	private HttpServer server;
+	private ScheduledExecutorService responseScheduler;
+	private HttpClient client;
+	private HttpRequest request;
+	private ExecutorService executorService;
+	private Semaphore permits;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		responseScheduler = Executors.newSingleThreadScheduledExecutor();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		// Answer asynchronously, so the server itself doesn't need a thread per pending request
+		server.createContext("/slow", exchange -> responseScheduler.schedule(() -> {
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+			return null;
+		}, responseDelayMillis, TimeUnit.MILLISECONDS));
+		server.start();
+
+		client = HttpClient.newHttpClient();
+		request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort() + "/slow")).build();
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+
+		if (executor.equals("FIXED_POOL")) {
+			executorService = Executors.newFixedThreadPool(concurrency);
+		} else {
+			executorService = ThreadingMode.valueOf(executor).createExecutor("bench");
+			permits = new Semaphore(concurrency);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executorService.shutdownNow();
+		server.stop(0);
+		responseScheduler.shutdownNow();
+	}
+
+	@Benchmark
+	public void blockingRequests(ThreadCounters counters) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(requestsPerInvocation);
+
+		for (int i = 0; i < requestsPerInvocation; i++) {
+			if (permits == null) {
+				executorService.submit(() -> send(done));
+			} else {
+				permits.acquire();
+				executorService.submit(() -> {
+					try {
+						send(done);
+					} finally {
+						permits.release();
+					}
+				});
+			}
+		}
+
+		done.await();
+	}
+
+	private void send(CountDownLatch done) {
+		try {
+			client.send(request, HttpResponse.BodyHandlers.discarding());
+		} catch (IOException | InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			done.countDown();
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class ThreadCounters {
+		/**
+		 * The most platform threads alive at once since the trial started.
+		 */
+		public long peakPlatformThreads() {
+			return ManagementFactory.getThreadMXBean().getPeakThreadCount();
+		}
+	}
+}
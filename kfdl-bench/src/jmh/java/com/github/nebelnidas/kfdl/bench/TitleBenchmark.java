@@ -0,0 +1,73 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.nebelnidas.kfdl.core.TitleNormalizer;
+
+/**
+ * Measures the title normalization and the date parsing every feed item goes through, on the titles from
+ * {@code titles.tsv}: real titles the feed had, including those corrected from the override table, and
+ * the spellings it used over the years. Each invocation handles the next title, so the result is the
+ * average over all of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TitleBenchmark {
+	private String[] titles;
+	private LocalDate[] dates;
+	private String[] normalizedTitles;
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<String[]> rows = new ArrayList<>();
+
+		for (String line : EpisodePageBenchmark.readFixture("titles.tsv").split("\n")) {
+			if (!line.isBlank() && !line.startsWith("#")) {
+				rows.add(line.split("\t"));
+			}
+		}
+
+		titles = new String[rows.size()];
+		dates = new LocalDate[rows.size()];
+		normalizedTitles = new String[rows.size()];
+
+		for (int i = 0; i < rows.size(); i++) {
+			String[] row = rows.get(i);
+			dates[i] = LocalDate.parse(row[0]);
+			titles[i] = row[1];
+			normalizedTitles[i] = row[2];
+		}
+	}
+
+	private int next() {
+		int current = index;
+		index = current + 1 == titles.length ? 0 : current + 1;
+		return current;
+	}
+
+	@Benchmark
+	public String normalize() {
+		int i = next();
+		return TitleNormalizer.normalize(titles[i], dates[i]);
+	}
+
+	@Benchmark
+	public LocalDate getDate() {
+		return TitleNormalizer.getDate(normalizedTitles[next()]);
+	}
+}
@@ -0,0 +1,93 @@
+package com.github.nebelnidas.kfdl.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.nebelnidas.kfdl.core.TransferEngine;
+
+/**
+ * Compares writing a download through a fresh heap buffer per transfer, as {@code Downloader} used to,
+ * against the pooled direct buffers of {@link TransferEngine}. The body comes from memory, so only
+ * the copying and writing are measured; the file is rewritten from the start by each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferBenchmark {
+	private static final int bodySize = 64 * 1024 * 1024;
+
+	@Param({"HEAP", "POOLED_DIRECT"})
+	public String path;
+
+	@Param({"16384", "65536", "262144"})
+	public int bufferSize;
+
+	private byte[] body;
+	private Path file;
+	private TransferEngine engine;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		body = new byte[bodySize];
+		new Random(0).nextBytes(body);
+		file = Files.createTempFile("kfdl-bench", ".part");
+		engine = new TransferEngine(bufferSize, 4L * bufferSize, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long transfer() throws IOException, InterruptedException {
+		try (InputStream in = new ByteArrayInputStream(body);
+				ReadableByteChannel channel = Channels.newChannel(in);
+				FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (path.equals("HEAP")) {
+				return heapTransfer(channel, out);
+			}
+
+			TransferEngine.preallocate(out, bodySize);
+			return engine.transfer(channel, out, 0, Long.MAX_VALUE, (data, position) -> true);
+		}
+	}
+
+	private long heapTransfer(ReadableByteChannel in, FileChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		long transferred = 0;
+
+		while (in.read(buffer) >= 0) {
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				transferred += out.write(buffer);
+			}
+
+			buffer.clear();
+		}
+
+		return transferred;
+	}
+}
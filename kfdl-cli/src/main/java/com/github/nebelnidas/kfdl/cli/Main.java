@@ -2,7 +2,9 @@ package com.github.nebelnidas.kfdl.cli;
 
 import org.tinylog.jul.JulTinylogBridge;
 
+import com.github.nebelnidas.kfdl.cli.provider.builtin.QueryCliCommandProvider;
 import com.github.nebelnidas.kfdl.cli.provider.builtin.RunCliCommandProvider;
+import com.github.nebelnidas.kfdl.cli.provider.builtin.ServeCliCommandProvider;
 
 public class Main {
 	public static void main(String[] args) {
@@ -15,6 +17,8 @@ public class Main {
 
 		// Register all default providers.
 		kfdlCli.registerCommandProvider(new RunCliCommandProvider());
+		kfdlCli.registerCommandProvider(new QueryCliCommandProvider());
+		kfdlCli.registerCommandProvider(new ServeCliCommandProvider());
 
 		// Parse, handle errors, delegate to the correct provider.
 		kfdlCli.processArgs(args);
@@ -6,5 +6,33 @@ package com.github.nebelnidas.kfdl.cli.provider.builtin;
 public class BuiltinCliParameters {
 	public static final String WORKING_DIRECTORY = "--working-directory";
 	public static final String SAVE_FILE = "--save-file";
+	public static final String SAVE_COMMIT_WINDOW = "--save-commit-window";
+	public static final String SAVE_FILE_FSYNC = "--save-file-fsync";
+	public static final String MIN_PARALLEL_DOWNLOADS = "--min-parallel-downloads";
 	public static final String MAX_PARALLEL_DOWNLOADS = "--max-parallel-downloads";
+	public static final String MAX_CONNECTIONS_PER_DOWNLOAD = "--max-connections-per-download";
+	public static final String MAX_DOWNLOAD_ATTEMPTS = "--max-download-attempts";
+	public static final String TRANSFER_BUFFER_SIZE = "--transfer-buffer-size";
+	public static final String TRANSFER_MEMORY = "--transfer-memory";
+	public static final String BANDWIDTH_LIMIT = "--bandwidth-limit";
+	public static final String HOST_BANDWIDTH_LIMIT = "--host-bandwidth-limit";
+	public static final String MAX_PARALLEL_SCRAPES = "--max-parallel-scrapes";
+	public static final String MAX_PARALLEL_PROBES = "--max-parallel-probes";
+	public static final String MAX_HEAD_REQUESTS_PER_EPISODE = "--max-head-requests-per-episode";
+	public static final String MAX_REQUESTS_PER_HOST = "--max-requests-per-host";
+	public static final String MIN_REQUEST_SPACING = "--min-request-spacing";
+	public static final String PIPELINE_QUEUE_SIZE = "--pipeline-queue-size";
+	public static final String INCREMENTAL_SYNC_THRESHOLD = "--incremental-sync-threshold";
+	public static final String SCRAPER_ENGINE = "--scraper-engine";
+	public static final String THREADING_MODE = "--threading-mode";
+	public static final String METRICS_FILE = "--metrics-file";
+	public static final String METRICS_INTERVAL = "--metrics-interval";
+	public static final String HOST = "--host";
+	public static final String GUEST = "--guest";
+	public static final String PERSON = "--person";
+	public static final String TAG = "--tag";
+	public static final String FROM = "--from";
+	public static final String TO = "--to";
+	public static final String PORT = "--port";
+	public static final String BIND_ADDRESS = "--bind-address";
 }
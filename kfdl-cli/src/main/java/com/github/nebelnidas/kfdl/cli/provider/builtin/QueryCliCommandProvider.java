@@ -0,0 +1,99 @@
+package com.github.nebelnidas.kfdl.cli.provider.builtin;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import com.github.nebelnidas.kfdl.cli.KfdlCli;
+import com.github.nebelnidas.kfdl.cli.provider.CliCommandProvider;
+import com.github.nebelnidas.kfdl.core.EpisodeCatalog;
+import com.github.nebelnidas.kfdl.core.EpisodeCatalog.Episode;
+import com.github.nebelnidas.kfdl.core.Person;
+
+/**
+ * Provides the {@code query} command, which lists the cataloged episodes matching all given criteria.
+ * Dates may be given as {@code yyyy}, {@code yyyy-MM} or {@code yyyy-MM-dd}.
+ */
+public class QueryCliCommandProvider implements CliCommandProvider {
+	private static final String commandName = "query";
+	private final QueryCommand command = new QueryCommand();
+
+	@Parameters(commandNames = {commandName})
+	class QueryCommand {
+		@Parameter(names = {BuiltinCliParameters.WORKING_DIRECTORY}, required = true)
+		Path workingDirectory;
+
+		@Parameter(names = {BuiltinCliParameters.HOST})
+		List<String> hosts = new ArrayList<>();
+
+		@Parameter(names = {BuiltinCliParameters.GUEST})
+		List<String> guests = new ArrayList<>();
+
+		@Parameter(names = {BuiltinCliParameters.PERSON})
+		List<String> people = new ArrayList<>();
+
+		@Parameter(names = {BuiltinCliParameters.TAG})
+		List<String> tags = new ArrayList<>();
+
+		@Parameter(names = {BuiltinCliParameters.FROM})
+		String from;
+
+		@Parameter(names = {BuiltinCliParameters.TO})
+		String to;
+	}
+
+	@Override
+	public String getCommandName() {
+		return commandName;
+	}
+
+	@Override
+	public Object getDataHolder() {
+		return command;
+	}
+
+	@Override
+	public void processArgs() {
+		long start = System.nanoTime();
+		EpisodeCatalog catalog = new EpisodeCatalog(command.workingDirectory.resolve("kfdl-catalog.txt"));
+		long loaded = System.nanoTime();
+		List<Episode> episodes = catalog.query(EpisodeCatalog.Query.builder()
+				.from(command.from == null ? null : parseDate(command.from, false))
+				.to(command.to == null ? null : parseDate(command.to, true))
+				.hosts(command.hosts)
+				.guests(command.guests)
+				.people(command.people)
+				.tags(command.tags)
+				.build());
+		long queried = System.nanoTime();
+
+		for (Episode episode : episodes) {
+			System.out.println(episode.date() + "\t" + episode.title() + "\t" + episode.host().getName()
+					+ (episode.guests().isEmpty() ? "" : " with " + episode.guests().stream().map(Person::getName).collect(Collectors.joining(", "))));
+		}
+
+		KfdlCli.LOGGER.info("{} of {} episodes matched (loaded in {} ms, queried in {} ms)", episodes.size(), catalog.size(),
+				(loaded - start) / 1_000_000, (queried - loaded) / 1_000_000);
+	}
+
+	/**
+	 * Parses a full or partial date; partial dates stand for their first or, if {@code end} is set, last day.
+	 */
+	private static LocalDate parseDate(String value, boolean end) {
+		String[] parts = value.split("-");
+
+		return switch (parts.length) {
+			case 1 -> end ? LocalDate.of(Integer.parseInt(parts[0]), 12, 31) : LocalDate.of(Integer.parseInt(parts[0]), 1, 1);
+			case 2 -> {
+				LocalDate month = LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), 1);
+				yield end ? month.withDayOfMonth(month.lengthOfMonth()) : month;
+			}
+			default -> LocalDate.parse(value);
+		};
+	}
+}
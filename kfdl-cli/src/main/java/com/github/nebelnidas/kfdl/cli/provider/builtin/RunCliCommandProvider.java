@@ -2,6 +2,10 @@ package com.github.nebelnidas.kfdl.cli.provider.builtin;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -9,7 +13,11 @@ import lombok.SneakyThrows;
 
 import com.github.nebelnidas.kfdl.cli.KfdlCli;
 import com.github.nebelnidas.kfdl.cli.provider.CliCommandProvider;
+import com.github.nebelnidas.kfdl.core.BandwidthSchedule;
 import com.github.nebelnidas.kfdl.core.Kfdl;
+import com.github.nebelnidas.kfdl.core.KfdlOptions;
+import com.github.nebelnidas.kfdl.core.ScraperEngine;
+import com.github.nebelnidas.kfdl.core.ThreadingMode;
 
 /**
  * Provides the default {@code automatch} command.
@@ -26,8 +34,68 @@ public class RunCliCommandProvider implements CliCommandProvider {
 		@Parameter(names = {BuiltinCliParameters.SAVE_FILE})
 		Path saveFile;
 
+		@Parameter(names = {BuiltinCliParameters.SAVE_COMMIT_WINDOW})
+		long saveCommitWindowMillis = 1000;
+
+		@Parameter(names = {BuiltinCliParameters.SAVE_FILE_FSYNC}, arity = 1)
+		boolean saveFileFsync = true;
+
+		@Parameter(names = {BuiltinCliParameters.MIN_PARALLEL_DOWNLOADS})
+		int minParallelDownloads = 1;
+
 		@Parameter(names = {BuiltinCliParameters.MAX_PARALLEL_DOWNLOADS})
 		int maxParallelDownloads = 2;
+
+		@Parameter(names = {BuiltinCliParameters.MAX_CONNECTIONS_PER_DOWNLOAD})
+		int maxConnectionsPerDownload = 1;
+
+		@Parameter(names = {BuiltinCliParameters.MAX_DOWNLOAD_ATTEMPTS})
+		int maxDownloadAttempts = 5;
+
+		@Parameter(names = {BuiltinCliParameters.TRANSFER_BUFFER_SIZE})
+		int transferBufferKib = 256;
+
+		@Parameter(names = {BuiltinCliParameters.TRANSFER_MEMORY})
+		int transferMemoryMib = 16;
+
+		@Parameter(names = {BuiltinCliParameters.BANDWIDTH_LIMIT})
+		String bandwidthLimit;
+
+		@Parameter(names = {BuiltinCliParameters.HOST_BANDWIDTH_LIMIT})
+		List<String> hostBandwidthLimits = new ArrayList<>();
+
+		@Parameter(names = {BuiltinCliParameters.MAX_PARALLEL_SCRAPES})
+		int maxParallelScrapes = 4;
+
+		@Parameter(names = {BuiltinCliParameters.MAX_PARALLEL_PROBES})
+		int maxParallelProbes = 4;
+
+		@Parameter(names = {BuiltinCliParameters.MAX_HEAD_REQUESTS_PER_EPISODE})
+		int maxHeadRequestsPerEpisode = 4;
+
+		@Parameter(names = {BuiltinCliParameters.MAX_REQUESTS_PER_HOST})
+		int maxRequestsPerHost = 8;
+
+		@Parameter(names = {BuiltinCliParameters.MIN_REQUEST_SPACING})
+		long minRequestSpacingMillis = 100;
+
+		@Parameter(names = {BuiltinCliParameters.PIPELINE_QUEUE_SIZE})
+		int pipelineQueueSize = 8;
+
+		@Parameter(names = {BuiltinCliParameters.INCREMENTAL_SYNC_THRESHOLD})
+		int incrementalSyncThreshold = 10;
+
+		@Parameter(names = {BuiltinCliParameters.SCRAPER_ENGINE})
+		ScraperEngine scraperEngine = ScraperEngine.STREAMING;
+
+		@Parameter(names = {BuiltinCliParameters.THREADING_MODE})
+		ThreadingMode threadingMode = ThreadingMode.AUTO;
+
+		@Parameter(names = {BuiltinCliParameters.METRICS_FILE})
+		Path metricsFile;
+
+		@Parameter(names = {BuiltinCliParameters.METRICS_INTERVAL})
+		long metricsIntervalMillis = 15000;
 	}
 
 	@Override
@@ -51,7 +119,43 @@ public class RunCliCommandProvider implements CliCommandProvider {
 			Files.createDirectories(command.workingDirectory);
 		}
 
-		Kfdl downloader = new Kfdl(command.workingDirectory, command.saveFile, command.maxParallelDownloads);
+		Map<String, BandwidthSchedule> hostBandwidthLimits = new HashMap<>();
+
+		for (String hostLimit : command.hostBandwidthLimits) {
+			int separator = hostLimit.indexOf('=');
+
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Expected <host>=<schedule> for " + BuiltinCliParameters.HOST_BANDWIDTH_LIMIT + ": " + hostLimit);
+			}
+
+			hostBandwidthLimits.put(hostLimit.substring(0, separator), BandwidthSchedule.parse(hostLimit.substring(separator + 1)));
+		}
+
+		Kfdl downloader = new Kfdl(KfdlOptions.builder()
+				.workingDir(command.workingDirectory)
+				.saveFile(command.saveFile)
+				.saveCommitWindowMillis(command.saveCommitWindowMillis)
+				.fsyncSaveFile(command.saveFileFsync)
+				.minParallelDownloads(command.minParallelDownloads)
+				.maxParallelDownloads(command.maxParallelDownloads)
+				.maxConnectionsPerDownload(command.maxConnectionsPerDownload)
+				.maxDownloadAttempts(command.maxDownloadAttempts)
+				.transferBufferSize(command.transferBufferKib * 1024)
+				.transferMemoryBudget(command.transferMemoryMib * 1024L * 1024)
+				.bandwidthLimit(command.bandwidthLimit == null ? BandwidthSchedule.UNLIMITED : BandwidthSchedule.parse(command.bandwidthLimit))
+				.hostBandwidthLimits(hostBandwidthLimits)
+				.maxParallelScrapes(command.maxParallelScrapes)
+				.maxParallelProbes(command.maxParallelProbes)
+				.maxHeadRequestsPerEpisode(command.maxHeadRequestsPerEpisode)
+				.maxRequestsPerHost(command.maxRequestsPerHost)
+				.minRequestSpacingMillis(command.minRequestSpacingMillis)
+				.pipelineQueueSize(command.pipelineQueueSize)
+				.incrementalSyncThreshold(command.incrementalSyncThreshold)
+				.scraperEngine(command.scraperEngine)
+				.threadingMode(command.threadingMode)
+				.metricsFile(command.metricsFile)
+				.metricsIntervalMillis(command.metricsIntervalMillis)
+				.build());
 		downloader.run();
 
 		KfdlCli.LOGGER.info("Done!");
@@ -0,0 +1,56 @@
+package com.github.nebelnidas.kfdl.cli.provider.builtin;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import lombok.SneakyThrows;
+
+import com.github.nebelnidas.kfdl.cli.KfdlCli;
+import com.github.nebelnidas.kfdl.cli.provider.CliCommandProvider;
+import com.github.nebelnidas.kfdl.core.PodcastServer;
+import com.github.nebelnidas.kfdl.core.ThreadingMode;
+
+/**
+ * Provides the {@code serve} command, which serves the downloaded episodes as a podcast feed until the process is stopped.
+ */
+public class ServeCliCommandProvider implements CliCommandProvider {
+	private static final String commandName = "serve";
+	private final ServeCommand command = new ServeCommand();
+
+	@Parameters(commandNames = {commandName})
+	class ServeCommand {
+		@Parameter(names = {BuiltinCliParameters.WORKING_DIRECTORY}, required = true)
+		Path workingDirectory;
+
+		@Parameter(names = {BuiltinCliParameters.BIND_ADDRESS})
+		String bindAddress = "0.0.0.0";
+
+		@Parameter(names = {BuiltinCliParameters.PORT})
+		int port = 8080;
+
+		@Parameter(names = {BuiltinCliParameters.THREADING_MODE})
+		ThreadingMode threadingMode = ThreadingMode.AUTO;
+	}
+
+	@Override
+	public String getCommandName() {
+		return commandName;
+	}
+
+	@Override
+	public Object getDataHolder() {
+		return command;
+	}
+
+	@Override
+	@SneakyThrows
+	public void processArgs() {
+		PodcastServer server = new PodcastServer(command.workingDirectory, new InetSocketAddress(command.bindAddress, command.port), command.threadingMode);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "kfdl-serve-shutdown"));
+		server.start();
+
+		KfdlCli.LOGGER.info("Serving the feed at http://{}:{}/feed.xml", command.bindAddress, server.getAddress().getPort());
+	}
+}
@@ -0,0 +1,116 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Checks the audio of a download while it's being written: it counts the bytes, computes their SHA-256,
+ * and makes sure they start with MPEG audio frames. The audio is everything after the ID3v2 tag except a
+ * trailing ID3v1 tag, so the digest stays valid when tags are edited. Since an ID3v1 tag can only be
+ * recognized at the very end, the last {@value #id3v1TagLength} bytes are held back until then.
+ */
+final class AudioVerifier {
+	static final int id3v1TagLength = 128;
+	private static final int headLength = 64 * 1024;
+	private static final int bufferSize = 64 * 1024;
+	private final MessageDigest digest;
+	private final byte[] head = new byte[headLength];
+	private final byte[] tail = new byte[id3v1TagLength];
+	private int headFilled;
+	private int tailFilled;
+	private long length;
+
+	AudioVerifier() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be supported", e);
+		}
+	}
+
+	/**
+	 * Reads the audio of an existing file, for downloads that weren't written in order.
+	 */
+	static Result verify(Path file) throws IOException {
+		AudioVerifier verifier = new AudioVerifier();
+
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(Id3v2Tag.headerLength);
+			in.read(header, 0);
+			in.position(Id3v2Tag.getLength(Arrays.copyOf(header.array(), header.position())));
+			ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+
+			while (in.read(buffer) >= 0) {
+				buffer.flip();
+				verifier.update(buffer);
+				buffer.clear();
+			}
+		}
+
+		return verifier.finish();
+	}
+
+	/**
+	 * Feeds the next bytes of audio to the checks, without consuming the buffer.
+	 */
+	void update(ByteBuffer data) {
+		data = data.duplicate();
+		length += data.remaining();
+
+		if (headFilled < headLength) {
+			int count = Math.min(headLength - headFilled, data.remaining());
+			data.get(data.position(), head, headFilled, count);
+			headFilled += count;
+		}
+
+		int released = tailFilled + data.remaining() - id3v1TagLength;
+
+		if (released > 0) {
+			int releasedFromTail = Math.min(released, tailFilled);
+			digest.update(tail, 0, releasedFromTail);
+			System.arraycopy(tail, releasedFromTail, tail, 0, tailFilled - releasedFromTail);
+			tailFilled -= releasedFromTail;
+
+			ByteBuffer releasedData = data.duplicate();
+			releasedData.limit(data.position() + released - releasedFromTail);
+			digest.update(releasedData);
+			data.position(releasedData.limit());
+		}
+
+		int count = data.remaining();
+		data.get(tail, tailFilled, count);
+		tailFilled += count;
+	}
+
+	/**
+	 * Completes the checks.
+	 *
+	 * @throws DownloadIntegrityException If the data doesn't look like MP3 audio.
+	 */
+	Result finish() throws DownloadIntegrityException {
+		boolean hasId3v1Tag = tailFilled == id3v1TagLength && tail[0] == 'T' && tail[1] == 'A' && tail[2] == 'G';
+
+		if (!hasId3v1Tag) {
+			digest.update(tail, 0, tailFilled);
+		}
+
+		if (Mp3Frames.findFrameSync(head, headFilled) < 0) {
+			throw new DownloadIntegrityException("Download doesn't start with MPEG audio frames");
+		}
+
+		return new Result(HexFormat.of().formatHex(digest.digest()), hasId3v1Tag ? length - id3v1TagLength : length);
+	}
+
+	/**
+	 * @param sha256 The hex encoded SHA-256 of the audio.
+	 * @param length The length of the audio in bytes.
+	 */
+	record Result(String sha256, long length) { }
+}
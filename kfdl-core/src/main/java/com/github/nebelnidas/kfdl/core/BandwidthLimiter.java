@@ -0,0 +1,87 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits the bytes per second of all downloads together, and optionally per host. Callers report
+ * each chunk they receive and get delayed once they're ahead of the allowed rate.
+ */
+public class BandwidthLimiter {
+	public static final BandwidthLimiter UNLIMITED = new BandwidthLimiter(BandwidthSchedule.UNLIMITED, Map.of());
+	@Nullable
+	private final TokenBucket globalBucket;
+	private final Map<String, TokenBucket> hostBuckets;
+
+	/**
+	 * @param hostSchedules Additional limits for individual hosts, keyed by host name.
+	 */
+	public BandwidthLimiter(BandwidthSchedule globalSchedule, Map<String, BandwidthSchedule> hostSchedules) {
+		this.globalBucket = globalSchedule.isUnlimited() ? null : new TokenBucket(globalSchedule);
+		this.hostBuckets = hostSchedules.entrySet().stream()
+				.filter(entry -> !entry.getValue().isUnlimited())
+				.collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> new TokenBucket(entry.getValue())));
+	}
+
+	/**
+	 * Accounts for {@code bytes} received from {@code host}, sleeping as long as needed to stay within the limits.
+	 */
+	public void acquire(@Nullable String host, long bytes) throws InterruptedException {
+		if (host != null && !hostBuckets.isEmpty()) {
+			TokenBucket hostBucket = hostBuckets.get(host);
+
+			if (hostBucket != null) {
+				hostBucket.acquire(bytes);
+			}
+		}
+
+		if (globalBucket != null) {
+			globalBucket.acquire(bytes);
+		}
+	}
+
+	/**
+	 * A lock-free token bucket in its "virtual scheduling" form: instead of counting tokens, it tracks
+	 * the point in time at which all bytes handed out so far will have been paid for at the current rate.
+	 * A caller may run ahead of that point by at most {@link #burstNanos}, and otherwise sleeps off the rest.
+	 */
+	private static final class TokenBucket {
+		private static final long burstNanos = TimeUnit.MILLISECONDS.toNanos(250);
+		private final BandwidthSchedule schedule;
+		private final AtomicLong paidUntilNanos = new AtomicLong(System.nanoTime());
+
+		TokenBucket(BandwidthSchedule schedule) {
+			this.schedule = schedule;
+		}
+
+		void acquire(long bytes) throws InterruptedException {
+			long bytesPerSecond = schedule.getBytesPerSecond(LocalTime.now());
+
+			if (bytesPerSecond <= 0) {
+				return;
+			}
+
+			long costNanos = bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+			long now = System.nanoTime();
+			long paidUntil;
+			long newPaidUntil;
+
+			do {
+				paidUntil = paidUntilNanos.get();
+				// Unused bandwidth from idle periods doesn't accumulate beyond the burst allowance
+				newPaidUntil = Math.max(paidUntil, now) + costNanos;
+			} while (!paidUntilNanos.compareAndSet(paidUntil, newPaidUntil));
+
+			long waitNanos = newPaidUntil - now - burstNanos;
+
+			if (waitNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+		}
+	}
+}
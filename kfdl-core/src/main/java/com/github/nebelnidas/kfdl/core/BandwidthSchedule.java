@@ -0,0 +1,127 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A bandwidth limit that may vary with the time of day.
+ *
+ * <p>Schedules are parsed from the following format:
+ * <pre>{@code
+ * schedule = <rule> (',' <rule>)*
+ * rule     = (<from> '-' <to> '=')? <rate>
+ * rate     = 'unlimited' | <number> ('K' | 'M' | 'G')?
+ * }</pre>
+ * Rates are in bytes per second with binary prefixes, times are {@code HH:mm} in local time.
+ * A window whose end lies before its start spans midnight. The first rule matching the current
+ * time applies, a rule without a window matches all day. If no rule matches, there is no limit.
+ * For example, {@code 08:00-23:00=1M,4M} allows 1 MiB/s during the day and 4 MiB/s at night.
+ */
+public final class BandwidthSchedule {
+	public static final BandwidthSchedule UNLIMITED = new BandwidthSchedule(List.of());
+	private final List<Rule> rules;
+
+	private BandwidthSchedule(List<Rule> rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the schedule is malformed.
+	 */
+	public static BandwidthSchedule parse(String schedule) {
+		List<Rule> rules = new ArrayList<>();
+
+		for (String rule : schedule.split(",")) {
+			rule = rule.trim();
+			int separator = rule.indexOf('=');
+
+			if (separator < 0) {
+				rules.add(new Rule(null, null, parseRate(rule)));
+				continue;
+			}
+
+			String[] window = rule.substring(0, separator).split("-");
+
+			if (window.length != 2) {
+				throw new IllegalArgumentException("Invalid time window in bandwidth schedule: " + rule);
+			}
+
+			try {
+				rules.add(new Rule(LocalTime.parse(window[0].trim()), LocalTime.parse(window[1].trim()), parseRate(rule.substring(separator + 1))));
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Invalid time in bandwidth schedule: " + rule, e);
+			}
+		}
+
+		return new BandwidthSchedule(List.copyOf(rules));
+	}
+
+	private static long parseRate(String rate) {
+		rate = rate.trim().toUpperCase(Locale.ROOT);
+
+		if (rate.equals("UNLIMITED")) {
+			return 0;
+		}
+
+		long multiplier = switch (rate.isEmpty() ? ' ' : rate.charAt(rate.length() - 1)) {
+			case 'K' -> 1L << 10;
+			case 'M' -> 1L << 20;
+			case 'G' -> 1L << 30;
+			default -> 1;
+		};
+
+		try {
+			double value = Double.parseDouble(multiplier == 1 ? rate : rate.substring(0, rate.length() - 1));
+
+			if (value <= 0) {
+				throw new IllegalArgumentException("Bandwidth limit must be positive: " + rate);
+			}
+
+			return Math.max((long) (value * multiplier), 1);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid bandwidth limit: " + rate, e);
+		}
+	}
+
+	/**
+	 * Returns the limit in bytes per second at the given time, or {@code 0} if there is none.
+	 */
+	public long getBytesPerSecond(LocalTime time) {
+		for (Rule rule : rules) {
+			if (rule.matches(time)) {
+				return rule.bytesPerSecond();
+			}
+		}
+
+		return 0;
+	}
+
+	public boolean isUnlimited() {
+		for (Rule rule : rules) {
+			if (rule.bytesPerSecond() > 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private record Rule(@Nullable LocalTime from, @Nullable LocalTime to, long bytesPerSecond) {
+		boolean matches(LocalTime time) {
+			if (from == null || to == null) {
+				return true;
+			}
+
+			if (from.isAfter(to)) {
+				return !time.isBefore(from) || time.isBefore(to);
+			}
+
+			return !time.isBefore(from) && time.isBefore(to);
+		}
+	}
+}
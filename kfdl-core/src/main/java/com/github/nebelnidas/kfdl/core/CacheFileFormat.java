@@ -0,0 +1,340 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Shared pieces of the tab-separated files kfdl keeps in its working directory.
+ * Backslashes, tabs, newlines and pipes within values are escaped as {@code \\}, {@code \t},
+ * {@code \n} and {@code \p}, lists are separated by {@code |}, and missing values are empty.
+ */
+final class CacheFileFormat {
+	private CacheFileFormat() {
+	}
+
+	static String escape(@Nullable String value) {
+		if (value == null) {
+			return "";
+		}
+
+		StringBuilder ret = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '\\' -> ret.append("\\\\");
+				case '\t' -> ret.append("\\t");
+				case '\n' -> ret.append("\\n");
+				case '|' -> ret.append("\\p");
+				default -> ret.append(c);
+			}
+		}
+
+		return ret.toString();
+	}
+
+	@Nullable
+	static String unescape(String value) {
+		if (value.isEmpty()) {
+			return null;
+		}
+
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+
+		StringBuilder ret = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c != '\\' || i == value.length() - 1) {
+				ret.append(c);
+				continue;
+			}
+
+			char escaped = value.charAt(++i);
+			ret.append(switch (escaped) {
+				case 't' -> '\t';
+				case 'n' -> '\n';
+				case 'p' -> '|';
+				default -> escaped;
+			});
+		}
+
+		return ret.toString();
+	}
+
+	static List<String> unescapeList(String value) {
+		List<String> ret = new ArrayList<>();
+
+		if (value.isEmpty()) {
+			return ret;
+		}
+
+		for (String part : value.split("\\|", -1)) {
+			ret.add(unescape(part));
+		}
+
+		return ret;
+	}
+
+	static String joinIndexes(IntStream indexes) {
+		return indexes.mapToObj(Integer::toString).collect(Collectors.joining("|"));
+	}
+
+	/**
+	 * Maps the indexes cache files refer to people and tags by to them and back. All cache files in a directory
+	 * share one dictionary file there, {@value #fileName}, so an index means the same in each of them and in every
+	 * run: the file is read before any index is handed out, and names that come up later are only ever appended.
+	 * The format of the file is as follows:
+	 * <pre>{@code
+	 * file   = <header> (<person> | <tag>)*
+	 * header = 'kfdl-names' <tab> <major-version> <tab> <minor-version> <newline>
+	 * person = 'P' <tab> <index> <tab> <name> <newline>
+	 * tag    = 'T' <tab> <index> <tab> <name> <newline>
+	 * }</pre>
+	 * Older cache files contained person and tag lines themselves, which a dictionary without a file reads.
+	 */
+	static final class Dictionary {
+		static final String fileName = "kfdl-names.txt";
+		private static final String V1_HEADER_PREFIX = "kfdl-names\t1\t";
+		private static final String V1_0_HEADER = V1_HEADER_PREFIX + "0\n";
+		private static final Map<Path, Dictionary> shared = new HashMap<>();
+		@Nullable
+		private final Path file;
+		private final Map<Integer, Person> persons = new HashMap<>();
+		private final Map<Integer, Tag> tags = new HashMap<>();
+		private final Map<Person, Integer> personIndexes = new HashMap<>();
+		private final Map<Tag, Integer> tagIndexes = new HashMap<>();
+		/**
+		 * The lines for indexes handed out since the file was last written.
+		 */
+		private final StringBuilder unsavedLines = new StringBuilder();
+		/**
+		 * Whether the file can be appended to, rather than having to be written from scratch.
+		 */
+		private boolean appendable;
+		private int nextPersonIndex;
+		private int nextTagIndex;
+
+		/**
+		 * Creates a dictionary for the lines of an older cache file, which isn't saved anywhere.
+		 */
+		Dictionary() {
+			this.file = null;
+		}
+
+		/**
+		 * Reads the dictionary file. Cache files should use {@link #forCacheFile} instead, so they share the instance.
+		 */
+		Dictionary(Path file) {
+			this.file = file;
+			readFile();
+		}
+
+		/**
+		 * Returns the dictionary of the directory the cache file is in.
+		 */
+		static Dictionary forCacheFile(Path cacheFile) {
+			Path file = cacheFile.resolveSibling(fileName).toAbsolutePath().normalize();
+
+			synchronized (shared) {
+				return shared.computeIfAbsent(file, Dictionary::new);
+			}
+		}
+
+		private void readFile() {
+			if (!Files.exists(file)) {
+				return;
+			}
+
+			try {
+				String content = Files.readString(file);
+
+				if (!content.startsWith(V1_HEADER_PREFIX)) {
+					Kfdl.LOGGER.warn("Name dictionary header is invalid, ignoring name dictionary");
+					return;
+				}
+
+				List<String> lines = content.lines().toList();
+				appendable = content.endsWith("\n");
+
+				if (!appendable && lines.size() > 1) {
+					// Cut short by a crash, so the name may be incomplete; the file gets written from scratch next time
+					Kfdl.LOGGER.warn("Name dictionary ends with an incomplete line, ignoring line: {}", lines.get(lines.size() - 1));
+					lines = lines.subList(0, lines.size() - 1);
+				}
+
+				for (String line : lines.subList(1, lines.size())) {
+					try {
+						read(line.split("\t", -1));
+					} catch (RuntimeException e) {
+						Kfdl.LOGGER.warn("Name dictionary line is invalid, ignoring line: {}", line, e);
+						appendable = false;
+					}
+				}
+			} catch (IOException e) {
+				Kfdl.LOGGER.error("Failed to read name dictionary", e);
+			}
+		}
+
+		/**
+		 * Returns the index the person is referred to by, adding them to the dictionary if needed.
+		 */
+		synchronized int indexOf(Person person) {
+			Integer index = personIndexes.get(person);
+
+			if (index == null) {
+				index = nextPersonIndex++;
+				appendLine(unsavedLines, 'P', index, person.getName());
+				persons.put(index, person);
+				personIndexes.put(person, index);
+			}
+
+			return index;
+		}
+
+		/**
+		 * Returns the index the tag is referred to by, adding it to the dictionary if needed.
+		 */
+		synchronized int indexOf(Tag tag) {
+			Integer index = tagIndexes.get(tag);
+
+			if (index == null) {
+				index = nextTagIndex++;
+				appendLine(unsavedLines, 'T', index, tag.getName());
+				tags.put(index, tag);
+				tagIndexes.put(tag, index);
+			}
+
+			return index;
+		}
+
+		String joinPersons(List<Person> persons) {
+			return joinIndexes(persons.stream().mapToInt(this::indexOf));
+		}
+
+		String joinTags(List<Tag> tags) {
+			return joinIndexes(tags.stream().mapToInt(this::indexOf));
+		}
+
+		/**
+		 * Appends the people and tags added since the last save to the file. Has to be called before a cache
+		 * file referring to them is written.
+		 */
+		synchronized void save() throws IOException {
+			if (file == null || unsavedLines.isEmpty()) {
+				return;
+			}
+
+			if (appendable) {
+				Files.writeString(file, unsavedLines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			} else {
+				// Starts over with every entry, so nothing from a damaged file is kept around
+				StringBuilder content = new StringBuilder(V1_0_HEADER);
+				persons.entrySet().stream().sorted(Map.Entry.comparingByKey())
+						.forEach(person -> appendLine(content, 'P', person.getKey(), person.getValue().getName()));
+				tags.entrySet().stream().sorted(Map.Entry.comparingByKey())
+						.forEach(tag -> appendLine(content, 'T', tag.getKey(), tag.getValue().getName()));
+				Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+				Files.writeString(tempFile, content);
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				appendable = true;
+			}
+
+			unsavedLines.setLength(0);
+		}
+
+		private static void appendLine(StringBuilder content, char type, int index, String name) {
+			content.append(type)
+					.append('\t').append(index)
+					.append('\t').append(escape(name))
+					.append('\n');
+		}
+
+		/**
+		 * Reads the line of an older cache file if it is a dictionary line.
+		 *
+		 * @return Whether it was one.
+		 */
+		boolean readLine(String[] parts) {
+			if (!parts[0].equals("P") && !parts[0].equals("T")) {
+				return false;
+			}
+
+			if (file != null) {
+				throw new IllegalArgumentException("People and tags belong into " + file);
+			}
+
+			read(parts);
+			return true;
+		}
+
+		private synchronized void read(String[] parts) {
+			boolean person = parts[0].equals("P");
+
+			if (!person && !parts[0].equals("T")) {
+				throw new IllegalArgumentException("Unknown line type: " + parts[0]);
+			}
+
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Invalid number of parts: " + parts.length);
+			}
+
+			int index = Integer.parseInt(parts[1]);
+			String name = unescape(parts[2]);
+
+			if (name == null) {
+				throw new IllegalArgumentException("Empty name");
+			}
+
+			if (person) {
+				Person value = Person.getOrCreate(name);
+				persons.put(index, value);
+				personIndexes.putIfAbsent(value, index);
+				nextPersonIndex = Math.max(nextPersonIndex, index + 1);
+			} else {
+				Tag value = Tag.getOrCreate(name);
+				tags.put(index, value);
+				tagIndexes.putIfAbsent(value, index);
+				nextTagIndex = Math.max(nextTagIndex, index + 1);
+			}
+		}
+
+		@Nullable
+		synchronized Person getPerson(@Nullable String index) {
+			return index == null ? null : lookUp(persons, index);
+		}
+
+		synchronized List<Person> getPersons(String indexes) {
+			return unescapeList(indexes).stream().map(index -> lookUp(persons, index)).toList();
+		}
+
+		synchronized List<Tag> getTags(String indexes) {
+			return unescapeList(indexes).stream().map(index -> lookUp(tags, index)).toList();
+		}
+
+		private static <T> T lookUp(Map<Integer, T> dictionary, @Nullable String index) {
+			T value = index == null ? null : dictionary.get(Integer.parseInt(index));
+
+			if (value == null) {
+				throw new IllegalArgumentException("Unknown index: " + index);
+			}
+
+			return value;
+		}
+	}
+}
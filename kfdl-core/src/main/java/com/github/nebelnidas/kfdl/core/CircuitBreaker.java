@@ -0,0 +1,105 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps downloads from piling onto a host that is clearly down. After {@link #failureThreshold}
+ * retryable failures in a row, the host's breaker opens and no new download from it may start.
+ * Once the open period is over, a single trial download is let through: if it succeeds, the breaker
+ * closes again, otherwise it reopens for twice as long.
+ */
+final class CircuitBreaker {
+	private static final int failureThreshold = 3;
+	private static final long initialOpenNanos = TimeUnit.SECONDS.toNanos(30);
+	private static final long maxOpenNanos = TimeUnit.MINUTES.toNanos(10);
+	private final Map<String, HostState> hosts = new HashMap<>();
+
+	/**
+	 * Returns whether a download from the host may start now. If the host is due for a trial,
+	 * the caller's download becomes that trial and has to report its outcome.
+	 */
+	synchronized boolean tryAcquire(@Nullable String host) {
+		HostState state = hosts.get(key(host));
+
+		if (state == null || state.openUntilNanos == 0) {
+			return true;
+		}
+
+		if (System.nanoTime() - state.openUntilNanos < 0 || state.trialInFlight) {
+			return false;
+		}
+
+		state.trialInFlight = true;
+		Kfdl.LOGGER.info("Trying whether {} is reachable again", host);
+		return true;
+	}
+
+	/**
+	 * Returns how long the host's breaker stays open, or {@code 0} if it's closed or waiting for a trial's outcome.
+	 */
+	synchronized long getRemainingOpenNanos(@Nullable String host) {
+		HostState state = hosts.get(key(host));
+
+		if (state == null || state.openUntilNanos == 0 || state.trialInFlight) {
+			return 0;
+		}
+
+		return Math.max(state.openUntilNanos - System.nanoTime(), 0);
+	}
+
+	synchronized void recordSuccess(@Nullable String host) {
+		HostState state = hosts.remove(key(host));
+
+		if (state != null && state.openUntilNanos != 0) {
+			Kfdl.LOGGER.info("{} is reachable again, resuming downloads from it", host);
+		}
+	}
+
+	synchronized void recordFailure(@Nullable String host) {
+		HostState state = hosts.computeIfAbsent(key(host), key -> new HostState());
+		state.consecutiveFailures++;
+
+		if (state.trialInFlight) {
+			state.trialInFlight = false;
+			state.openNanos = Math.min(state.openNanos * 2, maxOpenNanos);
+		} else if (state.openUntilNanos == 0 && state.consecutiveFailures >= failureThreshold) {
+			state.openNanos = initialOpenNanos;
+		} else {
+			return; // Still closed, or a download that started before the breaker opened
+		}
+
+		state.openUntilNanos = System.nanoTime() + state.openNanos;
+		Kfdl.LOGGER.warn("{} failed {} downloads in a row, pausing downloads from it for {} s",
+				host, state.consecutiveFailures, TimeUnit.NANOSECONDS.toSeconds(state.openNanos));
+	}
+
+	/**
+	 * Reports that a download ended without telling anything about the host, e.g. because it was interrupted.
+	 * A trial download frees the way for the next one.
+	 */
+	synchronized void recordAbandoned(@Nullable String host) {
+		HostState state = hosts.get(key(host));
+
+		if (state != null) {
+			state.trialInFlight = false;
+		}
+	}
+
+	private static String key(@Nullable String host) {
+		return host == null ? "" : host;
+	}
+
+	private static final class HostState {
+		private int consecutiveFailures;
+		private long openNanos;
+		/**
+		 * When the open period ends, or {@code 0} while the breaker is closed.
+		 */
+		private long openUntilNanos;
+		private boolean trialInFlight;
+	}
+}
@@ -0,0 +1,134 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how many downloads may run at once, following the AIMD scheme known from TCP congestion
+ * control: while all slots are busy and the aggregate throughput keeps improving, one more slot is
+ * added per sample interval; on congestion signals (timeouts, 429/503 responses, or a per-stream rate
+ * that fell to half its best) the limit is halved. The limit starts out at the upper bound and always
+ * stays within the configured bounds.
+ */
+class DownloadConcurrencyController {
+	private static final long sampleIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+	private static final long decreaseCooldownNanos = TimeUnit.SECONDS.toNanos(10);
+	private static final double minImprovement = 1.05;
+	private static final double maxPerStreamDrop = 0.5;
+	private final int minLimit;
+	private final int maxLimit;
+	private final LongAdder receivedBytes = new LongAdder();
+	private int limit;
+	private int active;
+	private int minActiveInSample;
+	private volatile long sampleStartNanos = System.nanoTime();
+	private long lastDecreaseNanos = System.nanoTime() - decreaseCooldownNanos;
+	private double lastThroughput;
+	private double bestPerStreamThroughput;
+
+	DownloadConcurrencyController(int minLimit, int maxLimit) {
+		this.minLimit = Math.max(minLimit, 1);
+		this.maxLimit = Math.max(maxLimit, this.minLimit);
+		this.limit = this.maxLimit;
+	}
+
+	synchronized boolean tryAcquire() {
+		if (active >= limit) {
+			return false;
+		}
+
+		active++;
+		return true;
+	}
+
+	synchronized void release() {
+		active--;
+		minActiveInSample = Math.min(minActiveInSample, active);
+	}
+
+	/**
+	 * Records received bytes and re-evaluates the limit once per sample interval.
+	 *
+	 * @return Whether the limit was raised, so more downloads may be started.
+	 */
+	boolean recordReceived(long bytes) {
+		receivedBytes.add(bytes);
+
+		if (System.nanoTime() - sampleStartNanos < sampleIntervalNanos) {
+			return false;
+		}
+
+		return evaluate();
+	}
+
+	private synchronized boolean evaluate() {
+		long now = System.nanoTime();
+		long elapsedNanos = now - sampleStartNanos;
+
+		if (elapsedNanos < sampleIntervalNanos) {
+			return false; // Another thread evaluated in the meantime
+		}
+
+		double throughput = receivedBytes.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		boolean saturated = minActiveInSample >= limit;
+		sampleStartNanos = now;
+		minActiveInSample = active;
+
+		if (active == 0) {
+			return false;
+		}
+
+		double perStreamThroughput = throughput / active;
+
+		if (bestPerStreamThroughput > 0 && perStreamThroughput < bestPerStreamThroughput * maxPerStreamDrop) {
+			bestPerStreamThroughput = perStreamThroughput;
+			decrease("per-stream rate dropped to " + formatRate(perStreamThroughput));
+			lastThroughput = throughput;
+			return false;
+		}
+
+		bestPerStreamThroughput = Math.max(bestPerStreamThroughput, perStreamThroughput);
+		boolean improved = throughput >= lastThroughput * minImprovement;
+		lastThroughput = throughput;
+
+		// Only judge the limit if it was actually in use the whole time
+		if (!saturated || limit >= maxLimit) {
+			return false;
+		}
+
+		if (!improved) {
+			Kfdl.LOGGER.debug("Keeping download concurrency at {}, throughput {} didn't improve", limit, formatRate(throughput));
+			return false;
+		}
+
+		limit++;
+		Kfdl.LOGGER.info("Raising download concurrency to {} (throughput {})", limit, formatRate(throughput));
+		return true;
+	}
+
+	/**
+	 * Reports a timeout or a response telling us to back off.
+	 */
+	synchronized void recordCongestion(String reason) {
+		decrease(reason);
+	}
+
+	private void decrease(String reason) {
+		long now = System.nanoTime();
+
+		// Signals caused by the same burst only count once
+		if (now - lastDecreaseNanos < decreaseCooldownNanos || limit <= minLimit) {
+			Kfdl.LOGGER.debug("Ignoring congestion signal ({}), download concurrency stays at {}", reason, limit);
+			return;
+		}
+
+		lastDecreaseNanos = now;
+		limit = Math.max(limit / 2, minLimit);
+		Kfdl.LOGGER.info("Lowering download concurrency to {} ({})", limit, reason);
+	}
+
+	private static String formatRate(double bytesPerSecond) {
+		return String.format(Locale.ROOT, "%.1f KiB/s", bytesPerSecond / 1024);
+	}
+}
@@ -0,0 +1,14 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a download turns out not to be the complete audio file it's supposed to be.
+ */
+public class DownloadIntegrityException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public DownloadIntegrityException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,278 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.Hedging.Winner;
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
+
+/**
+ * Finds the official (uncut) download of an episode by probing the file names the
+ * kontrafunk.radio editors have used over time. All candidates are probed concurrently,
+ * and conventions that were hit in the same year are probed first. Since some official files turned
+ * out to be shorter than Spreaker's version, the durations of both are compared before a link is chosen.
+ */
+public class DownloadLinkResolver {
+	private static final String kfAktuellDownloadPrefix = "https://kontrafunk.radio/images/audio/sendungen/";
+	private static final LocalDate firstDateWithOfficialDownload = LocalDate.of(2023, 7, 20);
+	/**
+	 * How much shorter than Spreaker's version an official file may be, to account for estimation errors.
+	 */
+	private static final Duration durationTolerance = Duration.ofSeconds(5);
+	private static final DateTimeFormatter concatDateFormatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final DateTimeFormatter pathDateFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd/");
+	private static final List<FilenamePattern> patterns = List.of(
+			new FilenamePattern("<date>_Kontrafunk_aktuell", date -> date + "_Kontrafunk_aktuell"),
+			new FilenamePattern("<date>_Kontrafunk_Aktuell", date -> date + "_Kontrafunk_Aktuell"),
+			new FilenamePattern("Kontrafunk_aktuell_<date>", date -> "Kontrafunk_aktuell_" + date),
+			new FilenamePattern("Kontrafunk_Aktuell_<date>", date -> "Kontrafunk_Aktuell_" + date),
+			new FilenamePattern("Kontrafunk Aktuell <date>", date -> "Kontrafunk Aktuell " + date),
+			new FilenamePattern("Kontrafunk _Aktuell_<date>", date -> "Kontrafunk _Aktuell_" + date),
+			new FilenamePattern("kontrafunk_aktuell_<date>", date -> "kontrafunk_aktuell_" + date));
+	private final Map<FilenamePattern, PatternStats> stats = new ConcurrentHashMap<>();
+	private final Histogram headDuration = Kfdl.METRICS.histogram("kfdl_head_request_duration_seconds", "Time spent on HEAD requests for candidate download links");
+	private final Histogram probeDuration = Kfdl.METRICS.histogram("kfdl_duration_probe_duration_seconds", "Time spent probing the playing time of official downloads");
+	private final ExecutorService executor;
+	private final int maxConcurrentRequests;
+
+	/**
+	 * @param maxConcurrentRequests How many HEAD requests may be in flight for a single episode.
+	 */
+	public DownloadLinkResolver(ExecutorService executor, int maxConcurrentRequests) {
+		this.executor = executor;
+		this.maxConcurrentRequests = Math.max(maxConcurrentRequests, 1);
+
+		for (FilenamePattern pattern : patterns) {
+			PatternStats patternStats = new PatternStats();
+			stats.put(pattern, patternStats);
+			registerProbeCounter(pattern, "hit", patternStats::getHits);
+			registerProbeCounter(pattern, "miss", patternStats::getMisses);
+		}
+	}
+
+	private static void registerProbeCounter(FilenamePattern pattern, String result, LongSupplier value) {
+		Kfdl.METRICS.counter("kfdl_probes_total", "Probes of download file name conventions", value,
+				"pattern", pattern.description(), "result", result);
+	}
+
+	@Nullable
+	public String resolve(MergedEpisodeData episodeData) throws InterruptedException {
+		String url = resolveCandidate(episodeData);
+		return url == null ? null : pickLonger(episodeData, url);
+	}
+
+	@Nullable
+	private String resolveCandidate(MergedEpisodeData episodeData) throws InterruptedException {
+		LocalDate date = episodeData.date();
+		String urlPrefix = kfAktuellDownloadPrefix + date.format(pathDateFormatter);
+		String overriddenUrl = switch (date.toString()) {
+			case "2024-03-19" -> urlPrefix + "20230319_Kontrafunkt_aktuell_.mp3";
+			case "2024-02-29" -> urlPrefix + "20240228_Kontrafunk_aktuell.mp3";
+			case "2024-01-31" -> urlPrefix + "Kontrafunk_aktuell_20240131 final CUT.mp3";
+			case "2023-11-23" -> urlPrefix + "Kontrafunk Aktuell 202331123.mp3";
+			default -> null;
+		};
+
+		if (overriddenUrl != null) {
+			return exists(encode(overriddenUrl));
+		}
+
+		if (!date.isBefore(firstDateWithOfficialDownload)) {
+			String url = probePatterns(urlPrefix, date);
+
+			if (url != null) {
+				return url;
+			}
+		}
+
+		String url;
+
+		if (!episodeData.defaultDownload().contains("spreaker")) {
+			url = episodeData.defaultDownload();
+		} else {
+			Kfdl.LOGGER.info("No official download link found for {}. Falling back to Spreaker.", episodeData.title());
+			url = episodeData.spreakerDownload();
+		}
+
+		return exists(encode(url));
+	}
+
+	/**
+	 * Returns the official URL unless probing its first few KiB shows it isn't audio, or plays
+	 * noticeably shorter than Spreaker's version, in which case Spreaker's URL is returned instead.
+	 */
+	@Nullable
+	private String pickLonger(MergedEpisodeData episodeData, String officialUrl) throws InterruptedException {
+		String spreakerUrl = encode(episodeData.spreakerDownload());
+
+		if (officialUrl.equals(spreakerUrl)) {
+			return officialUrl;
+		}
+
+		Duration officialDuration;
+		long probeStart = System.nanoTime();
+
+		try {
+			officialDuration = Mp3DurationProbe.probe(officialUrl);
+		} catch (DownloadIntegrityException e) {
+			Kfdl.LOGGER.warn("Official download of {} isn't usable, falling back to Spreaker: {}", episodeData.title(), e.getMessage());
+			return exists(spreakerUrl);
+		} catch (IOException e) {
+			Kfdl.LOGGER.debug("Failed to probe the duration of {}, keeping it", officialUrl, e);
+			return officialUrl;
+		} finally {
+			probeDuration.observeSince(probeStart);
+		}
+
+		if (episodeData.spreakerDurationSeconds() < 0) {
+			return officialUrl;
+		}
+
+		Duration spreakerDuration = Duration.ofSeconds(episodeData.spreakerDurationSeconds());
+
+		if (officialDuration.plus(durationTolerance).compareTo(spreakerDuration) >= 0) {
+			Kfdl.LOGGER.debug("Official download of {} plays {} s, Spreaker's {} s", episodeData.title(), officialDuration.toSeconds(), spreakerDuration.toSeconds());
+			return officialUrl;
+		}
+
+		Kfdl.LOGGER.info("Official download of {} only plays {} s, Spreaker's {} s. Falling back to Spreaker.",
+				episodeData.title(), officialDuration.toSeconds(), spreakerDuration.toSeconds());
+		String url = exists(spreakerUrl);
+		return url != null ? url : officialUrl;
+	}
+
+	@Nullable
+	private String probePatterns(String urlPrefix, LocalDate date) throws InterruptedException {
+		String concatDate = date.format(concatDateFormatter);
+		List<FilenamePattern> orderedPatterns = new ArrayList<>(patterns);
+		orderedPatterns.sort(Comparator
+				.comparingLong((FilenamePattern pattern) -> stats.get(pattern).getHits(date.getYear()))
+				.thenComparingLong(pattern -> stats.get(pattern).getHits())
+				.reversed());
+
+		List<Callable<String>> probes = new ArrayList<>(orderedPatterns.size());
+
+		for (FilenamePattern pattern : orderedPatterns) {
+			String url = encode(urlPrefix + pattern.filename().apply(concatDate) + ".mp3");
+			probes.add(() -> {
+				head(url);
+				return url;
+			});
+		}
+
+		try {
+			Winner<String> winner = Hedging.firstSuccess(executor, probes, maxConcurrentRequests, 0);
+			FilenamePattern winningPattern = orderedPatterns.get(winner.index());
+			stats.get(winningPattern).recordHit(date.getYear());
+
+			for (FilenamePattern pattern : orderedPatterns.subList(0, winner.index())) {
+				stats.get(pattern).recordMiss();
+			}
+
+			return winner.value();
+		} catch (ExecutionException e) {
+			for (FilenamePattern pattern : orderedPatterns) {
+				stats.get(pattern).recordMiss();
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the URL if a HEAD request for it succeeds, otherwise {@code null}.
+	 */
+	@Nullable
+	private String exists(String url) throws InterruptedException {
+		try {
+			head(url);
+			return url;
+		} catch (HttpStatusException e) {
+			return null;
+		} catch (IOException e) {
+			Kfdl.LOGGER.warn("Failed to check availability of {}", url, e);
+			return null;
+		}
+	}
+
+	private void head(String url) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+
+		try {
+			Http.head(url);
+		} finally {
+			headDuration.observeSince(start);
+		}
+	}
+
+	private static String encode(String url) {
+		return url.replace(" ", "%20");
+	}
+
+	/**
+	 * Returns how often each file name convention has been hit or missed so far, keyed by its description.
+	 */
+	public Map<String, PatternStats> getPatternStats() {
+		Map<String, PatternStats> ret = new LinkedHashMap<>();
+
+		for (FilenamePattern pattern : patterns) {
+			ret.put(pattern.description(), stats.get(pattern));
+		}
+
+		return ret;
+	}
+
+	private record FilenamePattern(String description, Function<String, String> filename) { }
+
+	public static final class PatternStats {
+		private final Map<Integer, LongAdder> hitsByYear = new ConcurrentHashMap<>();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		void recordHit(int year) {
+			hits.increment();
+			hitsByYear.computeIfAbsent(year, key -> new LongAdder()).increment();
+		}
+
+		void recordMiss() {
+			misses.increment();
+		}
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getHits(int year) {
+			LongAdder yearHits = hitsByYear.get(year);
+			return yearHits == null ? 0 : yearHits.sum();
+		}
+
+		/**
+		 * Counts the probes that didn't find a file, plus those that lost against another convention.
+		 */
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		@Override
+		public String toString() {
+			return getHits() + " hits, " + getMisses() + " misses";
+		}
+	}
+}
@@ -1,135 +1,675 @@
 package com.github.nebelnidas.kfdl.core;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.audio.mp3.MP3File;
-import org.jaudiotagger.tag.FieldKey;
-import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Counter;
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
 
 public class Downloader {
+	private static final long checkpointInterval = 4 * 1024 * 1024;
+	private static final long firstSegmentSize = 2 * 1024 * 1024;
+	private static final long maxServerTagsLength = 1024 * 1024;
+	private static final Pattern contentRangePattern = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
 	private final List<Runnable> onFinishListeners = Collections.synchronizedList(new ArrayList<>());
-	private final Queue<MergedEpisodeData> pendingDownloads = new ConcurrentLinkedQueue<>();
-	private final List<MergedEpisodeData> activeDownloads = Collections.synchronizedList(new ArrayList<>());
+	private final List<Consumer<MergedEpisodeData>> onPermanentFailureListeners = Collections.synchronizedList(new ArrayList<>());
+	private final BlockingQueue<MergedEpisodeData> pendingDownloads;
+	private final DelayQueue<RetryItem> retryQueue = new DelayQueue<>();
+	private final List<MergedEpisodeData> activeDownloads = new ArrayList<>();
 	private final List<MergedEpisodeData> successfulDownloads = Collections.synchronizedList(new ArrayList<>());
 	private final List<MergedEpisodeData> failedDownloads = Collections.synchronizedList(new ArrayList<>());
+	private final Map<MergedEpisodeData, DownloadProgress> progress = new ConcurrentHashMap<>();
+	private final Counter receivedBytes = Kfdl.METRICS.counter("kfdl_download_received_bytes_total", "Bytes received by all downloads");
+	private final Counter retries = Kfdl.METRICS.counter("kfdl_download_retries_total", "Failed download attempts that were scheduled to be retried");
+	private final Histogram tagDuration = Kfdl.METRICS.histogram("kfdl_tag_duration_seconds", "Time spent building ID3 tags");
+	private final Histogram successfulDownloadDuration = getDownloadDurationHistogram("successful");
+	private final Histogram failedDownloadDuration = getDownloadDurationHistogram("failed");
 	private final Path workingDir;
-	private final int maxThreads;
+	private final DownloadConcurrencyController concurrency;
+	private final int maxConnectionsPerDownload;
 	private final ExecutorService threadPool;
+	private final ExecutorService segmentExecutor;
+	private final ScheduledExecutorService wakeUpTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("retry"));
+	private final BandwidthLimiter bandwidthLimiter;
+	private final TransferEngine transferEngine;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker();
 	private final SaveFileHandler saveFileHandler;
+	private long nextWakeUpNanos;
+	private boolean wakeUpScheduled;
 	private volatile boolean finished = false;
 
-	public Downloader(Path workingDir, int maxThreads, SaveFileHandler saveFileHandler) {
+	/**
+	 * Creates a downloader that runs between {@code minParallel} and {@code maxParallel} downloads at once,
+	 * adapting the number to the observed throughput and congestion signals. The limit is enforced by
+	 * counting active downloads, so it holds regardless of the threading mode.
+	 *
+	 * @param maxPending How many episodes may wait for a free download slot before {@link #queue} blocks.
+	 * @param maxConnectionsPerDownload How many connections a single download may be split across;
+	 *                                  {@code 1} disables segmented downloads.
+	 * @param retryPolicy When to retry failed downloads. Retries wait in a delay queue without occupying a slot,
+	 *                    and a host that keeps failing is paused altogether until it recovers.
+	 */
+	public Downloader(Path workingDir, int minParallel, int maxParallel, int maxPending, int maxConnectionsPerDownload,
+			ThreadingMode threadingMode, BandwidthLimiter bandwidthLimiter, TransferEngine transferEngine, RetryPolicy retryPolicy,
+			SaveFileHandler saveFileHandler) {
 		this.workingDir = workingDir;
-		this.maxThreads = maxThreads;
-		this.threadPool = Executors.newFixedThreadPool(maxThreads);
+		this.concurrency = new DownloadConcurrencyController(minParallel, maxParallel);
+		this.maxConnectionsPerDownload = Math.max(maxConnectionsPerDownload, 1);
+		this.pendingDownloads = new LinkedBlockingQueue<>(Math.max(maxPending, 1));
+		this.threadPool = threadingMode.createExecutor("download");
+		this.segmentExecutor = threadingMode.createExecutor("segment");
+		this.bandwidthLimiter = bandwidthLimiter;
+		this.transferEngine = transferEngine;
+		this.retryPolicy = retryPolicy;
 		this.saveFileHandler = saveFileHandler;
+
+		Kfdl.METRICS.gauge("kfdl_download_queue_size", "Episodes waiting for a download slot", pendingDownloads::size);
+		Kfdl.METRICS.gauge("kfdl_download_retry_queue_size", "Episodes waiting for their next download attempt", retryQueue::size);
+		Kfdl.METRICS.gauge("kfdl_downloads_active", "Downloads in progress", progress::size);
+		Kfdl.METRICS.gauge("kfdl_download_throughput_bytes_per_second", "Average throughput of all downloads in progress together",
+				() -> progress.values().stream().mapToDouble(DownloadProgress::getBytesPerSecond).sum());
 	}
 
-	public void queue(MergedEpisodeData data) {
-		pendingDownloads.add(data);
-		saveFileHandler.addOrUpdate(data, DownloadState.QUEUED);
+	/**
+	 * Queues the episode for download, blocking while too many episodes are already waiting.
+	 * If a previous run scheduled a retry that isn't due yet, the episode waits for it instead.
+	 */
+	public void queue(MergedEpisodeData data) throws InterruptedException {
+		SaveFileEntry previousEntry = saveFileHandler.get(data.date());
+		// A new run gets a new set of attempts once the previous one's were used up
+		int attempts = previousEntry == null || previousEntry.attempts() >= retryPolicy.getMaxAttempts() ? 0 : previousEntry.attempts();
+		Instant nextRetry = attempts == 0 ? null : previousEntry.nextRetry();
+		saveFileHandler.add(new SaveFileEntry(data, DownloadState.QUEUED).withRetry(attempts, nextRetry));
+
+		if (nextRetry != null && nextRetry.isAfter(Instant.now())) {
+			Duration delay = Duration.between(Instant.now(), nextRetry);
+			Kfdl.LOGGER.info("Episode '{}' failed {} times before, retrying it at {}", data.title(), attempts, nextRetry);
 
-		if (activeDownloads.size() < maxThreads) {
 			synchronized (activeDownloads) {
-				if (activeDownloads.size() < maxThreads) {
-					startNextDownload();
+				retryQueue.add(new RetryItem(data, delay.compareTo(retryPolicy.getMaxDelay()) > 0 ? retryPolicy.getMaxDelay() : delay));
+			}
+		} else {
+			pendingDownloads.put(data);
+		}
+
+		startNextDownloads();
+	}
+
+	private void startNextDownloads() {
+		synchronized (activeDownloads) {
+			while (concurrency.tryAcquire()) {
+				MergedEpisodeData item = pollNextDownload();
+
+				if (item == null) {
+					concurrency.release();
+					return;
 				}
+
+				activeDownloads.add(item);
+				threadPool.submit(() -> runDownload(item));
 			}
 		}
 	}
 
-	private void startNextDownload() {
-		MergedEpisodeData item = pendingDownloads.poll();
+	/**
+	 * Returns the next episode that may be downloaded right now, preferring due retries over new episodes,
+	 * or {@code null} if there is none. While the next episode's host is paused, the whole queue waits.
+	 * Whenever something is left waiting for a point in time, a wake-up is scheduled for it.
+	 */
+	@Nullable
+	private MergedEpisodeData pollNextDownload() {
+		RetryItem retry = retryQueue.peek();
+
+		if (retry != null) {
+			long dueInNanos = retry.getDelay(TimeUnit.NANOSECONDS);
+
+			if (dueInNanos > 0) {
+				scheduleWakeUp(dueInNanos);
+			} else if (mayStart(retry.data())) {
+				return retryQueue.poll().data();
+			} else {
+				return null;
+			}
+		}
+
+		MergedEpisodeData item = pendingDownloads.peek();
+
+		if (item == null || !mayStart(item)) {
+			return null;
+		}
+
+		return pendingDownloads.poll();
+	}
+
+	private boolean mayStart(MergedEpisodeData item) {
+		String host = Http.getHost(item.defaultDownload());
+
+		if (circuitBreaker.tryAcquire(host)) {
+			return true;
+		}
+
+		long remainingNanos = circuitBreaker.getRemainingOpenNanos(host);
+
+		if (remainingNanos > 0) {
+			scheduleWakeUp(remainingNanos);
+		}
+
+		return false;
+	}
+
+	private void scheduleWakeUp(long delayNanos) {
+		long wakeUpNanos = System.nanoTime() + delayNanos;
 
-		if (item == null) {
-			finished = true;
+		// An earlier wake-up re-evaluates everything anyway
+		if (wakeUpScheduled && nextWakeUpNanos - wakeUpNanos <= 0) {
 			return;
 		}
 
-		threadPool.submit(() -> {
-			try {
-				Kfdl.LOGGER.info("Starting download of episode '{}'", item.title());
-				activeDownloads.add(item);
-				saveFileHandler.addOrUpdate(item, DownloadState.DOWNLOADING);
-				download(item);
-				successfulDownloads.add(item);
-				tag(item, workingDir.resolve(item.date().toString() + ".mp3"));
-				saveFileHandler.addOrUpdate(item, DownloadState.SUCCESSFUL);
-				Kfdl.LOGGER.info("Download of episode '{}' finished", item.title());
-			} catch (Exception e) {
+		wakeUpScheduled = true;
+		nextWakeUpNanos = wakeUpNanos;
+		wakeUpTimer.schedule(() -> {
+			synchronized (activeDownloads) {
+				if (nextWakeUpNanos == wakeUpNanos) {
+					wakeUpScheduled = false;
+				}
+			}
+
+			startNextDownloads();
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private static Histogram getDownloadDurationHistogram(String result) {
+		return Kfdl.METRICS.histogram("kfdl_download_duration_seconds", "Time spent on download attempts", "result", result);
+	}
+
+	private void runDownload(MergedEpisodeData item) {
+		String host = Http.getHost(item.defaultDownload());
+		SaveFileEntry entry = saveFileHandler.get(item.date());
+		int attempts = entry == null ? 0 : entry.attempts();
+		DownloadProgress downloadProgress = new DownloadProgress();
+		progress.put(item, downloadProgress);
+		Kfdl.METRICS.gauge("kfdl_download_bytes_per_second", "Average throughput of a download in progress",
+				downloadProgress::getBytesPerSecond, "episode", item.date().toString());
+
+		try {
+			Kfdl.LOGGER.info("Starting download of episode '{}'", item.title());
+			saveFileHandler.add(new SaveFileEntry(item, DownloadState.DOWNLOADING).withRetry(attempts, null));
+			AudioVerifier.Result result = download(item, maxConnectionsPerDownload > 1, downloadProgress);
+			successfulDownloadDuration.observeSince(downloadProgress.startNanos);
+			circuitBreaker.recordSuccess(host);
+			successfulDownloads.add(item);
+			saveFileHandler.add(new SaveFileEntry(item, DownloadState.SUCCESSFUL).withSha256(result.sha256()));
+			Kfdl.LOGGER.info("Download of episode '{}' finished", item.title());
+		} catch (InterruptedException e) {
+			// Not the episode's fault, so it doesn't cost an attempt and the next run resumes it
+			circuitBreaker.recordAbandoned(host);
+			saveFileHandler.add(new SaveFileEntry(item, DownloadState.DOWNLOADING).withRetry(attempts, null));
+			Kfdl.LOGGER.info("Download of episode '{}' was interrupted", item.title());
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			attempts++;
+			boolean retry = retryPolicy.isRetryable(e) && attempts < retryPolicy.getMaxAttempts();
+			failedDownloadDuration.observeSince(downloadProgress.startNanos);
+
+			if (retryPolicy.isRetryable(e)) {
+				circuitBreaker.recordFailure(host);
+			} else {
+				circuitBreaker.recordSuccess(host); // The host answered, it just didn't like the request
+			}
+
+			if (retry) {
+				retries.increment();
+				Duration delay = retryPolicy.getDelay(attempts);
+				saveFileHandler.add(new SaveFileEntry(item, DownloadState.FAILED).withRetry(attempts, Instant.now().plus(delay)));
+				Kfdl.LOGGER.warn("Download of episode '{}' failed (attempt {} of {}), retrying in {} s: {}",
+						item.title(), attempts, retryPolicy.getMaxAttempts(), delay.toSeconds(), e.toString());
+
+				synchronized (activeDownloads) {
+					retryQueue.add(new RetryItem(item, delay));
+				}
+			} else {
 				failedDownloads.add(item);
-				saveFileHandler.addOrUpdate(item, DownloadState.FAILED);
-				Kfdl.LOGGER.error("Download of episode '{}' failed", item.title(), e);
+				saveFileHandler.add(new SaveFileEntry(item, DownloadState.FAILED).withRetry(attempts, null));
+				Kfdl.LOGGER.error("Download of episode '{}' failed, giving up after {} attempt(s)", item.title(), attempts, e);
+			}
+
+			if (!retryPolicy.isRetryable(e)) {
+				synchronized (onPermanentFailureListeners) {
+					onPermanentFailureListeners.forEach(listener -> listener.accept(item));
+				}
+			}
+
+			if (e instanceof HttpTimeoutException) {
+				concurrency.recordCongestion("timeout");
+			} else if (e instanceof HttpStatusException statusException
+					&& (statusException.getStatusCode() == 429 || statusException.getStatusCode() == 503)) {
+				concurrency.recordCongestion("HTTP " + statusException.getStatusCode());
+			}
+		} finally {
+			// Even after an Error, so awaitCompletion doesn't wait for this download forever
+			progress.remove(item);
+			Kfdl.METRICS.remove("kfdl_download_bytes_per_second", "episode", item.date().toString());
+
+			synchronized (activeDownloads) {
+				activeDownloads.remove(item);
+				concurrency.release();
+				activeDownloads.notifyAll();
 			}
+		}
 
-			activeDownloads.remove(item);
-			saveFileHandler.suggestSave();
-			startNextDownload();
-		});
+		startNextDownloads();
 	}
 
-	private void download(MergedEpisodeData episodeData) throws MalformedURLException, IOException {
-		ReadableByteChannel readableByteChannel = Channels.newChannel(new URL(episodeData.defaultDownload()).openStream());
-		Path path = workingDir.resolve(episodeData.date().toString() + ".mp3");
+	/**
+	 * Waits until all queued episodes have been processed, then notifies the finish listeners.
+	 * No further episodes may be queued afterwards.
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		synchronized (activeDownloads) {
+			while (!activeDownloads.isEmpty() || !pendingDownloads.isEmpty() || !retryQueue.isEmpty()) {
+				activeDownloads.wait();
+			}
+		}
+
+		threadPool.shutdown();
+		segmentExecutor.shutdown();
+		wakeUpTimer.shutdownNow();
+		finished = true;
+
+		synchronized (onFinishListeners) {
+			onFinishListeners.forEach(Runnable::run);
+			onFinishListeners.clear();
+		}
+	}
+
+	/**
+	 * Checks whether the episode's file already exists and is complete, without downloading it again.
+	 * Only asks the server for the file's length if the feed doesn't announce it.
+	 *
+	 * @return The existing file's audio, or {@code null} if it has to be downloaded.
+	 */
+	@Nullable
+	private AudioVerifier.Result verifyExistingFile(MergedEpisodeData episodeData, Path path) throws IOException, InterruptedException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+
+		String url = episodeData.defaultDownload();
+		long length = url.equals(episodeData.spreakerDownload()) ? episodeData.spreakerFileBytes() : -1;
 
-		if (!path.toFile().exists()) {
-			try (FileOutputStream fileOutputStream = new FileOutputStream(path.toString())) {
-				FileChannel fileChannel = fileOutputStream.getChannel();
-				fileChannel.transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
+		if (length <= 0) {
+			try {
+				length = Http.head(url).headers().firstValueAsLong("Content-Length").orElse(-1);
+			} catch (HttpStatusException e) {
+				Kfdl.LOGGER.debug("{} can't tell its length without downloading: {}", url, e.getMessage());
 			}
 		}
+
+		AudioVerifier.Result result;
+
+		try {
+			result = AudioVerifier.verify(path);
+		} catch (DownloadIntegrityException e) {
+			Kfdl.LOGGER.warn("Existing file {} is damaged, downloading it again: {}", path, e.getMessage());
+			return null;
+		}
+
+		// The server's file additionally holds its own tags, whose length isn't known without reading it
+		if (length < 0 || result.length() > length || result.length() < length - maxServerTagsLength) {
+			Kfdl.LOGGER.warn("Existing file {} is incomplete, downloading it again", path);
+			return null;
+		}
+
+		return result;
 	}
 
-	private void tag(MergedEpisodeData episodeData, Path path) {
+	/**
+	 * Downloads the episode into a part file, resuming a previously interrupted download
+	 * if the server still serves the same file and supports ranges.
+	 */
+	private AudioVerifier.Result download(MergedEpisodeData episodeData, boolean segmented, DownloadProgress downloadProgress)
+			throws IOException, InterruptedException {
+		String url = episodeData.defaultDownload();
+		Path path = workingDir.resolve(episodeData.date().toString() + ".mp3");
+		AudioVerifier.Result existing = verifyExistingFile(episodeData, path);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		PartFile partFile = new PartFile(path);
+		PartFile.State state = partFile.readState(url);
+		String rangeValidator = state == null ? null : PartFile.getRangeValidator(state);
+		boolean resuming = rangeValidator != null;
+		long start = resuming ? state.offset() : 0;
+		HttpRequest.Builder request = Http.request(url).GET();
+
+		if (segmented) {
+			// A bounded first chunk tells whether ranges are supported without wasting a request
+			request.header("Range", "bytes=" + start + "-" + (start + firstSegmentSize - 1));
+		} else if (start > 0) {
+			request.header("Range", "bytes=" + start + "-");
+		}
+
+		if (resuming && (segmented || start > 0)) {
+			request.header("If-Range", rangeValidator);
+		}
+
+		HttpResponse<InputStream> response = Http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+		boolean fallBackToSingleConnection = false;
+		AudioVerifier verifier = null;
+		long length;
+		int tagLength;
+		long skippedLength;
+
+		try (InputStream body = response.body()) {
+			ContentRange contentRange = null;
+
+			if (response.statusCode() == 206) {
+				contentRange = ContentRange.parse(response);
+
+				if (contentRange == null || contentRange.start() != start || (resuming && contentRange.length() != state.length())) {
+					throw new IOException("Server answered range request for " + url + " with unexpected Content-Range");
+				}
+
+				length = contentRange.length();
+
+				if (resuming) {
+					Kfdl.LOGGER.info("Resuming download of episode '{}' at byte {}", episodeData.title(), start);
+				}
+			} else if (response.statusCode() == 200) {
+				length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+			} else {
+				throw new HttpStatusException(response.statusCode(), url);
+			}
+
+			// Error pages are sometimes served with a success status
+			if (response.headers().firstValue("Content-Type").orElse("").startsWith("text/")) {
+				throw new DownloadIntegrityException("Server answered " + url + " with " + response.headers().firstValue("Content-Type").get());
+			}
+
+			// Our own tag replaces the server's, so the response either starts a new part file or continues one
+			boolean fresh = contentRange == null || !resuming;
+			InputStream in = body;
+			byte[] tag;
+
+			if (fresh) {
+				PushbackInputStream pushback = new PushbackInputStream(body, Id3v2Tag.headerLength);
+				byte[] header = pushback.readNBytes(Id3v2Tag.headerLength);
+				pushback.unread(header);
+				in = pushback;
+				skippedLength = Id3v2Tag.getLength(header);
+				long tagStart = System.nanoTime();
+				tag = Id3v2Tag.create(episodeData);
+				tagDuration.observeSince(tagStart);
+				tagLength = tag.length;
+			} else {
+				skippedLength = state.skippedLength();
+				tagLength = state.tagLength();
+				// Keeps the tag up to date with the metadata, as long as it still fits
+				long tagStart = System.nanoTime();
+				tag = Id3v2Tag.create(episodeData, tagLength);
+				tagDuration.observeSince(tagStart);
+			}
+
+			PartFile.State newState = new PartFile.State(url,
+					response.headers().firstValue("ETag").orElse(null),
+					response.headers().firstValue("Last-Modified").orElse(null),
+					length,
+					fresh ? skippedLength : start,
+					fresh ? List.of() : state.completedRanges(),
+					tagLength,
+					skippedLength);
+
+			if (tag != null) {
+				partFile.writeTag(tag);
+			}
+
+			// Drop the part of the server's tag this response contains
+			long bodyStart = contentRange == null ? 0 : contentRange.start();
+			long bodyEnd = contentRange == null ? Long.MAX_VALUE : contentRange.end() + 1;
+			in.skipNBytes(Math.min(Math.max(skippedLength - bodyStart, 0), bodyEnd - bodyStart));
+
+			// Downloads that start from the beginning of the audio can be checked in the same pass
+			if (!segmented || contentRange == null) {
+				verifier = newState.offset() == skippedLength ? new AudioVerifier() : null;
+			}
+
+			if (contentRange == null) {
+				if (segmented) {
+					Kfdl.LOGGER.debug("{} doesn't support range requests, downloading it over a single connection", url);
+				}
+
+				transfer(in, partFile, newState, verifier, downloadProgress);
+			} else if (segmented) {
+				String newRangeValidator = PartFile.getRangeValidator(newState);
+
+				if (length < 0 || newRangeValidator == null) {
+					Kfdl.LOGGER.debug("{} can't be split safely, downloading it over a single connection", url);
+					fallBackToSingleConnection = true;
+				} else {
+					new SegmentedTransfer(partFile, newState, newRangeValidator, segmentExecutor, maxConnectionsPerDownload, transferEngine,
+							(data, position) -> {
+								onReceived(Http.getHost(url), data.remaining(), downloadProgress);
+								return true;
+							})
+							.run(in, new PartFile.Range(Math.max(bodyStart, skippedLength), Math.max(bodyEnd, skippedLength)));
+				}
+			} else {
+				transfer(in, partFile, newState.withCompletedRanges(List.of()), verifier, downloadProgress);
+			}
+		}
+
+		if (fallBackToSingleConnection) {
+			return download(episodeData, false, downloadProgress);
+		}
+
+		AudioVerifier.Result result;
+
 		try {
-			MP3File mp3File = (MP3File) AudioFileIO.read(path.toFile());
-			ID3v24Tag tagContainer = new ID3v24Tag(); // Jellyfin doesn't read full dates from <2.4
-			tagContainer.setField(FieldKey.ALBUM, "Kontrafunk aktuell");
-			tagContainer.setField(FieldKey.TITLE, episodeData.title());
-			tagContainer.setField(FieldKey.LANGUAGE, "deu");
-			tagContainer.setField(FieldKey.YEAR, episodeData.date().toString());
-			tagContainer.setField(FieldKey.ORIGINALRELEASEDATE, episodeData.date().toString());
-
-			if (episodeData.description() != null) {
-				tagContainer.setField(FieldKey.COMMENT, episodeData.description());
-			}
-
-			tagContainer.setField(FieldKey.ALBUM_ARTIST, "Kontrafunk");
-			tagContainer.setField(FieldKey.ARTIST, Stream.of(Collections.singletonList(episodeData.host()), episodeData.guests(), Collections.singletonList(episodeData.commentAuthor()))
-					.flatMap(List::stream)
-					.filter(person -> person != null)
-					.map(person -> person.getName())
-					.collect(Collectors.joining("; ")));
-			tagContainer.setField(FieldKey.GENRE, episodeData.tags().stream().map(tag -> tag.getName()).collect(Collectors.joining("; ")));
-			mp3File.setTag(tagContainer);
-			mp3File.commit();
-		} catch (Exception e) {
-			Kfdl.LOGGER.error("Failed to write ID3 tags to file", e);
+			long feedLength = url.equals(episodeData.spreakerDownload()) ? episodeData.spreakerFileBytes() : -1;
+			long receivedLength = Files.size(partFile.path()) - tagLength + skippedLength;
+
+			if (length < 0 && feedLength > 0 && receivedLength != feedLength) {
+				throw new DownloadIntegrityException("Download of " + url + " ended after " + receivedLength + " bytes, but the feed announced " + feedLength);
+			}
+
+			result = verifier != null ? verifier.finish() : AudioVerifier.verify(partFile.path());
+		} catch (DownloadIntegrityException e) {
+			partFile.delete(); // Its content can't be trusted, so it mustn't be resumed either
+			throw e;
+		}
+
+		stripId3v1Tag(partFile);
+		partFile.complete();
+		return result;
+	}
+
+	/**
+	 * Removes the ID3v1 tag the server's file may end with. It can only be recognized once the download
+	 * is complete, and truncating the part file doesn't rewrite anything.
+	 */
+	private static void stripId3v1Tag(PartFile partFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(partFile.path(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long position = channel.size() - AudioVerifier.id3v1TagLength;
+
+			if (position < 0) {
+				return;
+			}
+
+			ByteBuffer marker = ByteBuffer.allocate(3);
+
+			while (marker.hasRemaining()) {
+				if (channel.read(marker, position + marker.position()) < 0) {
+					return;
+				}
+			}
+
+			if (marker.get(0) == 'T' && marker.get(1) == 'A' && marker.get(2) == 'G') {
+				channel.truncate(position);
+			}
+		}
+	}
+
+	private void transfer(InputStream body, PartFile partFile, PartFile.State state, @Nullable AudioVerifier verifier, DownloadProgress downloadProgress)
+			throws IOException, InterruptedException {
+		String host = Http.getHost(state.url());
+
+		try (ReadableByteChannel in = Channels.newChannel(body);
+				FileChannel out = FileChannel.open(partFile.path(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			long start = state.toFilePosition(state.offset());
+			out.truncate(start);
+
+			if (state.length() >= 0) {
+				TransferEngine.preallocate(out, state.toFilePosition(state.length()));
+			}
+
+			partFile.writeState(state);
+
+			long end = start + transferEngine.transfer(in, out, start, Long.MAX_VALUE, new TransferListener() {
+				private long lastCheckpoint = start;
+
+				@Override
+				public boolean onChunk(ByteBuffer data, long position) throws IOException, InterruptedException {
+					long chunkEnd = position + data.remaining();
+
+					if (verifier != null) {
+						verifier.update(data);
+					}
+
+					onReceived(host, data.remaining(), downloadProgress);
+
+					if (chunkEnd - lastCheckpoint >= checkpointInterval) {
+						// Only record progress that is guaranteed to be on disk
+						out.force(false);
+						lastCheckpoint = chunkEnd;
+						partFile.writeState(state.withOffset(state.toOffset(lastCheckpoint)));
+					}
+
+					return true;
+				}
+			});
+
+			out.force(true);
+			long offset = state.toOffset(end);
+			partFile.writeState(state.withOffset(offset));
+
+			if (state.length() >= 0 && offset != state.length()) {
+				throw new IOException("Download ended after " + offset + " of " + state.length() + " bytes");
+			}
+		}
+	}
+
+	private void onReceived(@Nullable String host, long bytes, DownloadProgress downloadProgress) throws InterruptedException {
+		receivedBytes.add(bytes);
+		downloadProgress.receivedBytes.add(bytes);
+
+		if (concurrency.recordReceived(bytes)) {
+			startNextDownloads();
+		}
+
+		bandwidthLimiter.acquire(host, bytes);
+	}
+
+	/**
+	 * What a download in progress has received so far, for the throughput metrics.
+	 */
+	private static final class DownloadProgress {
+		private final long startNanos = System.nanoTime();
+		private final LongAdder receivedBytes = new LongAdder();
+
+		double getBytesPerSecond() {
+			long elapsedNanos = System.nanoTime() - startNanos;
+			return elapsedNanos <= 0 ? 0 : receivedBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+	}
+
+	/**
+	 * An episode waiting for its next download attempt.
+	 */
+	private record RetryItem(MergedEpisodeData data, long dueNanos) implements Delayed {
+		RetryItem(MergedEpisodeData data, Duration delay) {
+			this(data, System.nanoTime() + delay.toNanos());
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+		}
+	}
+
+	/**
+	 * A parsed {@code Content-Range} header; {@code end} is inclusive, an unknown length is {@code -1}.
+	 */
+	record ContentRange(long start, long end, long length) {
+		@Nullable
+		static ContentRange parse(HttpResponse<?> response) {
+			Matcher matcher = contentRangePattern.matcher(response.headers().firstValue("Content-Range").orElse(""));
+
+			if (!matcher.matches()) {
+				return null;
+			}
+
+			return new ContentRange(Long.parseLong(matcher.group(1)),
+					Long.parseLong(matcher.group(2)),
+					matcher.group(3).equals("*") ? -1 : Long.parseLong(matcher.group(3)));
 		}
 	}
 
 	public void addOnFinish(Runnable onFinish) {
-		if (finished) {
-			onFinish.run();
-		} else {
-			onFinishListeners.add(onFinish);
+		synchronized (onFinishListeners) {
+			if (!finished) {
+				onFinishListeners.add(onFinish);
+				return;
+			}
 		}
+
+		onFinish.run();
+	}
+
+	/**
+	 * Registers a listener for downloads that failed in a way retrying won't fix, like a missing file.
+	 */
+	public void addOnPermanentFailure(Consumer<MergedEpisodeData> onPermanentFailure) {
+		onPermanentFailureListeners.add(onPermanentFailure);
 	}
 }
@@ -0,0 +1,356 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import lombok.Builder;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.CacheFileFormat.Dictionary;
+
+/**
+ * A local catalog of all episodes kfdl has come across, with inverted indexes by host, guest,
+ * any person involved and tag, so questions like "every episode with guest X in 2023" can be
+ * answered without scraping anything or opening the MP3 files. Queries intersect the indexes,
+ * starting with the smallest one, within the requested date range.
+ *
+ * <p>The format of the file is as follows:
+ * <pre>{@code
+ * file    = <header> <episode>*
+ * header  = 'kfdl-catalog' <tab> <major-version> <tab> <minor-version> <newline>
+ * episode = 'E' <tab> <episode-date> <tab> <episode-type> <tab> <title> <tab> <host> <tab> <guests>
+ *           <tab> <comment-author> <tab> <tags> <tab> <site-url> <tab> <description> <newline>
+ * }</pre>
+ * People and tags are referred to by their index in the {@link Dictionary dictionary} of the directory;
+ * version 1 files had a dictionary of their own in front of the episodes. Values are escaped as described in {@link CacheFileFormat}.
+ */
+public class EpisodeCatalog {
+	private static final String V1_HEADER_PREFIX = "kfdl-catalog\t1\t";
+	private static final String V2_HEADER_PREFIX = "kfdl-catalog\t2\t";
+	private static final String V2_0_HEADER = V2_HEADER_PREFIX + "0\n";
+	private final Path catalogFilePath;
+	private final Dictionary dictionary;
+	private final NavigableMap<LocalDate, Episode> episodes = new ConcurrentSkipListMap<>();
+	private final Map<Person, NavigableSet<LocalDate>> byHost = new ConcurrentHashMap<>();
+	private final Map<Person, NavigableSet<LocalDate>> byGuest = new ConcurrentHashMap<>();
+	private final Map<Person, NavigableSet<LocalDate>> byPerson = new ConcurrentHashMap<>();
+	private final Map<Tag, NavigableSet<LocalDate>> byTag = new ConcurrentHashMap<>();
+	private volatile boolean dirty;
+
+	public EpisodeCatalog(Path catalogFile) {
+		this.catalogFilePath = catalogFile;
+		this.dictionary = Dictionary.forCacheFile(catalogFile);
+		readFile();
+	}
+
+	@Nullable
+	public Episode get(LocalDate episodeDate) {
+		return episodes.get(episodeDate);
+	}
+
+	public boolean contains(LocalDate episodeDate) {
+		return episodes.containsKey(episodeDate);
+	}
+
+	public int size() {
+		return episodes.size();
+	}
+
+	/**
+	 * Adds the episode, replacing a previous version of it.
+	 */
+	public void put(MergedEpisodeData data) {
+		put(new Episode(data.date(), data.episodeType(), data.title(), data.host(), data.guests(), data.commentAuthor(),
+				data.tags(), data.siteUrl(), data.description()));
+	}
+
+	private synchronized void put(Episode episode) {
+		Episode previous = episodes.put(episode.date(), episode);
+
+		if (episode.equals(previous)) {
+			return;
+		}
+
+		if (previous != null) {
+			updateIndexes(previous, false);
+		}
+
+		updateIndexes(episode, true);
+		dirty = true;
+	}
+
+	private void updateIndexes(Episode episode, boolean add) {
+		updateIndex(byHost, List.of(episode.host()), episode.date(), add);
+		updateIndex(byGuest, episode.guests(), episode.date(), add);
+		updateIndex(byPerson, episode.getPeople(), episode.date(), add);
+		updateIndex(byTag, episode.tags(), episode.date(), add);
+	}
+
+	private static <K> void updateIndex(Map<K, NavigableSet<LocalDate>> index, Collection<K> keys, LocalDate date, boolean add) {
+		for (K key : keys) {
+			if (add) {
+				index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(date);
+				continue;
+			}
+
+			NavigableSet<LocalDate> dates = index.get(key);
+
+			if (dates != null) {
+				dates.remove(date);
+			}
+		}
+	}
+
+	/**
+	 * Returns all episodes matching every criterion of the query, oldest first.
+	 */
+	public List<Episode> query(Query query) {
+		LocalDate from = query.from() != null ? query.from() : LocalDate.MIN;
+		LocalDate to = query.to() != null ? query.to() : LocalDate.MAX;
+
+		if (from.isAfter(to)) {
+			return List.of();
+		}
+
+		List<NavigableSet<LocalDate>> postings = new ArrayList<>();
+
+		for (String name : query.hosts()) {
+			postings.add(lookUp(byHost, findPerson(name)));
+		}
+
+		for (String name : query.guests()) {
+			postings.add(lookUp(byGuest, findPerson(name)));
+		}
+
+		for (String name : query.people()) {
+			postings.add(lookUp(byPerson, findPerson(name)));
+		}
+
+		for (String name : query.tags()) {
+			postings.add(lookUp(byTag, findTag(name)));
+		}
+
+		Collection<LocalDate> candidates;
+
+		if (postings.isEmpty()) {
+			candidates = episodes.subMap(from, true, to, true).keySet();
+		} else {
+			postings.sort(Comparator.comparingInt(Set::size));
+			candidates = postings.get(0).subSet(from, true, to, true);
+		}
+
+		List<NavigableSet<LocalDate>> otherPostings = postings.isEmpty() ? postings : postings.subList(1, postings.size());
+		List<Episode> ret = new ArrayList<>();
+
+		for (LocalDate date : candidates) {
+			if (otherPostings.stream().allMatch(dates -> dates.contains(date))) {
+				Episode episode = episodes.get(date);
+
+				if (episode != null) {
+					ret.add(episode);
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	private static <K> NavigableSet<LocalDate> lookUp(Map<K, NavigableSet<LocalDate>> index, @Nullable K key) {
+		NavigableSet<LocalDate> dates = key == null ? null : index.get(key);
+		return dates != null ? dates : new ConcurrentSkipListSet<>();
+	}
+
+	/**
+	 * Finds a person by name, ignoring case, without creating one.
+	 */
+	@Nullable
+	private static Person findPerson(String name) {
+		String trimmedName = name.trim();
+
+		for (Person person : Person.values()) {
+			if (person.getName().equalsIgnoreCase(trimmedName)) {
+				return person;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds a tag by name, ignoring case, without creating one.
+	 */
+	@Nullable
+	private static Tag findTag(String name) {
+		String id = name.trim().toLowerCase(Locale.ROOT);
+
+		for (Tag tag : Tag.values()) {
+			if (tag.getId().equals(id)) {
+				return tag;
+			}
+		}
+
+		return null;
+	}
+
+	private void readFile() {
+		if (!Files.exists(catalogFilePath)) {
+			return;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(catalogFilePath);
+			String header = lines.isEmpty() ? "" : lines.get(0) + "\n";
+			Dictionary dictionary;
+
+			if (header.startsWith(V2_HEADER_PREFIX)) {
+				dictionary = this.dictionary;
+			} else if (header.startsWith(V1_HEADER_PREFIX)) {
+				dictionary = new Dictionary();
+			} else {
+				Kfdl.LOGGER.warn("Episode catalog header is invalid, ignoring episode catalog");
+				return;
+			}
+
+			for (String line : lines.subList(1, lines.size())) {
+				try {
+					readLine(line, dictionary);
+				} catch (RuntimeException e) {
+					Kfdl.LOGGER.warn("Episode catalog line is invalid, ignoring line: {}", line, e);
+				}
+			}
+		} catch (IOException e) {
+			Kfdl.LOGGER.error("Failed to read episode catalog", e);
+		}
+
+		dirty = false;
+	}
+
+	private void readLine(String line, Dictionary dictionary) {
+		String[] parts = line.split("\t", -1);
+
+		if (dictionary.readLine(parts)) {
+			return;
+		}
+
+		if (!parts[0].equals("E")) {
+			throw new IllegalArgumentException("Unknown line type: " + parts[0]);
+		}
+
+		if (parts.length != 10) {
+			throw new IllegalArgumentException("Invalid number of parts: " + parts.length);
+		}
+
+		Person host = dictionary.getPerson(CacheFileFormat.unescape(parts[4]));
+
+		if (host == null) {
+			throw new IllegalArgumentException("Missing host");
+		}
+
+		put(new Episode(LocalDate.parse(parts[1]),
+				EpisodeType.valueOf(parts[2]),
+				CacheFileFormat.unescape(parts[3]),
+				host,
+				dictionary.getPersons(parts[5]),
+				dictionary.getPerson(CacheFileFormat.unescape(parts[6])),
+				dictionary.getTags(parts[7]),
+				CacheFileFormat.unescape(parts[8]),
+				CacheFileFormat.unescape(parts[9])));
+	}
+
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		dirty = false;
+		StringBuilder content = new StringBuilder(V2_0_HEADER);
+
+		for (Episode episode : episodes.values()) {
+			content.append('E')
+					.append('\t').append(episode.date())
+					.append('\t').append(episode.episodeType())
+					.append('\t').append(CacheFileFormat.escape(episode.title()))
+					.append('\t').append(dictionary.indexOf(episode.host()))
+					.append('\t').append(dictionary.joinPersons(episode.guests()))
+					.append('\t').append(episode.commentAuthor() == null ? "" : dictionary.indexOf(episode.commentAuthor()))
+					.append('\t').append(dictionary.joinTags(episode.tags()))
+					.append('\t').append(CacheFileFormat.escape(episode.siteUrl()))
+					.append('\t').append(CacheFileFormat.escape(episode.description()))
+					.append('\n');
+		}
+
+		try {
+			dictionary.save();
+			Path tempFile = catalogFilePath.resolveSibling(catalogFilePath.getFileName() + ".tmp");
+			Files.writeString(tempFile, content);
+			Files.move(tempFile, catalogFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			dirty = true;
+			Kfdl.LOGGER.error("Failed to write episode catalog", e);
+		}
+	}
+
+	public record Episode(
+			LocalDate date,
+			EpisodeType episodeType,
+			String title,
+			Person host,
+			List<Person> guests,
+			@Nullable Person commentAuthor,
+			List<Tag> tags,
+			@Nullable String siteUrl,
+			@Nullable String description) {
+		/**
+		 * Returns everyone involved in the episode, in whatever role.
+		 */
+		public Set<Person> getPeople() {
+			Set<Person> people = new LinkedHashSet<>();
+			people.add(host);
+			people.addAll(guests);
+
+			if (commentAuthor != null) {
+				people.add(commentAuthor);
+			}
+
+			return people;
+		}
+	}
+
+	/**
+	 * Criteria episodes have to match all of. People and tags are matched by name, ignoring case.
+	 *
+	 * @param from The earliest episode date to include, or {@code null} for no limit.
+	 * @param to The latest episode date to include, or {@code null} for no limit.
+	 */
+	@Builder
+	public record Query(
+			@Nullable LocalDate from,
+			@Nullable LocalDate to,
+			List<String> hosts,
+			List<String> guests,
+			List<String> people,
+			List<String> tags) {
+		public Query {
+			hosts = hosts != null ? hosts : List.of();
+			guests = guests != null ? guests : List.of();
+			people = people != null ? people : List.of();
+			tags = tags != null ? tags : List.of();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.CacheFileFormat.Dictionary;
+import com.github.nebelnidas.kfdl.core.KontrafunkScraper.WebsiteEpisodeData;
+
+/**
+ * Keeps scraped episode metadata and resolved download links across runs, so only
+ * episodes whose data is missing or stale have to be scraped again. Stale entries are
+ * revalidated with a conditional request first. Resolved download links expire after the same time,
+ * or as soon as downloading from them failed for good. Episodes that couldn't be scraped are
+ * remembered as well and only retried after an exponentially growing delay.
+ *
+ * <p>The format of the file is as follows:
+ * <pre>{@code
+ * file    = <header> (<entry> | <failure>)*
+ * header  = 'kfdl-metadata' <tab> <major-version> <tab> <minor-version> <newline>
+ * entry   = 'E' <tab> <episode-date> <tab> <validated-at> <tab> <etag> <tab> <last-modified> <tab> <page-url>
+ *           <tab> <host> <tab> <guests> <tab> <beitrag-author> <tab> <comment-author> <tab> <description>
+ *           <tab> <download-link> <tab> <tags> <tab> <resolved-download> <tab> <resolved-at> <newline>
+ * failure = 'F' <tab> <episode-date> <tab> <failure-count> <tab> <next-attempt-at> <newline>
+ * }</pre>
+ * People and tags are referred to by their index in the {@link Dictionary dictionary} of the directory;
+ * version 2 files had a dictionary of their own in front of the entries, version 1 files contained the
+ * names instead. Version 2.0 files lack {@code <resolved-at>}, their links count as resolved
+ * when the entry was last validated. Values are escaped as described in {@link CacheFileFormat}.
+ */
+public class EpisodeMetadataCache {
+	private static final String V1_HEADER_PREFIX = "kfdl-metadata\t1\t";
+	private static final String V2_HEADER_PREFIX = "kfdl-metadata\t2\t";
+	private static final String V3_HEADER_PREFIX = "kfdl-metadata\t3\t";
+	private static final String V3_0_HEADER = V3_HEADER_PREFIX + "0\n";
+	private static final Duration recentEpisodeTtl = Duration.ofHours(12);
+	private static final Duration pastEpisodeTtl = Duration.ofDays(30);
+	private static final Duration recentEpisodeAge = Duration.ofDays(14);
+	private static final Duration initialBackoff = Duration.ofHours(1);
+	private static final Duration maxBackoff = Duration.ofDays(7);
+	private final Path cacheFilePath;
+	private final Dictionary dictionary;
+	private final Map<LocalDate, Entry> entries = new ConcurrentSkipListMap<>();
+	private final Map<LocalDate, Failure> failures = new ConcurrentSkipListMap<>();
+	private volatile boolean dirty;
+
+	public EpisodeMetadataCache(Path cacheFile) {
+		this.cacheFilePath = cacheFile;
+		this.dictionary = Dictionary.forCacheFile(cacheFile);
+		readFile();
+	}
+
+	/**
+	 * Returns the cached data regardless of its age.
+	 */
+	@Nullable
+	public Entry get(LocalDate episodeDate) {
+		return entries.get(episodeDate);
+	}
+
+	/**
+	 * Returns the cached data if it is still fresh, or if the page reports it hasn't changed since.
+	 */
+	@Nullable
+	public Entry getValid(LocalDate episodeDate) throws InterruptedException {
+		Entry entry = entries.get(episodeDate);
+
+		if (entry == null) {
+			return null;
+		}
+
+		Instant now = Instant.now();
+
+		if (isFresh(entry.validatedAt(), episodeDate) || entry.data().url() == null) {
+			return entry;
+		}
+
+		if (!isUnchanged(entry)) {
+			return null;
+		}
+
+		Entry revalidated = entry.withValidatedAt(now);
+		entries.put(episodeDate, revalidated);
+		dirty = true;
+		return revalidated;
+	}
+
+	/**
+	 * Returns the download link {@link DownloadLinkResolver} settled on, unless it has to be resolved again.
+	 */
+	@Nullable
+	public String getResolvedDownload(LocalDate episodeDate) {
+		Entry entry = entries.get(episodeDate);
+
+		if (entry == null || entry.resolvedDownload() == null || !isFresh(entry.resolvedAt(), episodeDate)) {
+			return null;
+		}
+
+		return entry.resolvedDownload();
+	}
+
+	private static boolean isFresh(Instant since, LocalDate episodeDate) {
+		boolean recent = episodeDate.atStartOfDay().plus(recentEpisodeAge).isAfter(LocalDate.now().atStartOfDay());
+		return since.plus(recent ? recentEpisodeTtl : pastEpisodeTtl).isAfter(Instant.now());
+	}
+
+	/**
+	 * Asks with a conditional HEAD request, so a changed page isn't downloaded twice before it's scraped again.
+	 */
+	private boolean isUnchanged(Entry entry) throws InterruptedException {
+		WebsiteEpisodeData data = entry.data();
+
+		if (data.etag() == null && data.lastModified() == null) {
+			return false;
+		}
+
+		HttpRequest.Builder request = Http.request(data.url()).method("HEAD", HttpRequest.BodyPublishers.noBody());
+
+		if (data.etag() != null) {
+			request.header("If-None-Match", data.etag());
+		}
+
+		if (data.lastModified() != null) {
+			request.header("If-Modified-Since", data.lastModified());
+		}
+
+		try {
+			return Http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 304;
+		} catch (IOException e) {
+			Kfdl.LOGGER.debug("Failed to revalidate cached metadata of {}", data.url(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Whether scraping this episode failed recently enough that it shouldn't be retried yet.
+	 */
+	public boolean isBackingOff(LocalDate episodeDate) {
+		Failure failure = failures.get(episodeDate);
+		return failure != null && failure.nextAttemptAt().isAfter(Instant.now());
+	}
+
+	/**
+	 * Returns the dates of all episodes whose last scraping attempt failed.
+	 */
+	public Set<LocalDate> getFailedDates() {
+		return Collections.unmodifiableSet(failures.keySet());
+	}
+
+	public void put(WebsiteEpisodeData data) {
+		entries.put(data.date(), new Entry(data, null, null, Instant.now()));
+		failures.remove(data.date());
+		dirty = true;
+	}
+
+	public void putResolvedDownload(LocalDate episodeDate, String url) {
+		entries.computeIfPresent(episodeDate, (date, entry) -> new Entry(entry.data(), url, Instant.now(), entry.validatedAt()));
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the resolved download link, so it's resolved again next time.
+	 */
+	public void removeResolvedDownload(LocalDate episodeDate) {
+		entries.computeIfPresent(episodeDate, (date, entry) -> new Entry(entry.data(), null, null, entry.validatedAt()));
+		dirty = true;
+	}
+
+	public void recordFailure(LocalDate episodeDate) {
+		Failure failure = failures.compute(episodeDate, (date, previous) -> {
+			int count = previous == null ? 1 : previous.count() + 1;
+			Duration backoff = initialBackoff.multipliedBy(1L << Math.min(count - 1, 20));
+
+			if (backoff.compareTo(maxBackoff) > 0) {
+				backoff = maxBackoff;
+			}
+
+			return new Failure(count, Instant.now().plus(backoff));
+		});
+
+		dirty = true;
+		Kfdl.LOGGER.debug("Scraping {} failed {} time(s), not retrying before {}", episodeDate, failure.count(), failure.nextAttemptAt());
+	}
+
+	private void readFile() {
+		if (!Files.exists(cacheFilePath)) {
+			return;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(cacheFilePath);
+
+			String header = lines.isEmpty() ? "" : lines.get(0) + "\n";
+			Dictionary dictionary;
+
+			if (header.startsWith(V3_HEADER_PREFIX)) {
+				dictionary = this.dictionary;
+			} else if (header.startsWith(V2_HEADER_PREFIX)) {
+				dictionary = new Dictionary();
+			} else if (header.startsWith(V1_HEADER_PREFIX)) {
+				dictionary = null;
+			} else {
+				Kfdl.LOGGER.warn("Metadata cache header is invalid, ignoring metadata cache");
+				return;
+			}
+
+			for (String line : lines.subList(1, lines.size())) {
+				try {
+					readLine(line, dictionary);
+				} catch (RuntimeException e) {
+					Kfdl.LOGGER.warn("Metadata cache line is invalid, ignoring line: {}", line, e);
+				}
+			}
+		} catch (IOException e) {
+			Kfdl.LOGGER.error("Failed to read metadata cache", e);
+		}
+	}
+
+	/**
+	 * @param dictionary The people and tags read so far, or {@code null} if the file refers to them by name.
+	 */
+	private void readLine(String line, @Nullable Dictionary dictionary) {
+		String[] parts = line.split("\t", -1);
+
+		if (dictionary != null && dictionary.readLine(parts)) {
+			return;
+		}
+
+		switch (parts[0]) {
+			case "E" -> {
+				if (parts.length != 14 && parts.length != 15) {
+					throw new IllegalArgumentException("Invalid number of parts: " + parts.length);
+				}
+
+				Instant validatedAt = Instant.parse(parts[2]);
+				String resolvedDownload = CacheFileFormat.unescape(parts[13]);
+				Instant resolvedAt = null;
+
+				if (resolvedDownload != null) {
+					resolvedAt = parts.length == 15 ? Instant.parse(parts[14]) : validatedAt;
+				}
+
+				WebsiteEpisodeData data = WebsiteEpisodeData.builder()
+						.date(LocalDate.parse(parts[1]))
+						.etag(CacheFileFormat.unescape(parts[3]))
+						.lastModified(CacheFileFormat.unescape(parts[4]))
+						.url(CacheFileFormat.unescape(parts[5]))
+						.host(Objects.requireNonNull(toPerson(CacheFileFormat.unescape(parts[6]), dictionary)))
+						.guests(toPersons(parts[7], dictionary))
+						.beitragAuthor(toPerson(CacheFileFormat.unescape(parts[8]), dictionary))
+						.commentAuthor(toPerson(CacheFileFormat.unescape(parts[9]), dictionary))
+						.description(CacheFileFormat.unescape(parts[10]))
+						.downloadLink(CacheFileFormat.unescape(parts[11]))
+						.tags(toTags(parts[12], dictionary))
+						.build();
+				entries.put(data.date(), new Entry(data, resolvedDownload, resolvedAt, validatedAt));
+			}
+			case "F" -> {
+				if (parts.length != 4) {
+					throw new IllegalArgumentException("Invalid number of parts: " + parts.length);
+				}
+
+				failures.put(LocalDate.parse(parts[1]), new Failure(Integer.parseInt(parts[2]), Instant.parse(parts[3])));
+			}
+			default -> throw new IllegalArgumentException("Unknown line type: " + parts[0]);
+		}
+	}
+
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		dirty = false;
+		StringBuilder content = new StringBuilder(V3_0_HEADER);
+
+		for (Entry entry : entries.values()) {
+			WebsiteEpisodeData data = entry.data();
+			content.append('E')
+					.append('\t').append(data.date())
+					.append('\t').append(entry.validatedAt())
+					.append('\t').append(CacheFileFormat.escape(data.etag()))
+					.append('\t').append(CacheFileFormat.escape(data.lastModified()))
+					.append('\t').append(CacheFileFormat.escape(data.url()))
+					.append('\t').append(dictionary.indexOf(data.host()))
+					.append('\t').append(dictionary.joinPersons(data.guests()))
+					.append('\t').append(data.beitragAuthor() == null ? "" : dictionary.indexOf(data.beitragAuthor()))
+					.append('\t').append(data.commentAuthor() == null ? "" : dictionary.indexOf(data.commentAuthor()))
+					.append('\t').append(CacheFileFormat.escape(data.description()))
+					.append('\t').append(CacheFileFormat.escape(data.downloadLink()))
+					.append('\t').append(dictionary.joinTags(data.tags()))
+					.append('\t').append(CacheFileFormat.escape(entry.resolvedDownload()))
+					.append('\t').append(entry.resolvedAt() == null ? "" : entry.resolvedAt())
+					.append('\n');
+		}
+
+		for (Map.Entry<LocalDate, Failure> failure : failures.entrySet()) {
+			content.append('F')
+					.append('\t').append(failure.getKey())
+					.append('\t').append(failure.getValue().count())
+					.append('\t').append(failure.getValue().nextAttemptAt())
+					.append('\n');
+		}
+
+		try {
+			dictionary.save();
+			Path tempFile = cacheFilePath.resolveSibling(cacheFilePath.getFileName() + ".tmp");
+			Files.writeString(tempFile, content);
+			Files.move(tempFile, cacheFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			dirty = true;
+			Kfdl.LOGGER.error("Failed to write metadata cache", e);
+		}
+	}
+
+	@Nullable
+	private static Person toPerson(@Nullable String value, @Nullable Dictionary dictionary) {
+		if (dictionary != null) {
+			return dictionary.getPerson(value);
+		}
+
+		return value == null ? null : Person.getOrCreate(value);
+	}
+
+	private static List<Person> toPersons(String value, @Nullable Dictionary dictionary) {
+		if (dictionary != null) {
+			return dictionary.getPersons(value);
+		}
+
+		return CacheFileFormat.unescapeList(value).stream().map(Person::getOrCreate).toList();
+	}
+
+	private static List<Tag> toTags(String value, @Nullable Dictionary dictionary) {
+		if (dictionary != null) {
+			return dictionary.getTags(value);
+		}
+
+		return CacheFileFormat.unescapeList(value).stream().map(Tag::getOrCreate).toList();
+	}
+
+	/**
+	 * A cached episode.
+	 *
+	 * @param resolvedDownload The download link {@link DownloadLinkResolver} settled on, if it already ran.
+	 * @param resolvedAt When {@code resolvedDownload} was resolved.
+	 * @param validatedAt When the data was last scraped or confirmed to be unchanged.
+	 */
+	public record Entry(WebsiteEpisodeData data, @Nullable String resolvedDownload, @Nullable Instant resolvedAt, Instant validatedAt) {
+		Entry withValidatedAt(Instant validatedAt) {
+			return new Entry(data, resolvedDownload, resolvedAt, validatedAt);
+		}
+	}
+
+	private record Failure(int count, Instant nextAttemptAt) { }
+}
@@ -0,0 +1,43 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A parsed episode page. Only the XPath subset used by {@link KontrafunkScraper} has to be supported.
+ */
+public interface EpisodePage extends AutoCloseable {
+	@Nullable
+	PageNode getFirstByXPath(String xPath);
+
+	List<PageNode> getByXPath(String xPath);
+
+	@Nullable
+	String getResponseHeader(String name);
+
+	@Override
+	void close();
+
+	interface PageNode {
+		String TEXT_NODE_NAME = "#text";
+
+		/**
+		 * The lower case tag name, or {@value #TEXT_NODE_NAME} for text nodes.
+		 */
+		String getNodeName();
+
+		@Nullable
+		String getAttribute(String name);
+
+		String asNormalizedText();
+
+		@Nullable
+		PageNode getPreviousSibling();
+
+		@Nullable
+		PageNode getNextSibling();
+
+		List<PageNode> getChildNodes();
+	}
+}
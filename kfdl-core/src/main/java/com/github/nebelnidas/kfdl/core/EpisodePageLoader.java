@@ -0,0 +1,13 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+
+/**
+ * Fetches and parses kontrafunk.radio episode pages.
+ */
+public interface EpisodePageLoader {
+	/**
+	 * @throws HttpStatusException If the page couldn't be retrieved, e.g. because it doesn't exist.
+	 */
+	EpisodePage load(String url) throws IOException;
+}
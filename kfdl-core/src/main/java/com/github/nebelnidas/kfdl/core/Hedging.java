@@ -0,0 +1,88 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs alternative ways of obtaining the same result and keeps the first one that succeeds.
+ */
+final class Hedging {
+	private Hedging() {
+	}
+
+	/**
+	 * Starts the candidates in order. The next candidate is started as soon as a running one fails,
+	 * or once {@code hedgeDelayMillis} have passed without any of the running ones finishing.
+	 * Candidates still running once a winner has been found are cancelled.
+	 *
+	 * @param maxConcurrent How many candidates may run at the same time.
+	 * @param hedgeDelayMillis How long to wait for the running candidates before starting another one.
+	 * @return The first successful candidate.
+	 * @throws ExecutionException If all candidates failed. The first failure is the cause,
+	 *         the remaining ones are attached as suppressed exceptions.
+	 */
+	static <T> Winner<T> firstSuccess(ExecutorService executor, List<? extends Callable<T>> candidates, int maxConcurrent, long hedgeDelayMillis)
+			throws ExecutionException, InterruptedException {
+		if (candidates.isEmpty()) {
+			throw new IllegalArgumentException("No candidates given");
+		}
+
+		CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		Map<Future<T>, Integer> running = new HashMap<>();
+		ExecutionException failure = null;
+		int next = 0;
+
+		try {
+			running.put(completionService.submit(candidates.get(next)), next++);
+
+			while (!running.isEmpty()) {
+				boolean canHedge = next < candidates.size() && running.size() < maxConcurrent;
+				Future<T> done = canHedge
+						? completionService.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS)
+						: completionService.take();
+
+				if (done == null) {
+					running.put(completionService.submit(candidates.get(next)), next++);
+					continue;
+				}
+
+				int index = running.remove(done);
+
+				try {
+					return new Winner<>(index, done.get());
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e;
+					} else {
+						failure.addSuppressed(e.getCause());
+					}
+				}
+
+				if (next < candidates.size()) {
+					running.put(completionService.submit(candidates.get(next)), next++);
+				}
+			}
+
+			throw failure;
+		} finally {
+			for (Future<T> future : running.keySet()) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * The result of the first successful candidate.
+	 *
+	 * @param index The winning candidate's position in the list passed to {@link #firstSuccess}.
+	 */
+	record Winner<T>(int index, T value) { }
+}
@@ -0,0 +1,164 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Coordinates all requests kfdl sends to the same host: at most {@code maxConcurrentPerHost} may be
+ * in flight at once (a request counts until its response has been received, or just its headers if the
+ * body is streamed), consecutive request starts are at least {@code minSpacing} apart, and a
+ * {@code Retry-After} answer pauses the host.
+ */
+final class HostScheduler {
+	private static final Duration defaultRetryAfter = Duration.ofSeconds(10);
+	private static final Duration maxRetryAfter = Duration.ofMinutes(10);
+	private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+	private final int maxConcurrentPerHost;
+	private final long minSpacingNanos;
+
+	HostScheduler(int maxConcurrentPerHost, Duration minSpacing) {
+		this.maxConcurrentPerHost = Math.max(maxConcurrentPerHost, 1);
+		this.minSpacingNanos = minSpacing.toNanos();
+	}
+
+	/**
+	 * Blocks until a request to the host may start. The returned permit has to be closed once the request is done.
+	 */
+	Permit acquire(@Nullable String host) throws InterruptedException {
+		HostState state = hosts.computeIfAbsent(host == null ? "" : host, key -> new HostState());
+		state.acquire();
+		return new Permit(state);
+	}
+
+	/**
+	 * Pauses the host if the response asks for it.
+	 */
+	void handleResponse(@Nullable String host, int statusCode, @Nullable String retryAfter) {
+		if (statusCode != 429 && statusCode != 503) {
+			return;
+		}
+
+		Duration delay = parseRetryAfter(retryAfter);
+
+		if (delay == null) {
+			if (statusCode == 503) {
+				return; // Without Retry-After, a 503 may just as well be a one-off
+			}
+
+			delay = defaultRetryAfter;
+		}
+
+		if (delay.compareTo(maxRetryAfter) > 0) {
+			delay = maxRetryAfter;
+		}
+
+		Kfdl.LOGGER.info("{} answered with HTTP {}, pausing requests to it for {} s", host, statusCode, delay.toSeconds());
+		hosts.computeIfAbsent(host == null ? "" : host, key -> new HostState()).pause(delay);
+	}
+
+	@Nullable
+	private static Duration parseRetryAfter(@Nullable String retryAfter) {
+		if (retryAfter == null || retryAfter.isBlank()) {
+			return null;
+		}
+
+		try {
+			return Duration.ofSeconds(Math.max(Long.parseLong(retryAfter.trim()), 0));
+		} catch (NumberFormatException e) {
+			// Not delay-seconds, so it should be an HTTP date
+		}
+
+		try {
+			Duration delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+			return delay.isNegative() ? Duration.ZERO : delay;
+		} catch (DateTimeParseException e) {
+			Kfdl.LOGGER.debug("Ignoring unparsable Retry-After header: {}", retryAfter);
+			return null;
+		}
+	}
+
+	/**
+	 * Guarded by a {@link Lock} rather than a monitor, so waiting virtual threads don't pin their carriers.
+	 */
+	private final class HostState {
+		private final Lock lock = new ReentrantLock();
+		private final Condition changed = lock.newCondition();
+		private int active;
+		private long nextStartNanos = System.nanoTime();
+
+		void acquire() throws InterruptedException {
+			lock.lock();
+
+			try {
+				while (true) {
+					long waitNanos = nextStartNanos - System.nanoTime();
+
+					if (active < maxConcurrentPerHost && waitNanos <= 0) {
+						break;
+					}
+
+					if (active >= maxConcurrentPerHost) {
+						changed.await();
+					} else {
+						changed.awaitNanos(waitNanos);
+					}
+				}
+
+				active++;
+				nextStartNanos = System.nanoTime() + minSpacingNanos;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release() {
+			lock.lock();
+
+			try {
+				active--;
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void pause(Duration delay) {
+			lock.lock();
+
+			try {
+				nextStartNanos = Math.max(nextStartNanos, System.nanoTime() + delay.toNanos());
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The right to have one request in flight. Closing it more than once has no effect.
+	 */
+	static final class Permit implements AutoCloseable {
+		private final HostState state;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Permit(HostState state) {
+			this.state = state;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				state.release();
+			}
+		}
+	}
+}
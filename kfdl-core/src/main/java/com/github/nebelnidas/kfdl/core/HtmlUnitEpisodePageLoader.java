@@ -0,0 +1,128 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.htmlunit.FailingHttpStatusCodeException;
+import org.htmlunit.WebClient;
+import org.htmlunit.html.DomElement;
+import org.htmlunit.html.DomNode;
+import org.htmlunit.html.HtmlPage;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.EpisodePage.PageNode;
+
+/**
+ * Loads pages into a full HtmlUnit DOM. Slow, but as close to a real browser as it gets.
+ */
+public class HtmlUnitEpisodePageLoader implements EpisodePageLoader {
+	@Override
+	public EpisodePage load(String url) throws IOException {
+		WebClient webClient = new WebClient();
+		webClient.getOptions().setCssEnabled(false);
+		webClient.getOptions().setJavaScriptEnabled(false);
+		webClient.getOptions().setPrintContentOnFailingStatusCode(false);
+
+		// HtmlUnit brings its own HTTP stack, so it has to ask the host scheduler itself
+		HostScheduler.Permit permit;
+
+		try {
+			permit = Http.acquirePermit(url);
+		} catch (InterruptedException e) {
+			webClient.close();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching " + url, e);
+		}
+
+		try {
+			return new HtmlUnitEpisodePage(webClient, webClient.getPage(url));
+		} catch (FailingHttpStatusCodeException e) {
+			webClient.close();
+			Http.handleResponse(url, e.getStatusCode(), e.getResponse().getResponseHeaderValue("Retry-After"));
+			throw new HttpStatusException(e.getStatusCode(), url);
+		} catch (IOException | RuntimeException e) {
+			webClient.close();
+			throw e;
+		} finally {
+			permit.close();
+		}
+	}
+
+	private record HtmlUnitEpisodePage(WebClient webClient, HtmlPage page) implements EpisodePage {
+		@Override
+		@Nullable
+		public PageNode getFirstByXPath(String xPath) {
+			Object node = page.getFirstByXPath(xPath);
+			return node == null ? null : new HtmlUnitPageNode((DomNode) node);
+		}
+
+		@Override
+		public List<PageNode> getByXPath(String xPath) {
+			return wrap(page.getByXPath(xPath));
+		}
+
+		@Override
+		@Nullable
+		public String getResponseHeader(String name) {
+			return page.getWebResponse().getResponseHeaderValue(name);
+		}
+
+		@Override
+		public void close() {
+			webClient.close();
+		}
+	}
+
+	private record HtmlUnitPageNode(DomNode node) implements PageNode {
+		@Override
+		public String getNodeName() {
+			return node.getNodeName();
+		}
+
+		@Override
+		@Nullable
+		public String getAttribute(String name) {
+			if (!(node instanceof DomElement element)) {
+				return null;
+			}
+
+			String value = element.getAttribute(name);
+			return value == DomElement.ATTRIBUTE_NOT_DEFINED ? null : value;
+		}
+
+		@Override
+		public String asNormalizedText() {
+			return node.asNormalizedText();
+		}
+
+		@Override
+		@Nullable
+		public PageNode getPreviousSibling() {
+			DomNode sibling = node.getPreviousSibling();
+			return sibling == null ? null : new HtmlUnitPageNode(sibling);
+		}
+
+		@Override
+		@Nullable
+		public PageNode getNextSibling() {
+			DomNode sibling = node.getNextSibling();
+			return sibling == null ? null : new HtmlUnitPageNode(sibling);
+		}
+
+		@Override
+		public List<PageNode> getChildNodes() {
+			return wrap(node.getChildNodes());
+		}
+	}
+
+	private static List<PageNode> wrap(List<?> nodes) {
+		List<PageNode> ret = new ArrayList<>(nodes.size());
+
+		for (Object node : nodes) {
+			ret.add(new HtmlUnitPageNode((DomNode) node));
+		}
+
+		return ret;
+	}
+}
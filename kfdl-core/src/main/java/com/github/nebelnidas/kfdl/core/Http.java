@@ -0,0 +1,90 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds the HTTP client shared by all of kfdl's outbound requests, and routes them
+ * through the {@link HostScheduler}.
+ */
+final class Http {
+	static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(90);
+	private static final HttpClient client = HttpClient.newBuilder()
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.connectTimeout(Duration.ofSeconds(30))
+			.build();
+	private static volatile HostScheduler scheduler = new HostScheduler(6, Duration.ZERO);
+
+	private Http() {
+	}
+
+	static HttpRequest.Builder request(String url) {
+		return HttpRequest.newBuilder(URI.create(url.replace(" ", "%20")))
+				.timeout(REQUEST_TIMEOUT);
+	}
+
+	@Nullable
+	static String getHost(String url) {
+		return URI.create(url.replace(" ", "%20")).getHost();
+	}
+
+	static void setScheduler(HostScheduler scheduler) {
+		Http.scheduler = scheduler;
+	}
+
+	/**
+	 * Waits for the scheduler's permission to contact the URL's host. Only needed for requests
+	 * that don't go through {@link #send}.
+	 */
+	static HostScheduler.Permit acquirePermit(String url) throws InterruptedException {
+		return scheduler.acquire(getHost(url));
+	}
+
+	static void handleResponse(String url, int statusCode, @Nullable String retryAfter) {
+		scheduler.handleResponse(getHost(url), statusCode, retryAfter);
+	}
+
+	/**
+	 * Sends the request once the scheduler allows it. Streamed response bodies only count against
+	 * the host's concurrency limit until their headers have arrived, so long downloads don't hold up
+	 * other requests; how many of them run at once is up to the {@link Downloader}.
+	 */
+	static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+		String host = request.uri().getHost();
+		HostScheduler.Permit permit = scheduler.acquire(host);
+		HttpResponse<T> response;
+
+		try {
+			response = client.send(request, bodyHandler);
+		} finally {
+			permit.close();
+		}
+
+		scheduler.handleResponse(host, response.statusCode(), response.headers().firstValue("Retry-After").orElse(null));
+		return response;
+	}
+
+	/**
+	 * Issues a HEAD request and returns the response if its status is 200.
+	 *
+	 * @throws HttpStatusException If the server answered with any other status.
+	 */
+	static HttpResponse<Void> head(String url) throws IOException, InterruptedException {
+		HttpRequest request = request(url)
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.build();
+		HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+
+		if (response.statusCode() != 200) {
+			throw new HttpStatusException(response.statusCode(), url);
+		}
+
+		return response;
+	}
+}
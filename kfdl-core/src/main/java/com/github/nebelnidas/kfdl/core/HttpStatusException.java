@@ -0,0 +1,20 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers with a status code the caller can't work with.
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+	private final int statusCode;
+
+	public HttpStatusException(int statusCode, String url) {
+		super("Unexpected HTTP status " + statusCode + " for " + url);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
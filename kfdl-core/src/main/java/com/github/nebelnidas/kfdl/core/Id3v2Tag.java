@@ -0,0 +1,146 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Builds the ID3v2.4 tags kfdl puts in front of downloaded episodes (Jellyfin doesn't read full dates
+ * from older versions), and recognizes the tags the files come with, so they can be skipped while
+ * streaming. Tags are followed by zero padding, which leaves room to edit them in place later.
+ */
+final class Id3v2Tag {
+	static final int headerLength = 10;
+	private static final int padding = 4 * 1024;
+	private static final byte utf8Encoding = 3;
+	private static final int footerFlag = 0x10;
+
+	private Id3v2Tag() {
+	}
+
+	/**
+	 * Creates a tag for the episode, with the default amount of padding.
+	 */
+	static byte[] create(MergedEpisodeData episodeData) {
+		byte[] frames = createFrames(episodeData);
+		return createTag(frames, headerLength + frames.length + padding);
+	}
+
+	/**
+	 * Creates a tag for the episode that is exactly {@code length} bytes long, so it can replace
+	 * an earlier one in place.
+	 *
+	 * @return The tag, or {@code null} if its frames don't fit.
+	 */
+	@Nullable
+	static byte[] create(MergedEpisodeData episodeData, int length) {
+		byte[] frames = createFrames(episodeData);
+
+		if (headerLength + frames.length > length) {
+			return null;
+		}
+
+		return createTag(frames, length);
+	}
+
+	private static byte[] createFrames(MergedEpisodeData episodeData) {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		String date = episodeData.date().toString();
+
+		writeTextFrame(frames, "TALB", "Kontrafunk aktuell");
+		writeTextFrame(frames, "TIT2", episodeData.title());
+		writeTextFrame(frames, "TLAN", "deu");
+		writeTextFrame(frames, "TDRC", date);
+		writeTextFrame(frames, "TDOR", date);
+
+		if (episodeData.description() != null && !episodeData.description().isEmpty()) {
+			// Language, empty description, then the comment itself
+			ByteArrayOutputStream comment = new ByteArrayOutputStream();
+			comment.write(utf8Encoding);
+			comment.writeBytes("deu".getBytes(StandardCharsets.ISO_8859_1));
+			comment.write(0);
+			comment.writeBytes(episodeData.description().getBytes(StandardCharsets.UTF_8));
+			writeFrame(frames, "COMM", comment.toByteArray());
+		}
+
+		writeTextFrame(frames, "TPE2", "Kontrafunk");
+		writeTextFrame(frames, "TPE1", Stream.of(Collections.singletonList(episodeData.host()), episodeData.guests(), Collections.singletonList(episodeData.commentAuthor()))
+				.flatMap(List::stream)
+				.filter(person -> person != null)
+				.map(person -> person.getName())
+				.collect(Collectors.joining("; ")));
+		writeTextFrame(frames, "TCON", episodeData.tags().stream().map(tag -> tag.getName()).collect(Collectors.joining("; ")));
+		return frames.toByteArray();
+	}
+
+	private static void writeTextFrame(ByteArrayOutputStream out, String id, String text) {
+		if (text.isEmpty()) {
+			return;
+		}
+
+		byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+		byte[] content = new byte[encoded.length + 1];
+		content[0] = utf8Encoding;
+		System.arraycopy(encoded, 0, content, 1, encoded.length);
+		writeFrame(out, id, content);
+	}
+
+	private static void writeFrame(ByteArrayOutputStream out, String id, byte[] content) {
+		out.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		writeSynchsafe(out, content.length);
+		out.write(0); // Status flags
+		out.write(0); // Format flags
+		out.writeBytes(content);
+	}
+
+	private static byte[] createTag(byte[] frames, int length) {
+		ByteArrayOutputStream tag = new ByteArrayOutputStream(length);
+		tag.writeBytes("ID3".getBytes(StandardCharsets.ISO_8859_1));
+		tag.write(4); // Major version
+		tag.write(0); // Revision
+		tag.write(0); // Flags
+		writeSynchsafe(tag, length - headerLength);
+		tag.writeBytes(frames);
+		tag.writeBytes(new byte[length - headerLength - frames.length]);
+		return tag.toByteArray();
+	}
+
+	/**
+	 * Writes a 32 bit integer that only uses the lower 7 bits of each byte, as ID3v2.4 does for all sizes.
+	 */
+	private static void writeSynchsafe(ByteArrayOutputStream out, int value) {
+		out.write((value >> 21) & 0x7F);
+		out.write((value >> 14) & 0x7F);
+		out.write((value >> 7) & 0x7F);
+		out.write(value & 0x7F);
+	}
+
+	/**
+	 * Returns the full length of the ID3v2 tag starting with the given header, including its
+	 * footer if it has one, or {@code 0} if the bytes don't start a tag.
+	 */
+	static long getLength(byte[] header) {
+		if (header.length < headerLength
+				|| header[0] != 'I' || header[1] != 'D' || header[2] != '3'
+				|| header[3] == (byte) 0xFF || header[4] == (byte) 0xFF) {
+			return 0;
+		}
+
+		long size = 0;
+
+		for (int i = 6; i < headerLength; i++) {
+			if ((header[i] & 0x80) != 0) {
+				return 0;
+			}
+
+			size = (size << 7) | header[i];
+		}
+
+		return headerLength + size + ((header[5] & footerFlag) != 0 ? headerLength : 0);
+	}
+}
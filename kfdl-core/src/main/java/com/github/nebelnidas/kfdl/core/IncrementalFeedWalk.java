@@ -0,0 +1,113 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
+
+/**
+ * A single walk over the Spreaker feed, which is sorted newest first. Once enough consecutive episodes are
+ * already downloaded, nothing older is still pending and everything older was walked before, the rest of
+ * the back catalogue is skipped. Afterwards, {@link #getNextWalkedThrough(int)} tells how far the feed
+ * counts as walked.
+ */
+final class IncrementalFeedWalk {
+	private static final Histogram parseDuration = PipelineStage.getDurationHistogram("feed");
+	@Nullable
+	private final LocalDate walkedThrough;
+	@Nullable
+	private final LocalDate oldestPending;
+	private final int threshold;
+	@Nullable
+	private LocalDate newestWalked;
+	private boolean walkedCompletely;
+
+	/**
+	 * @param walkedThrough See {@link SpreakerFeedSync#getWalkedThrough()}.
+	 * @param oldestPending The oldest episode that still has to be handled, or {@code null} if there's none.
+	 * @param threshold After how many consecutive already downloaded episodes the walk may stop, or {@code 0} to never stop early.
+	 */
+	IncrementalFeedWalk(@Nullable LocalDate walkedThrough, @Nullable LocalDate oldestPending, int threshold) {
+		this.walkedThrough = walkedThrough;
+		this.oldestPending = oldestPending;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Hands each episode that isn't downloaded yet to {@code pending}, and each downloaded one to {@code downloaded}.
+	 * Wochenrückblick episodes are skipped.
+	 */
+	void walk(Iterator<SpreakerEpisodeData> feed, Set<LocalDate> alreadyDownloaded, Consumer<SpreakerEpisodeData> downloaded,
+			PendingEpisodeHandler pending) throws InterruptedException {
+		int downloadedInARow = 0;
+
+		while (true) {
+			long parseStart = System.nanoTime();
+
+			if (!feed.hasNext()) {
+				walkedCompletely = true;
+				return;
+			}
+
+			SpreakerEpisodeData spreakerEntry = feed.next();
+			parseDuration.observeSince(parseStart);
+
+			if (newestWalked == null || spreakerEntry.date().isAfter(newestWalked)) {
+				newestWalked = spreakerEntry.date();
+			}
+
+			if (spreakerEntry.episodeType() == EpisodeType.WOCHENRÜCKBLICK) {
+				continue;
+			}
+
+			if (!alreadyDownloaded.contains(spreakerEntry.date())) {
+				downloadedInARow = 0;
+				pending.handle(spreakerEntry);
+				continue;
+			}
+
+			downloadedInARow++;
+			downloaded.accept(spreakerEntry);
+
+			if (threshold > 0
+					&& downloadedInARow >= threshold
+					&& walkedThrough != null
+					&& !spreakerEntry.date().isAfter(walkedThrough)
+					&& (oldestPending == null || spreakerEntry.date().isBefore(oldestPending))) {
+				Kfdl.LOGGER.info("Reached already downloaded episodes, skipping the rest of the feed");
+				walkedCompletely = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the new value for {@link SpreakerFeedSync#setWalkedThrough}, or {@code null} if it has to stay as it is.
+	 * Only once everything walked is either downloaded, queued or recorded as failed, the watermark may move.
+	 *
+	 * @param failedItems How many walked episodes the pipeline failed on without recording it anywhere.
+	 */
+	@Nullable
+	LocalDate getNextWalkedThrough(int failedItems) {
+		if (!walkedCompletely || newestWalked == null) {
+			return null;
+		}
+
+		if (failedItems > 0) {
+			Kfdl.LOGGER.warn("Failed to handle {} episodes, they will be offered again next time", failedItems);
+			return null;
+		}
+
+		return newestWalked;
+	}
+
+	@FunctionalInterface
+	interface PendingEpisodeHandler {
+		void handle(SpreakerEpisodeData spreakerEntry) throws InterruptedException;
+	}
+}
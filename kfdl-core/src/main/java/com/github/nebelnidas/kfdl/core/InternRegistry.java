@@ -0,0 +1,59 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Interns values by key and numbers them densely, in the order they were first seen. Looking values up
+ * never locks; only adding a new value does. New values are published by writing
+ * them into the array before the size, so readers that see the size also see the values up to it.
+ */
+final class InternRegistry<T> {
+	private final Map<String, T> byKey = new ConcurrentHashMap<>();
+	private volatile Object[] byIndex = new Object[16];
+	private volatile int size;
+
+	/**
+	 * Returns the value for the key, creating it with the next free index if there is none yet.
+	 */
+	T intern(String key, IntFunction<T> factory) {
+		T value = byKey.get(key);
+
+		if (value != null) {
+			return value;
+		}
+
+		synchronized (this) {
+			value = byKey.get(key);
+
+			if (value != null) {
+				return value;
+			}
+
+			int index = size;
+			value = factory.apply(index);
+
+			if (index == byIndex.length) {
+				byIndex = Arrays.copyOf(byIndex, index * 2);
+			}
+
+			byIndex[index] = value;
+			size = index + 1;
+			byKey.put(key, value);
+			return value;
+		}
+	}
+
+	/**
+	 * Returns all values ordered by index.
+	 */
+	@SuppressWarnings("unchecked")
+	List<T> values() {
+		int count = size;
+		return Collections.unmodifiableList(Arrays.asList((T[]) Arrays.copyOf(byIndex, count)));
+	}
+}
@@ -2,60 +2,115 @@ package com.github.nebelnidas.kfdl.core;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.xml.stream.XMLStreamException;
 
-import org.apache.commons.lang3.stream.Streams;
-import org.htmlunit.FailingHttpStatusCodeException;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.nebelnidas.kfdl.core.Hedging.Winner;
 import com.github.nebelnidas.kfdl.core.KontrafunkScraper.WebsiteEpisodeData;
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Counter;
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
 import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
 
 public class Kfdl {
 	public static final Logger LOGGER = LoggerFactory.getLogger("Kontrafunk Downloader");
+	public static final MetricsRegistry METRICS = new MetricsRegistry();
 	private static final String spreakerFeedUrl = "https://www.spreaker.com/show/5602119/episodes/feed";
 	private static final String kfAktuellUrlPrefix = "https://kontrafunk.radio/de/sendung-nachhoeren/politik-und-zeitgeschehen/kontrafunk-aktuell/";
 	private static final String kfAktuellDownloadPrefix = "https://kontrafunk.radio/images/audio/sendungen/";
-	private static final DateTimeFormatter kfAktuellUrlDateFormatter = DateTimeFormatter.ofPattern("d-MMMM-yyyy", Locale.GERMAN);
-	private static final DateTimeFormatter kfAktuellUrlDateFormatter2 = DateTimeFormatter.ofPattern("dd-MMMM-yyyy", Locale.GERMAN);
-	private static final DateTimeFormatter kfAktuellUrlDateFormatter3 = DateTimeFormatter.ofPattern("dd-MM-yyyy", Locale.GERMAN);
-	private static final DateTimeFormatter kfAktuellUrlDateFormatter4 = DateTimeFormatter.ofPattern("d-M-yyyy", Locale.GERMAN);
+	private static final List<DateTimeFormatter> kfAktuellUrlDateFormatters = List.of(
+			DateTimeFormatter.ofPattern("d-MMMM-yyyy", Locale.GERMAN),
+			DateTimeFormatter.ofPattern("dd-MMMM-yyyy", Locale.GERMAN),
+			DateTimeFormatter.ofPattern("dd-MM-yyyy", Locale.GERMAN),
+			DateTimeFormatter.ofPattern("d-M-yyyy", Locale.GERMAN));
+	private static final long slugHedgeDelayMillis = 300;
+	private static final long learnedSlugHedgeDelayMillis = 5000;
+	private static final Duration retryBaseDelay = Duration.ofSeconds(5);
+	private static final Duration retryMaxDelay = Duration.ofMinutes(5);
 	private static final LocalDate lastDasMorgenmagazinDate = LocalDate.of(2022, 8, 26);
 	private static final LocalDate lastMorgenmagazinDate = LocalDate.of(2022, 7, 15);
-	private static final LocalDate firstDateWithOfficialDownload = LocalDate.of(2023, 7, 20);
-	private SaveFileHandler saveFileHandler;
-	private Downloader downloader;
-
-	public Kfdl(Path workingDir, Path saveFilePath, int maxParallelDownloads) {
-		this.saveFileHandler = new SaveFileHandler(saveFilePath);
-		this.downloader = new Downloader(workingDir, maxParallelDownloads, saveFileHandler);
+	private final KfdlOptions options;
+	private final Histogram feedSyncDuration = METRICS.histogram("kfdl_feed_sync_duration_seconds", "Time spent bringing the local copy of the feed up to date");
+	private final Histogram scrapeDuration = METRICS.histogram("kfdl_scrape_duration_seconds", "Time spent scraping an episode page, including all slug candidates");
+	private final Counter cachedScrapes = getScrapeCounter("cached");
+	private final Counter backingOffScrapes = getScrapeCounter("backing_off");
+	private final Counter failedScrapes = getScrapeCounter("failed");
+	private final Counter successfulScrapes = getScrapeCounter("scraped");
+	private final SaveFileHandler saveFileHandler;
+	private final Downloader downloader;
+	private final SpreakerFeedSync feedSync;
+	private final SlugCache slugCache;
+	private final EpisodeMetadataCache metadataCache;
+	private final EpisodeCatalog catalog;
+	private final KontrafunkScraper scraper;
+	private final DownloadLinkResolver linkResolver;
+	private final ExecutorService probeExecutor;
+
+	public Kfdl(KfdlOptions options) {
+		this.options = options;
+		METRICS.registerMBean();
+		Http.setScheduler(new HostScheduler(options.maxRequestsPerHost(), Duration.ofMillis(options.minRequestSpacingMillis())));
+		this.probeExecutor = options.threadingMode().createExecutor("probe");
+		this.saveFileHandler = new SaveFileHandler(options.saveFile(), Duration.ofMillis(options.saveCommitWindowMillis()), options.fsyncSaveFile());
+		this.feedSync = new SpreakerFeedSync(spreakerFeedUrl,
+				options.workingDir().resolve("kfdl-feed.txt"),
+				options.workingDir().resolve("kfdl-feed.xml.gz"));
+		this.slugCache = new SlugCache(options.workingDir().resolve("kfdl-slugs.txt"));
+		this.metadataCache = new EpisodeMetadataCache(options.workingDir().resolve("kfdl-metadata.txt"));
+		this.catalog = new EpisodeCatalog(options.workingDir().resolve("kfdl-catalog.txt"));
+		this.scraper = options.scraperEngine().createScraper();
+		this.linkResolver = new DownloadLinkResolver(probeExecutor, options.maxHeadRequestsPerEpisode());
+		this.downloader = new Downloader(options.workingDir(), options.minParallelDownloads(), options.maxParallelDownloads(), options.pipelineQueueSize(),
+				options.maxConnectionsPerDownload(), options.threadingMode(),
+				new BandwidthLimiter(options.bandwidthLimit(), options.hostBandwidthLimits()),
+				new TransferEngine(options.transferBufferSize(), options.transferMemoryBudget(),
+						Math.max(options.maxParallelDownloads(), 1) * Math.max(options.maxConnectionsPerDownload(), 1)),
+				new RetryPolicy(options.maxDownloadAttempts(), retryBaseDelay, retryMaxDelay), saveFileHandler);
+		// The link is most likely gone, so it's resolved again next time instead of failing the same way
+		this.downloader.addOnPermanentFailure(episodeData -> metadataCache.removeResolvedDownload(episodeData.date()));
 	}
 
 	public void run() {
+		PrometheusTextFile metricsFile = options.metricsFile() == null
+				? null
+				: new PrometheusTextFile(METRICS, options.metricsFile(), Duration.ofMillis(options.metricsIntervalMillis()));
+
 		try {
 			run0();
 		} catch (Exception e) {
 			LOGGER.error("Encountered unhandled exception", e);
+		} finally {
+			if (metricsFile != null) {
+				metricsFile.close();
+			}
 		}
 	}
 
-	private void run0() throws MalformedURLException, XMLStreamException, IOException {
+	/**
+	 * Runs feed parsing, scraping, download link resolution and downloading as a pipeline.
+	 * Each stage hands its results to the next one via a bounded queue, so downloads start
+	 * as soon as the first episode has been resolved, and fast stages wait for slow ones
+	 * instead of piling up work.
+	 */
+	private void run0() throws XMLStreamException, IOException, InterruptedException {
 		Set<LocalDate> alreadyIndexed = saveFileHandler.getEpisodes().stream()
 				.map(SaveFileEntry::episodeDate)
 				.collect(Collectors.toSet());
@@ -65,51 +120,142 @@ public class Kfdl {
 				.map(SaveFileEntry::episodeDate)
 				.collect(Collectors.toSet());
 
-		List<SpreakerEpisodeData> entriesToDownload = Streams.of(getSpreakerData())
-				.filter(entry -> entry.episodeType() != EpisodeType.WOCHENRÜCKBLICK)
-				.filter(entry -> !alreadyDownloaded.contains(entry.date()))
-				.collect(Collectors.toList());
-
-		for (SpreakerEpisodeData spreakerEntry : entriesToDownload) {
-			if (!alreadyIndexed.contains(spreakerEntry.date())) {
-				LOGGER.info("Found new episode: {}", spreakerEntry.title());
-			}
+		PipelineStage<MergedEpisodeData> resolveStage = new PipelineStage<>("resolve",
+				options.maxParallelProbes(),
+				options.pipelineQueueSize(),
+				options.threadingMode(),
+				this::scheduleDownload);
+		PipelineStage<SpreakerEpisodeData> scrapeStage = new PipelineStage<>("scrape",
+				options.maxParallelScrapes(),
+				options.pipelineQueueSize(),
+				options.threadingMode(),
+				spreakerEntry -> {
+					MergedEpisodeData mergedData = scrape(spreakerEntry);
+
+					if (mergedData != null) {
+						resolveStage.put(mergedData);
+					}
+				});
+
+		resolveStage.start();
+		scrapeStage.start();
+
+		LocalDate walkedThrough = feedSync.getWalkedThrough();
+		LocalDate oldestPending = Stream.concat(
+						saveFileHandler.getEpisodes().stream()
+								.filter(entry -> entry.downloadState() != DownloadState.SUCCESSFUL)
+								.map(SaveFileEntry::episodeDate),
+						metadataCache.getFailedDates().stream())
+				.min(Comparator.naturalOrder())
+				.orElse(null);
+		// Downloaded episodes only make it into the catalog while the feed is walked, see catalogFromCache
+		boolean catalogComplete = alreadyDownloaded.stream()
+				.allMatch(date -> catalog.contains(date) || metadataCache.get(date) == null);
+
+		if (walkedThrough == null && options.incrementalSyncThreshold() > 0) {
+			LOGGER.info("The feed hasn't been walked completely yet, walking all of it");
+		} else if (!catalogComplete && options.incrementalSyncThreshold() > 0) {
+			LOGGER.info("The episode catalog is missing downloaded episodes, walking all of the feed");
 		}
 
-		for (SpreakerEpisodeData spreakerEntry : entriesToDownload) {
-			WebsiteEpisodeData scrapedData = scrapeEpisodeData(spreakerEntry);
+		IncrementalFeedWalk walk = new IncrementalFeedWalk(walkedThrough, oldestPending, catalogComplete ? options.incrementalSyncThreshold() : 0);
+		long feedSyncStart = System.nanoTime();
 
-			if (scrapedData == null) {
-				continue;
-			}
+		try (InputStream feed = feedSync.open()) {
+			feedSyncDuration.observeSince(feedSyncStart);
+			walk.walk(SpreakerEpisodeExtractor.iterateItems(feed), alreadyDownloaded, this::catalogFromCache, spreakerEntry -> {
+				if (!alreadyIndexed.contains(spreakerEntry.date())) {
+					LOGGER.info("Found new episode: {}", spreakerEntry.title());
+				}
+
+				scrapeStage.put(spreakerEntry);
+			});
+		} finally {
+			// Let everything that already made it into the pipeline run to completion
+			scrapeStage.finish();
+			resolveStage.finish();
 
-			MergedEpisodeData mergedData = new MergedEpisodeData(spreakerEntry, scrapedData);
+			// Only now everything walked is either downloaded, queued or recorded as failed
+			LocalDate nextWalkedThrough = walk.getNextWalkedThrough(scrapeStage.getFailedItems() + resolveStage.getFailedItems());
 
-			if (mergedData.defaultDownload().startsWith("/images/audio/sendungen/")) {
-				mergedData = mergedData.withDefaultDownload(kfAktuellDownloadPrefix + scrapedData.downloadLink().substring(24));
+			if (nextWalkedThrough != null) {
+				feedSync.setWalkedThrough(nextWalkedThrough);
 			}
 
-			scheduleDownload(mergedData);
+			slugCache.save();
+			metadataCache.save();
+			catalog.save();
+			downloader.addOnFinish(metadataCache::save);
+			downloader.addOnFinish(saveFileHandler::close);
+			downloader.awaitCompletion();
+			probeExecutor.shutdownNow();
 		}
 
 		LOGGER.debug("Tags:\n" + Tag.values().toString());
-		System.in.read();
 		LOGGER.debug("People:\n" + Person.values().toString());
+		LOGGER.debug("Download file name conventions:\n" + linkResolver.getPatternStats());
+	}
+
+	private static Counter getScrapeCounter(String result) {
+		return METRICS.counter("kfdl_scrapes_total", "Episodes whose metadata was needed, by where it came from", "result", result);
+	}
 
-		downloader.addOnFinish(() -> saveFileHandler.forceSave());
+	@Nullable
+	private MergedEpisodeData scrape(SpreakerEpisodeData spreakerEntry) throws InterruptedException {
+		EpisodeMetadataCache.Entry cachedEntry = metadataCache.getValid(spreakerEntry.date());
+		WebsiteEpisodeData scrapedData;
+
+		if (cachedEntry != null) {
+			LOGGER.debug("Using cached info for {}", spreakerEntry.title());
+			cachedScrapes.increment();
+			scrapedData = cachedEntry.data();
+		} else if (metadataCache.isBackingOff(spreakerEntry.date())) {
+			LOGGER.info("Skipping {}, scraping it failed recently", spreakerEntry.title());
+			backingOffScrapes.increment();
+			return null;
+		} else {
+			long scrapeStart = System.nanoTime();
+			scrapedData = scrapeEpisodeData(spreakerEntry);
+			scrapeDuration.observeSince(scrapeStart);
+
+			if (scrapedData == null) {
+				failedScrapes.increment();
+				metadataCache.recordFailure(spreakerEntry.date());
+				return null;
+			}
+
+			successfulScrapes.increment();
+			metadataCache.put(scrapedData);
+		}
+
+		MergedEpisodeData mergedData = new MergedEpisodeData(spreakerEntry, scrapedData);
+
+		if (mergedData.defaultDownload().startsWith("/images/audio/sendungen/")) {
+			mergedData = mergedData.withDefaultDownload(kfAktuellDownloadPrefix + scrapedData.downloadLink().substring(24));
+		}
+
+		catalog.put(mergedData);
+		return mergedData;
 	}
 
-	private Iterator<SpreakerEpisodeData> getSpreakerData() throws UnsupportedEncodingException, MalformedURLException, XMLStreamException, IOException {
-		InputStream inputStream = new URL(spreakerFeedUrl).openStream();
-		Iterator<SpreakerEpisodeData> iterator = SpreakerEpisodeExtractor.iterateItems(inputStream);
+	/**
+	 * Adds an episode that was downloaded before the catalog existed, if its metadata is still cached.
+	 */
+	private void catalogFromCache(SpreakerEpisodeData spreakerEntry) {
+		if (catalog.contains(spreakerEntry.date())) {
+			return;
+		}
+
+		EpisodeMetadataCache.Entry cachedEntry = metadataCache.get(spreakerEntry.date());
 
-		return iterator;
+		if (cachedEntry != null) {
+			catalog.put(new MergedEpisodeData(spreakerEntry, cachedEntry.data()));
+		}
 	}
 
 	@Nullable
-	private WebsiteEpisodeData scrapeEpisodeData(SpreakerEpisodeData spreakerData) throws IOException {
+	private WebsiteEpisodeData scrapeEpisodeData(SpreakerEpisodeData spreakerData) throws InterruptedException {
 		LOGGER.debug("Scraping info for {}", spreakerData.title());
-		int maxAttempts = 4;
 
 		switch (spreakerData.date().toString()) {
 			case "2022-08-12":
@@ -121,137 +267,102 @@ public class Kfdl {
 						.build();
 		}
 
-		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-			String urlSuffix = switch (spreakerData.date().toString()) {
-				case "2023-03-30" -> "kontrafunk-aktuell-vom30-maerz-2023";
-				case "2022-11-14" -> "kontrafunk-aktuell-vom-14-november-2022-2";
-				case "2022-10-06" -> "kontrafunk-aktuell-vom-6-oktober-2022-2";
-				case "2022-09-20" -> "kontrafunk-aktuell-vom20-september-2022";
-				case "2022-09-08" -> "kontrafunk-aktuell-vom-8-september-2022-2";
-				case "2022-09-09" -> "kontrafunk-aktuell-vom-8-september-2022";
-				case "2022-08-25" -> "das-morgenmagazin-vom-25-august-20222";
-				case "2022-08-23" -> "das-morgenmagazin-vom-23-august-2022-2";
-				default -> null;
-			};
-
-			if (urlSuffix != null) {
-				attempt = maxAttempts;
-			} else {
-				DateTimeFormatter formatter = switch (attempt) {
-					case 1 -> kfAktuellUrlDateFormatter;
-					case 2 -> kfAktuellUrlDateFormatter2;
-					case 3 -> kfAktuellUrlDateFormatter3;
-					case 4 -> kfAktuellUrlDateFormatter4;
-					default -> throw new IllegalStateException("Unexpected value: " + attempt);
-				};
-
-				String slugPrefix = spreakerData.date().isAfter(lastDasMorgenmagazinDate)
-						|| spreakerData.date().toString().equals("2022-07-07")
-						|| spreakerData.date().toString().equals("2022-07-06")
-								? "kontrafunk-aktuell-vom-"
-								: spreakerData.date().isAfter(lastMorgenmagazinDate)
-										? "das-morgenmagazin-vom-"
-										: "morgenmagazin-vom-";
-				urlSuffix = slugPrefix + spreakerData.date()
-						.format(formatter)
-						.toLowerCase(Locale.GERMAN)
-						.replace("ä", "ae");
-			}
+		List<String> slugs = getSlugCandidates(spreakerData.date());
+		String learnedSlug = slugCache.get(spreakerData.date());
 
-			String url = kfAktuellUrlPrefix + urlSuffix;
-			WebsiteEpisodeData scrapedData;
+		if (learnedSlug != null) {
+			slugs.remove(learnedSlug);
+			slugs.add(0, learnedSlug);
+		}
 
-			try {
-				scrapedData = KontrafunkScraper.getEpisodeInfo(url, spreakerData);
-				return scrapedData;
-			} catch (Exception e) {
-				if (attempt < maxAttempts && e instanceof FailingHttpStatusCodeException) {
-					continue;
-				}
+		List<Callable<WebsiteEpisodeData>> attempts = slugs.stream()
+				.map(slug -> (Callable<WebsiteEpisodeData>) () -> scraper.getEpisodeInfo(kfAktuellUrlPrefix + slug, spreakerData))
+				.toList();
 
-				LOGGER.error("Failed to scrape info for {}", spreakerData.title(), e);
-			}
+		try {
+			Winner<WebsiteEpisodeData> winner = Hedging.firstSuccess(probeExecutor, attempts, attempts.size(),
+					learnedSlug != null ? learnedSlugHedgeDelayMillis : slugHedgeDelayMillis);
+			slugCache.put(spreakerData.date(), slugs.get(winner.index()));
+			return winner.value();
+		} catch (ExecutionException e) {
+			LOGGER.error("Failed to scrape info for {}", spreakerData.title(), e.getCause());
+			return null;
 		}
+	}
 
-		return null;
+	/**
+	 * Returns the distinct URL slugs the episode page may be found under, most likely first.
+	 */
+	private List<String> getSlugCandidates(LocalDate date) {
+		String overriddenSlug = switch (date.toString()) {
+			case "2023-03-30" -> "kontrafunk-aktuell-vom30-maerz-2023";
+			case "2022-11-14" -> "kontrafunk-aktuell-vom-14-november-2022-2";
+			case "2022-10-06" -> "kontrafunk-aktuell-vom-6-oktober-2022-2";
+			case "2022-09-20" -> "kontrafunk-aktuell-vom20-september-2022";
+			case "2022-09-08" -> "kontrafunk-aktuell-vom-8-september-2022-2";
+			case "2022-09-09" -> "kontrafunk-aktuell-vom-8-september-2022";
+			case "2022-08-25" -> "das-morgenmagazin-vom-25-august-20222";
+			case "2022-08-23" -> "das-morgenmagazin-vom-23-august-2022-2";
+			default -> null;
+		};
+
+		if (overriddenSlug != null) {
+			return new ArrayList<>(List.of(overriddenSlug));
+		}
+
+		String slugPrefix = date.isAfter(lastDasMorgenmagazinDate)
+				|| date.toString().equals("2022-07-07")
+				|| date.toString().equals("2022-07-06")
+						? "kontrafunk-aktuell-vom-"
+						: date.isAfter(lastMorgenmagazinDate)
+								? "das-morgenmagazin-vom-"
+								: "morgenmagazin-vom-";
+		Set<String> slugs = new LinkedHashSet<>();
+
+		for (DateTimeFormatter formatter : kfAktuellUrlDateFormatters) {
+			slugs.add(slugPrefix + date
+					.format(formatter)
+					.toLowerCase(Locale.GERMAN)
+					.replace("ä", "ae"));
+		}
+
+		return new ArrayList<>(slugs);
 	}
 
-	private void scheduleDownload(MergedEpisodeData episodeData) {
+	private void scheduleDownload(MergedEpisodeData episodeData) throws InterruptedException {
 		try {
-			String url = getDownloadLink(episodeData);
+			String url = metadataCache.getResolvedDownload(episodeData.date());
+
+			if (url == null) {
+				url = linkResolver.resolve(episodeData);
+			}
 
 			if (url == null) {
 				LOGGER.error("Failed to download episode: No download link found");
+				recordResolveFailure(episodeData);
 				return;
 			}
 
+			metadataCache.putResolvedDownload(episodeData.date(), url);
+
 			episodeData = episodeData.withDefaultDownload(url);
 
 			downloader.queue(episodeData);
+		} catch (InterruptedException e) {
+			throw e;
 		} catch (Exception e) {
 			LOGGER.error("Failed to download episode", e);
+			recordResolveFailure(episodeData);
 		}
 	}
 
-	@Nullable
-	private String getDownloadLink(MergedEpisodeData episodeData) throws IOException {
-		String urlPrefix = kfAktuellDownloadPrefix
-				+ episodeData.date().getYear()
-				+ "/"
-				+ episodeData.date().format(DateTimeFormatter.ofPattern("MM"))
-				+ "/"
-				+ episodeData.date().format(DateTimeFormatter.ofPattern("dd"))
-				+ "/";
-		String concatDate = episodeData.date().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-
-		int maxAttempts = 7;
-
-		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-			String url = switch (episodeData.date().toString()) {
-				case "2024-03-19" -> urlPrefix + "20230319_Kontrafunkt_aktuell_.mp3";
-				case "2024-02-29" -> urlPrefix + "20240228_Kontrafunk_aktuell.mp3";
-				case "2024-01-31" -> urlPrefix + "Kontrafunk_aktuell_20240131 final CUT.mp3";
-				case "2023-11-23" -> urlPrefix + "Kontrafunk Aktuell 202331123.mp3";
-				default -> {
-					if (episodeData.date().isBefore(firstDateWithOfficialDownload)) {
-						attempt = maxAttempts;
-					}
-
-					yield null;
-				}
-			};
-
-			if (url != null) {
-				attempt = maxAttempts;
-			} else if (attempt < maxAttempts) {
-				url = urlPrefix + switch (attempt) {
-					case 1 -> concatDate + "_Kontrafunk_aktuell";
-					case 2 -> concatDate + "_Kontrafunk_Aktuell";
-					case 3 -> "Kontrafunk_aktuell_" + concatDate;
-					case 4 -> "Kontrafunk_Aktuell_" + concatDate;
-					case 5 -> "Kontrafunk Aktuell " + concatDate;
-					case 6 -> "Kontrafunk _Aktuell_" + concatDate;
-					case 7 -> "kontrafunk_aktuell_" + concatDate;
-					default -> throw new IllegalStateException("Unexpected value: " + attempt);
-				} + ".mp3";
-			} else if (!episodeData.defaultDownload().contains("spreaker")) {
-				url = episodeData.defaultDownload();
-			} else {
-				LOGGER.info("No official download link found for {}. Falling back to Spreaker.", episodeData.title());
-				url = episodeData.spreakerDownload();
-			}
-
-			url = url.replace(" ", "%20");
-			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-			connection.setRequestMethod("HEAD");
-
-			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-				continue;
-			}
-
-			return url;
-		}
-
-		return null;
+	/**
+	 * Records the episode as failed in the save file, so later runs know it's still pending.
+	 */
+	private void recordResolveFailure(MergedEpisodeData episodeData) {
+		SaveFileEntry entry = saveFileHandler.get(episodeData.date());
+		saveFileHandler.add(entry != null
+				? entry.withDownloadState(DownloadState.FAILED)
+				: new SaveFileEntry(episodeData, DownloadState.FAILED));
 	}
 }
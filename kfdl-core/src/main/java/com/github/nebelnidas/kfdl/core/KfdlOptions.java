@@ -0,0 +1,61 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Options for a {@link Kfdl} run.
+ *
+ * @param saveCommitWindowMillis For how long changes to the save file are collected before they're written together.
+ * @param fsyncSaveFile Whether writes to the save file wait until the data has reached the disk.
+ * @param minParallelDownloads The lower bound for the adaptive number of concurrent downloads.
+ * @param maxParallelDownloads The upper bound for the adaptive number of concurrent downloads, which starts out there.
+ * @param maxConnectionsPerDownload How many connections a single download may be split across, {@code 1} to never split.
+ * @param maxDownloadAttempts How often a download is attempted before it's given up on for this run,
+ *                            as long as it fails for reasons that may go away by themselves.
+ * @param transferBufferSize The size of the buffers downloads are written through, in bytes.
+ * @param transferMemoryBudget How many bytes the transfer buffers of all downloads may take up together. Every connection
+ *                             holds one buffer, so at least {@code maxParallelDownloads * maxConnectionsPerDownload}
+ *                             buffers are allowed regardless.
+ * @param bandwidthLimit The limit for all downloads together.
+ * @param hostBandwidthLimits Additional limits for downloads from individual hosts, keyed by host name.
+ * @param maxParallelScrapes How many episode pages may be scraped at the same time.
+ * @param maxParallelProbes How many episodes may have their download link resolved at the same time.
+ * @param maxHeadRequestsPerEpisode How many file name conventions may be probed concurrently for a single episode.
+ * @param maxRequestsPerHost How many requests may be in flight to the same host at once. Downloads only count until their response headers arrive.
+ * @param minRequestSpacingMillis The minimum time between the starts of two requests to the same host.
+ * @param pipelineQueueSize How many items may wait in front of each pipeline stage before the previous one blocks.
+ * @param incrementalSyncThreshold After how many consecutive already downloaded episodes the rest of the feed is skipped,
+ *                                 or {@code 0} to always walk the whole feed.
+ * @param metricsFile Where to periodically write the metrics in the Prometheus text format, or {@code null} to not write them.
+ * @param metricsIntervalMillis How often the metrics file is rewritten.
+ */
+@Builder
+public record KfdlOptions(
+		@NonNull Path workingDir,
+		@NonNull Path saveFile,
+		long saveCommitWindowMillis,
+		boolean fsyncSaveFile,
+		int minParallelDownloads,
+		int maxParallelDownloads,
+		int maxConnectionsPerDownload,
+		int maxDownloadAttempts,
+		int transferBufferSize,
+		long transferMemoryBudget,
+		@NonNull BandwidthSchedule bandwidthLimit,
+		@NonNull Map<String, BandwidthSchedule> hostBandwidthLimits,
+		int maxParallelScrapes,
+		int maxParallelProbes,
+		int maxHeadRequestsPerEpisode,
+		int maxRequestsPerHost,
+		long minRequestSpacingMillis,
+		int pipelineQueueSize,
+		int incrementalSyncThreshold,
+		@NonNull ScraperEngine scraperEngine,
+		@NonNull ThreadingMode threadingMode,
+		@Nullable Path metricsFile,
+		long metricsIntervalMillis) { }
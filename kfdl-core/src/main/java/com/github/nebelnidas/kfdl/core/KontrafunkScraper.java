@@ -1,25 +1,19 @@
 package com.github.nebelnidas.kfdl.core;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import lombok.Builder;
 import lombok.NonNull;
-import org.htmlunit.FailingHttpStatusCodeException;
-import org.htmlunit.WebClient;
-import org.htmlunit.html.DomElement;
-import org.htmlunit.html.DomNode;
-import org.htmlunit.html.DomText;
-import org.htmlunit.html.HtmlAnchor;
-import org.htmlunit.html.HtmlElement;
-import org.htmlunit.html.HtmlPage;
+import org.jetbrains.annotations.Nullable;
 
+import com.github.nebelnidas.kfdl.core.EpisodePage.PageNode;
 import com.github.nebelnidas.kfdl.core.KontrafunkScraper.WebsiteEpisodeData.WebsiteEpisodeDataBuilder;
 import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
 
@@ -29,29 +23,54 @@ public class KontrafunkScraper {
 	private static final LocalDate firstDateWithDownloadButton = LocalDate.of(2023, 7, 20);
 	private static final LocalDate firstDateWithDescription = LocalDate.of(2022, 8, 17);
 	private static final LocalDate firstDateWithTags = firstDateWithDescription;
+	/** IDs of the page sections all XPath queries below are rooted at. */
+	public static final Set<String> SECTION_IDS = Set.of("template-wI5pQLap#2", "-interview-01");
+	private final EpisodePageLoader pageLoader;
+	private final EpisodePageLoader fallbackPageLoader;
+
+	/**
+	 * @param fallbackPageLoader Used if a page was retrieved, but couldn't be understood by {@code pageLoader}.
+	 *                           Network errors aren't retried with it, they'd most likely just happen again.
+	 */
+	public KontrafunkScraper(EpisodePageLoader pageLoader, @Nullable EpisodePageLoader fallbackPageLoader) {
+		this.pageLoader = pageLoader;
+		this.fallbackPageLoader = fallbackPageLoader;
+	}
+
+	public WebsiteEpisodeData getEpisodeInfo(String episodeUrl, SpreakerEpisodeData spreakerData) throws IOException {
+		try {
+			return getEpisodeInfo(pageLoader, episodeUrl, spreakerData);
+		} catch (RuntimeException e) {
+			if (fallbackPageLoader == null) {
+				throw e;
+			}
 
-	public static WebsiteEpisodeData getEpisodeInfo(String episodeUrl, SpreakerEpisodeData spreakerData) throws FailingHttpStatusCodeException, MalformedURLException, IOException {
-		try (WebClient webClient = new WebClient()) {
-			webClient.getOptions().setCssEnabled(false);
-			webClient.getOptions().setJavaScriptEnabled(false);
-			webClient.getOptions().setPrintContentOnFailingStatusCode(false);
+			Kfdl.LOGGER.debug("Failed to extract episode info from {}, falling back to {}", episodeUrl, fallbackPageLoader.getClass().getSimpleName(), e);
+			return getEpisodeInfo(fallbackPageLoader, episodeUrl, spreakerData);
+		}
+	}
 
+	private static WebsiteEpisodeData getEpisodeInfo(EpisodePageLoader loader, String episodeUrl, SpreakerEpisodeData spreakerData) throws IOException {
+		try (EpisodePage page = loader.load(episodeUrl)) {
 			WebsiteEpisodeDataBuilder builder = WebsiteEpisodeData.builder();
-			HtmlPage page = webClient.getPage(episodeUrl);
+			ExtractedNames names = new ExtractedNames();
 
 			builder.url(episodeUrl);
+			builder.etag(page.getResponseHeader("ETag"));
+			builder.lastModified(page.getResponseHeader("Last-Modified"));
 			hydrateDate(builder, episodeUrl, page);
-			hydratePeople(builder, episodeUrl, page, spreakerData);
+			hydratePeople(builder, names, episodeUrl, page, spreakerData);
 			hydrateDescription(builder, episodeUrl, page);
 			hydrateDownloadLink(builder, episodeUrl, page);
-			hydrateTags(builder, episodeUrl, page);
+			hydrateTags(builder, names, episodeUrl, page);
+			names.applyTo(builder);
 
 			return builder.build();
 		}
 	}
 
-	private static void hydrateDate(WebsiteEpisodeDataBuilder builder, String url, HtmlPage page) {
-		HtmlElement date = page.getFirstByXPath("//*[@id=\"template-wI5pQLap#2\"]/div/div/div[1]");
+	private static void hydrateDate(WebsiteEpisodeDataBuilder builder, String url, EpisodePage page) {
+		PageNode date = page.getFirstByXPath("//*[@id=\"template-wI5pQLap#2\"]/div/div/div[1]");
 
 		if (date == null) {
 			throw new IllegalStateException("No date found on " + url);
@@ -60,32 +79,32 @@ public class KontrafunkScraper {
 		builder.date(LocalDate.parse(date.asNormalizedText(), dateFormatter));
 	}
 
-	private static void hydratePeople(WebsiteEpisodeDataBuilder builder, String url, HtmlPage page, SpreakerEpisodeData spreakerData) {
-		List<HtmlElement> elements = page.getByXPath("//*[@id=\"template-wI5pQLap#2\"]/div/div/div[last()]/div/span");
+	private static void hydratePeople(WebsiteEpisodeDataBuilder builder, ExtractedNames names, String url, EpisodePage page, SpreakerEpisodeData spreakerData) {
+		List<PageNode> elements = page.getByXPath("//*[@id=\"template-wI5pQLap#2\"]/div/div/div[last()]/div/span");
 
 		if (elements.size() < 2 || elements.size() > 4) {
 			switch (builder.date.toString()) {
 				case "2022-11-01":
-					builder.host(Person.MARCEL_JOPPA);
-					builder.guests(List.of(Person.BENNY_PEISER, Person.CHRISTIAN_FIALA, Person.UTE_BERGNER));
+					names.host = Person.MARCEL_JOPPA.getName();
+					names.guests = List.of(Person.BENNY_PEISER.getName(), Person.CHRISTIAN_FIALA.getName(), Person.UTE_BERGNER.getName());
 					return;
 				case "2022-08-16":
-					builder.host(Person.MARCEL_JOPPA);
-					builder.guests(List.of(Person.SUSANNE_DAGEN, Person.GUNTER_FRANK, Person.CORA_STEPHAN));
+					names.host = Person.MARCEL_JOPPA.getName();
+					names.guests = List.of(Person.SUSANNE_DAGEN.getName(), Person.GUNTER_FRANK.getName(), Person.CORA_STEPHAN.getName());
 					return;
 				default:
 					throw new IllegalStateException("Unexpected number of potential participant spans (" + elements.size() + ") on " + url);
 			}
 		}
 
-		DomNode current = elements.remove(0);
+		PageNode current = elements.remove(0);
 		String imGesprächMit = "im Gespräch mit";
 
 		if (current.getNextSibling().asNormalizedText().equals(imGesprächMit)) {
-			builder.host(Person.getOrCreate(current.asNormalizedText()));
+			names.host = current.asNormalizedText();
 			current = elements.remove(0);
 		} else {
-			builder.host(switch (spreakerData.publicationDate().toString()) {
+			Person host = switch (spreakerData.publicationDate().toString()) {
 				case "2024-04-16" -> Person.MARCEL_JOPPA;
 				case "2023-12-27" -> Person.TIM_KRAUSE;
 				case "2023-06-09" -> Person.JASMIN_KOSUBEK;
@@ -96,36 +115,37 @@ public class KontrafunkScraper {
 				case "2022-07-03" -> Person.MICHAEL_GÖRMANN;
 				case "2022-07-02" -> Person.MICHAEL_GÖRMANN;
 				default -> throw new IllegalStateException("Host not found on " + url);
-			});
+			};
+			names.host = host.getName();
 		}
 
-		List<DomNode> guestNodes = current.getChildNodes();
-		List<Person> guests = new ArrayList<>();
+		List<PageNode> guestNodes = current.getChildNodes();
+		List<String> guests = new ArrayList<>();
 
-		for (DomNode element : guestNodes) {
-			if (element instanceof HtmlAnchor a) {
-				guests.add(Person.getOrCreate(a.asNormalizedText()));
-			} else if (element instanceof DomText text) {
-				String textContent = text.asNormalizedText();
+		for (PageNode element : guestNodes) {
+			if (element.getNodeName().equals("a")) {
+				guests.add(element.asNormalizedText());
+			} else if (element.getNodeName().equals(PageNode.TEXT_NODE_NAME)) {
+				String textContent = element.asNormalizedText();
 				assert textContent.isEmpty()
 						|| textContent.equals(",")
 						|| textContent.equals("und");
 			} else {
-				throw new IllegalStateException("Unexpected DOM node type " + element.getClass().getSimpleName() + " on " + url);
+				throw new IllegalStateException("Unexpected DOM node type " + element.getNodeName() + " on " + url);
 			}
 		}
 
-		builder.guests(guests);
+		names.guests = guests;
 
 		if (elements.isEmpty()) {
 			return;
 		}
 
 		current = elements.remove(0);
-		DomNode prev = current.getPreviousSibling();
+		PageNode prev = current.getPreviousSibling();
 
 		if (prev.asNormalizedText().equals("– mit einem Beitrag von")) {
-			builder.beitragAuthor(Person.getOrCreate(current.asNormalizedText()));
+			names.beitragAuthor = current.asNormalizedText();
 
 			if (elements.isEmpty()) {
 				return;
@@ -136,7 +156,7 @@ public class KontrafunkScraper {
 		}
 
 		if (prev.asNormalizedText().equals("– Kontrafunk-Kommentar:")) {
-			builder.commentAuthor(Person.getOrCreate(current.asNormalizedText()));
+			names.commentAuthor = current.asNormalizedText();
 		}
 
 		assert elements.isEmpty();
@@ -186,7 +206,7 @@ public class KontrafunkScraper {
 		// }
 	}
 
-	private static void hydrateDescription(WebsiteEpisodeDataBuilder builder, String url, HtmlPage page) {
+	private static void hydrateDescription(WebsiteEpisodeDataBuilder builder, String url, EpisodePage page) {
 		if (builder.date.isBefore(firstDateWithDescription)) {
 			return;
 		}
@@ -201,7 +221,7 @@ public class KontrafunkScraper {
 				default -> throw new IllegalStateException("Unexpected value: " + attempt);
 			};
 
-			List<DomElement> elements = page.getByXPath(xPath);
+			List<PageNode> elements = page.getByXPath(xPath);
 
 			if (elements.isEmpty()) {
 				continue;
@@ -213,7 +233,7 @@ public class KontrafunkScraper {
 
 			String description = elements.remove(0).asNormalizedText();
 
-			for (DomElement element : elements) {
+			for (PageNode element : elements) {
 				description += "\n\n" + element.asNormalizedText();
 			}
 
@@ -224,12 +244,12 @@ public class KontrafunkScraper {
 		throw new IllegalStateException("No description found on " + url);
 	}
 
-	private static void hydrateDownloadLink(WebsiteEpisodeDataBuilder builder, String url, HtmlPage page) {
+	private static void hydrateDownloadLink(WebsiteEpisodeDataBuilder builder, String url, EpisodePage page) {
 		if (builder.date.isBefore(firstDateWithDownloadButton)) {
 			return;
 		}
 
-		HtmlAnchor downloadButton = page.getFirstByXPath("//*[@id=\"-interview-01\"]/div/div/div[2]/div[2]/div/a");
+		PageNode downloadButton = page.getFirstByXPath("//*[@id=\"-interview-01\"]/div/div/div[2]/div[2]/div/a");
 
 		if (downloadButton == null) {
 			switch (builder.date.toString()) {
@@ -307,18 +327,16 @@ public class KontrafunkScraper {
 			return;
 		}
 
-		String link = downloadButton.getHrefAttribute();
+		String link = downloadButton.getAttribute("href");
 
-		if (!link.endsWith(".mp3")) {
+		if (link == null || !link.endsWith(".mp3")) {
 			throw new IllegalStateException("Non-MP3 download link found on " + url);
 		}
 
 		builder.downloadLink(link);
 	}
 
-	private static void hydrateTags(WebsiteEpisodeDataBuilder builder, String url, HtmlPage page) {
-		builder.tags(Collections.emptyList());
-
+	private static void hydrateTags(WebsiteEpisodeDataBuilder builder, ExtractedNames names, String url, EpisodePage page) {
 		if (builder.date.isBefore(firstDateWithTags)) {
 			return;
 		}
@@ -339,20 +357,52 @@ public class KontrafunkScraper {
 				return;
 		}
 
-		List<HtmlAnchor> tagNodes = page.getByXPath("//*[@id=\"-interview-01\"]/div/div/div[1]/div/div[3]/span/span/span[2]/a");
+		List<PageNode> tagNodes = page.getByXPath("//*[@id=\"-interview-01\"]/div/div/div[1]/div/div[3]/span/span/span[2]/a");
 
 		if (tagNodes.isEmpty()) {
 			Kfdl.LOGGER.warn("No tags found on " + url);
 			return;
 		}
 
-		List<Tag> tags = new ArrayList<>();
+		List<String> tags = new ArrayList<>();
 
-		for (DomNode tagNode : tagNodes) {
-			tags.add(Tag.getOrCreate(tagNode.asNormalizedText()));
+		for (PageNode tagNode : tagNodes) {
+			tags.add(tagNode.asNormalizedText());
 		}
 
-		builder.tags(tags);
+		names.tags = tags;
+	}
+
+	/**
+	 * The people and tags found on a page. They're only interned once the whole page could be extracted,
+	 * so a page that fails part-way doesn't leave names behind that end up in the cache's dictionary.
+	 */
+	private static final class ExtractedNames {
+		private String host;
+		private List<String> guests = Collections.emptyList();
+		private String beitragAuthor;
+		private String commentAuthor;
+		private List<String> tags = Collections.emptyList();
+
+		private void applyTo(WebsiteEpisodeDataBuilder builder) {
+			List<Person> guestPersons = new ArrayList<>();
+
+			for (String guest : guests) {
+				guestPersons.add(Person.getOrCreate(guest));
+			}
+
+			List<Tag> tagList = new ArrayList<>();
+
+			for (String tag : tags) {
+				tagList.add(Tag.getOrCreate(tag));
+			}
+
+			builder.host(Person.getOrCreate(host));
+			builder.guests(guestPersons);
+			builder.beitragAuthor(beitragAuthor == null ? null : Person.getOrCreate(beitragAuthor));
+			builder.commentAuthor(commentAuthor == null ? null : Person.getOrCreate(commentAuthor));
+			builder.tags(tagList);
+		}
 	}
 
 	@Builder
@@ -365,5 +415,9 @@ public class KontrafunkScraper {
 			Person commentAuthor,
 			String description,
 			String downloadLink,
-			@NonNull List<Tag> tags) { }
+			@NonNull List<Tag> tags,
+			/** The page's {@code ETag} header, used to revalidate cached data. */
+			String etag,
+			/** The page's {@code Last-Modified} header, used to revalidate cached data. */
+			String lastModified) { }
 }
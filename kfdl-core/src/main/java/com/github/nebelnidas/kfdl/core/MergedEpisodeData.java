@@ -17,6 +17,10 @@ public record MergedEpisodeData(
 		LocalDate date,
 		/** Spreaker's potentially cut version of the podcast. */
 		String spreakerDownload,
+		/** The size of Spreaker's version as announced in the feed, or {@code -1} if unknown. */
+		long spreakerFileBytes,
+		/** The duration of Spreaker's version as announced in the feed, or {@code -1} if unknown. */
+		int spreakerDurationSeconds,
 		/** The full (uncut) version if available, otherwise the Spreaker URL. */
 		String defaultDownload,
 		EpisodeType episodeType,
@@ -30,6 +34,8 @@ public record MergedEpisodeData(
 				scrapedData.description() != null ? scrapedData.description() : spreakerEntry.description(),
 				Objects.requireNonNull(spreakerEntry.publicationDate()),
 				Objects.requireNonNull(spreakerEntry.fileUrl()),
+				spreakerEntry.fileBytes(),
+				spreakerEntry.durationInSeconds(),
 				Objects.requireNonNull(scrapedData.downloadLink() != null ? scrapedData.downloadLink() : spreakerEntry.fileUrl()),
 				Objects.requireNonNull(spreakerEntry.episodeType()),
 				Objects.requireNonNull(scrapedData.host()),
@@ -0,0 +1,343 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Counters, gauges and latency histograms describing what a run spends its time on. Metrics are
+ * identified by their name and labels, given as alternating keys and values; asking for an existing
+ * counter or histogram returns it, registering a gauge replaces the previous one. All metrics can be
+ * read over JMX, where each sample is an attribute of {@value #objectName}, and written in the
+ * Prometheus text format. Updating a metric never locks.
+ */
+public class MetricsRegistry {
+	private static final String objectName = "com.github.nebelnidas.kfdl:type=Metrics";
+	/**
+	 * Upper bounds of the latency histogram buckets, in seconds.
+	 */
+	private static final double[] latencyBuckets = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+	private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) getFamily(name, help, Type.COUNTER).children.computeIfAbsent(formatLabels(labels), key -> new Counter());
+	}
+
+	/**
+	 * Registers a counter whose value is kept elsewhere.
+	 */
+	public void counter(String name, String help, LongSupplier value, String... labels) {
+		getFamily(name, help, Type.COUNTER).children.put(formatLabels(labels), (sampleName, sampleLabels, consumer) ->
+				consumer.accept(sampleName, sampleLabels, value.getAsLong()));
+	}
+
+	public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+		getFamily(name, help, Type.GAUGE).children.put(formatLabels(labels), (sampleName, sampleLabels, consumer) ->
+				consumer.accept(sampleName, sampleLabels, value.getAsDouble()));
+	}
+
+	/**
+	 * Returns a histogram for durations, in seconds.
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return (Histogram) getFamily(name, help, Type.HISTOGRAM).children.computeIfAbsent(formatLabels(labels), key -> new Histogram(latencyBuckets));
+	}
+
+	public void remove(String name, String... labels) {
+		Family family = families.get(name);
+
+		if (family != null) {
+			family.children.remove(formatLabels(labels));
+		}
+	}
+
+	private Family getFamily(String name, String help, Type type) {
+		Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+
+		if (family.type != type) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+		}
+
+		return family;
+	}
+
+	private static String formatLabels(String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be given as key-value pairs");
+		}
+
+		StringBuilder ret = new StringBuilder();
+
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				ret.append(',');
+			}
+
+			ret.append(labels[i]).append("=\"");
+
+			for (char c : labels[i + 1].toCharArray()) {
+				switch (c) {
+					case '\\' -> ret.append("\\\\");
+					case '"' -> ret.append("\\\"");
+					case '\n' -> ret.append("\\n");
+					default -> ret.append(c);
+				}
+			}
+
+			ret.append('"');
+		}
+
+		return ret.toString();
+	}
+
+	/**
+	 * Appends all metrics in the Prometheus text exposition format.
+	 */
+	public void writePrometheus(StringBuilder out) {
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			Family family = entry.getValue();
+
+			if (family.children.isEmpty()) {
+				continue;
+			}
+
+			out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+
+			for (Map.Entry<String, Metric> child : family.children.entrySet()) {
+				child.getValue().collect(entry.getKey(), child.getKey(), (name, labels, value) -> {
+					out.append(name);
+
+					if (!labels.isEmpty()) {
+						out.append('{').append(labels).append('}');
+					}
+
+					out.append(' ').append(formatValue(value)).append('\n');
+				});
+			}
+		}
+	}
+
+	private static String formatValue(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+
+		return Double.toString(value);
+	}
+
+	/**
+	 * Returns the current value of every sample, except histogram buckets, keyed by name and labels.
+	 */
+	public Map<String, Double> snapshot() {
+		Map<String, Double> ret = new LinkedHashMap<>();
+
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			for (Map.Entry<String, Metric> child : entry.getValue().children.entrySet()) {
+				child.getValue().collect(entry.getKey(), child.getKey(), (name, labels, value) -> {
+					if (!name.endsWith("_bucket")) {
+						ret.put(labels.isEmpty() ? name : name + "{" + labels + "}", value);
+					}
+				});
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Makes the metrics available over JMX, unless that already happened.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(objectName);
+
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new MetricsMBean(), name);
+			}
+		} catch (JMException e) {
+			Kfdl.LOGGER.warn("Failed to register metrics MBean", e);
+		}
+	}
+
+	private enum Type {
+		COUNTER,
+		GAUGE,
+		HISTOGRAM
+	}
+
+	private static final class Family {
+		private final String help;
+		private final Type type;
+		private final Map<String, Metric> children = new ConcurrentSkipListMap<>();
+
+		private Family(String help, Type type) {
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Metric {
+		void collect(String name, String labels, SampleConsumer consumer);
+	}
+
+	@FunctionalInterface
+	private interface SampleConsumer {
+		void accept(String name, String labels, double value);
+	}
+
+	public static final class Counter implements Metric {
+		private final LongAdder value = new LongAdder();
+
+		private Counter() {
+		}
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+
+		@Override
+		public void collect(String name, String labels, SampleConsumer consumer) {
+			consumer.accept(name, labels, value.sum());
+		}
+	}
+
+	public static final class Histogram implements Metric {
+		private final double[] upperBounds;
+		/**
+		 * Observations per bucket, the last one counting those above all upper bounds.
+		 */
+		private final LongAdder[] counts;
+		private final DoubleAdder sum = new DoubleAdder();
+
+		private Histogram(double[] upperBounds) {
+			this.upperBounds = upperBounds;
+			this.counts = new LongAdder[upperBounds.length + 1];
+
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		public void observe(double value) {
+			int bucket = 0;
+
+			while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+				bucket++;
+			}
+
+			counts[bucket].increment();
+			sum.add(value);
+		}
+
+		/**
+		 * Records the time since {@code startNanos}, a value of {@link System#nanoTime()}.
+		 */
+		public void observeSince(long startNanos) {
+			observe((System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+		}
+
+		@Override
+		public void collect(String name, String labels, SampleConsumer consumer) {
+			String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+			long cumulativeCount = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+				cumulativeCount += counts[i].sum();
+				String bound = i < upperBounds.length ? formatValue(upperBounds[i]) : "+Inf";
+				consumer.accept(name + "_bucket", labelPrefix + "le=\"" + bound + "\"", cumulativeCount);
+			}
+
+			consumer.accept(name + "_sum", labels, sum.sum());
+			consumer.accept(name + "_count", labels, cumulativeCount);
+		}
+	}
+
+	/**
+	 * Exposes each sample as a read-only attribute. The attributes change as metrics come and go.
+	 */
+	private final class MetricsMBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Double value = snapshot().get(attribute);
+
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+
+			return value;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Double> snapshot = snapshot();
+			AttributeList ret = new AttributeList();
+
+			for (String attribute : attributes) {
+				Double value = snapshot.get(attribute);
+
+				if (value != null) {
+					ret.add(new Attribute(attribute, value));
+				}
+			}
+
+			return ret;
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+			for (String name : snapshot().keySet()) {
+				attributes.add(new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false));
+			}
+
+			return new MBeanInfo(MetricsRegistry.class.getName(), "kfdl metrics", attributes.toArray(MBeanAttributeInfo[]::new), null, null, null);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import com.github.nebelnidas.kfdl.core.Mp3Frames.FrameHeader;
+
+/**
+ * Estimates how long an MP3 file plays from its first few KiB, so different versions of an episode can
+ * be compared without downloading them. VBR files carry their frame count in a Xing or VBRI header in
+ * place of the first frame's audio (LAME also writes one for CBR files, and adds the encoder delay and
+ * padding); for files without one, the duration follows from the file size and the first frame's bitrate.
+ */
+final class Mp3DurationProbe {
+	private static final int probeLength = 16 * 1024;
+	/**
+	 * How much audio has to be there after an ID3v2 tag, otherwise it's fetched separately.
+	 */
+	private static final int minAudioLength = 8 * 1024;
+	private static final int xingFramesFlag = 0x1;
+	private static final int xingBytesFlag = 0x2;
+	private static final int xingTocFlag = 0x4;
+	private static final int xingQualityFlag = 0x8;
+	private static final int xingTocLength = 100;
+	private static final int lameDelayOffset = 21;
+	private static final int vbriOffset = 32;
+	private static final int vbriFramesOffset = 14;
+
+	private Mp3DurationProbe() {
+	}
+
+	/**
+	 * Fetches the start of the file with range requests and estimates its duration.
+	 *
+	 * @throws DownloadIntegrityException If the file doesn't contain MPEG audio.
+	 */
+	static Duration probe(String url) throws IOException, InterruptedException {
+		Head head = fetch(url, 0);
+		byte[] data = head.data();
+		long audioStart = Id3v2Tag.getLength(Arrays.copyOf(data, Id3v2Tag.headerLength));
+
+		if (audioStart + minAudioLength > data.length && data.length == probeLength) {
+			data = fetch(url, audioStart).data();
+		} else {
+			data = Arrays.copyOfRange(data, (int) Math.min(audioStart, data.length), data.length);
+		}
+
+		int position = Mp3Frames.findFrameSync(data, data.length);
+
+		if (position < 0) {
+			throw new DownloadIntegrityException(url + " doesn't contain MPEG audio");
+		}
+
+		FrameHeader frame = Mp3Frames.parse(data, position);
+		long samples = getSamplesFromVbrHeader(data, position, frame);
+
+		if (samples >= 0) {
+			return Duration.of(samples * 1_000_000 / frame.sampleRate(), ChronoUnit.MICROS);
+		}
+
+		if (head.totalLength() < 0) {
+			throw new IOException("Can't estimate the duration of " + url + " without knowing its size");
+		}
+
+		long audioLength = head.totalLength() - audioStart - position;
+		return Duration.ofMillis(audioLength * 8 * 1000 / frame.bitrate());
+	}
+
+	/**
+	 * Returns the number of samples per channel announced by a Xing or VBRI header in the given frame,
+	 * or {@code -1} if there is none.
+	 */
+	private static long getSamplesFromVbrHeader(byte[] data, int position, FrameHeader frame) {
+		// The Xing header follows the side information, whose size depends on the version and channel mode
+		int sideInfoLength = frame.mpeg1() ? (frame.mono() ? 17 : 32) : (frame.mono() ? 9 : 17);
+		int xing = position + Mp3Frames.headerLength + sideInfoLength;
+
+		if (matches(data, xing, "Xing") || matches(data, xing, "Info")) {
+			// The probed bytes may end anywhere, even right after the ID
+			if (xing + 8 > data.length) {
+				return -1;
+			}
+
+			int flags = readInt(data, xing + 4, 4);
+
+			if ((flags & xingFramesFlag) == 0 || xing + 12 > data.length) {
+				return -1;
+			}
+
+			long samples = (readInt(data, xing + 8, 4) & 0xFFFFFFFFL) * frame.samples();
+			int lame = xing + 12
+					+ ((flags & xingBytesFlag) != 0 ? 4 : 0)
+					+ ((flags & xingTocFlag) != 0 ? xingTocLength : 0)
+					+ ((flags & xingQualityFlag) != 0 ? 4 : 0);
+
+			if (matches(data, lame, "LAME") && lame + lameDelayOffset + 3 <= data.length) {
+				// 12 bits each for the samples the encoder added in front and at the end
+				int delayAndPadding = readInt(data, lame + lameDelayOffset, 3);
+				samples -= (delayAndPadding >>> 12) + (delayAndPadding & 0xFFF);
+			}
+
+			return Math.max(samples, 0);
+		}
+
+		int vbri = position + Mp3Frames.headerLength + vbriOffset;
+
+		if (matches(data, vbri, "VBRI") && vbri + vbriFramesOffset + 4 <= data.length) {
+			return (readInt(data, vbri + vbriFramesOffset, 4) & 0xFFFFFFFFL) * frame.samples();
+		}
+
+		return -1;
+	}
+
+	private static boolean matches(byte[] data, int position, String id) {
+		return position + id.length() <= data.length
+				&& Arrays.equals(data, position, position + id.length(), id.getBytes(StandardCharsets.ISO_8859_1), 0, id.length());
+	}
+
+	private static int readInt(byte[] data, int position, int length) {
+		int value = 0;
+
+		for (int i = position; i < position + length; i++) {
+			value = (value << 8) | (data[i] & 0xFF);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Reads up to {@value #probeLength} bytes starting at {@code start}. Servers that ignore the range
+	 * send the whole file, which is cut off once enough has been read.
+	 */
+	private static Head fetch(String url, long start) throws IOException, InterruptedException {
+		HttpRequest request = Http.request(url)
+				.header("Range", "bytes=" + start + "-" + (start + probeLength - 1))
+				.build();
+		HttpResponse<InputStream> response = Http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+		try (InputStream body = response.body()) {
+			long totalLength;
+
+			if (response.statusCode() == 206) {
+				Downloader.ContentRange contentRange = Downloader.ContentRange.parse(response);
+
+				if (contentRange == null || contentRange.start() != start) {
+					throw new IOException("Unexpected Content-Range for " + url + ": " + response.headers().firstValue("Content-Range").orElse(null));
+				}
+
+				totalLength = contentRange.length();
+			} else if (response.statusCode() == 200) {
+				totalLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+				body.skipNBytes(start);
+			} else if (response.statusCode() == 416) {
+				return new Head(new byte[0], start); // The file ends before the requested range
+			} else {
+				throw new HttpStatusException(response.statusCode(), url);
+			}
+
+			if (response.headers().firstValue("Content-Type").orElse("").startsWith("text/")) {
+				throw new DownloadIntegrityException("Server answered " + url + " with " + response.headers().firstValue("Content-Type").get());
+			}
+
+			return new Head(body.readNBytes(probeLength), totalLength);
+		}
+	}
+
+	/**
+	 * @param totalLength The size of the whole file, or {@code -1} if unknown.
+	 */
+	private record Head(byte[] data, long totalLength) { }
+}
@@ -0,0 +1,105 @@
+package com.github.nebelnidas.kfdl.core;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parses MPEG audio frame headers, which are enough to tell whether data is MP3 audio at all.
+ */
+final class Mp3Frames {
+	static final int headerLength = 4;
+	/**
+	 * How many consecutive frames have to be found before data is believed to be audio.
+	 */
+	private static final int requiredFrames = 3;
+	private static final int[][] bitrates = {
+			{32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // MPEG 1, layer I
+			{32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384}, // MPEG 1, layer II
+			{32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}, // MPEG 1, layer III
+			{32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256}, // MPEG 2/2.5, layer I
+			{8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}}; // MPEG 2/2.5, layers II and III
+	private static final int[] sampleRates = {44100, 48000, 32000};
+
+	private Mp3Frames() {
+	}
+
+	/**
+	 * Parses the frame header at the given position, returning {@code null} if there is none.
+	 */
+	@Nullable
+	static FrameHeader parse(byte[] data, int position) {
+		if (position < 0 || position + headerLength > data.length) {
+			return null;
+		}
+
+		int header = ((data[position] & 0xFF) << 24)
+				| ((data[position + 1] & 0xFF) << 16)
+				| ((data[position + 2] & 0xFF) << 8)
+				| (data[position + 3] & 0xFF);
+
+		if ((header >>> 21) != 0x7FF) {
+			return null;
+		}
+
+		int version = (header >>> 19) & 3; // 0: MPEG 2.5, 1: reserved, 2: MPEG 2, 3: MPEG 1
+		int layer = 4 - ((header >>> 17) & 3); // 4: reserved
+		int bitrateIndex = (header >>> 12) & 0xF;
+		int sampleRateIndex = (header >>> 10) & 3;
+
+		// Free format streams are legal, but don't occur in practice and can't be checked this way
+		if (version == 1 || layer == 4 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+			return null;
+		}
+
+		boolean mpeg1 = version == 3;
+		int bitrate = 1000 * bitrates[mpeg1 ? layer - 1 : Math.min(layer, 2) + 2][bitrateIndex - 1];
+		int sampleRate = sampleRates[sampleRateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+		int padding = (header >>> 9) & 1;
+		int samples = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+		int length = layer == 1
+				? (12 * bitrate / sampleRate + padding) * 4
+				: samples / 8 * bitrate / sampleRate + padding;
+
+		return new FrameHeader(mpeg1, layer, bitrate, sampleRate, samples, length, ((header >>> 6) & 3) == 3);
+	}
+
+	/**
+	 * Returns the position of the first of several consecutive frames within the first {@code length} bytes,
+	 * or {@code -1} if there are none. If the data ends before enough frames could be checked, a frame
+	 * whose successors would lie beyond the end is accepted.
+	 */
+	static int findFrameSync(byte[] data, int length) {
+		for (int start = 0; start + headerLength <= length; start++) {
+			int position = start;
+			int frames = 0;
+
+			while (frames < requiredFrames) {
+				if (position + headerLength > length) {
+					return start; // There is at least one frame, since the loop only starts where a header fits
+				}
+
+				FrameHeader header = parse(data, position);
+
+				if (header == null) {
+					break;
+				}
+
+				frames++;
+				position += header.length();
+			}
+
+			if (frames == requiredFrames) {
+				return start;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param layer 1, 2 or 3.
+	 * @param bitrate In bits per second.
+	 * @param samples How many samples per channel the frame holds.
+	 * @param length The length of the whole frame in bytes, including its header.
+	 */
+	record FrameHeader(boolean mpeg1, int layer, int bitrate, int sampleRate, int samples, int length, boolean mono) { }
+}
@@ -0,0 +1,23 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named {@code kfdl-<name>-<n>}.
+ */
+class NamedThreadFactory implements ThreadFactory {
+	private final AtomicInteger counter = new AtomicInteger();
+	private final String name;
+
+	NamedThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, "kfdl-" + name + "-" + counter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,209 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import lombok.With;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A download in progress. Data is written to {@code <target>.part}, and a sidecar file next to it
+ * records which bytes are known to have reached the disk, along with the validators of the
+ * response they came from, so an interrupted download can be resumed with Range requests.
+ * The target file only appears once the download is complete.
+ *
+ * <p>The part file starts with kfdl's own ID3 tag, followed by the downloaded bytes minus the ID3 tag
+ * the server's file starts with. So a byte at offset {@code o} of the download is stored at
+ * {@code o + tagLength - skippedLength} in the part file, and offsets below {@code skippedLength} aren't stored.
+ *
+ * <p>The format of the sidecar file is as follows:
+ * <pre>{@code
+ * file    = <header> <url> <tab> <etag> <tab> <last-modified> <tab> <length> <tab> <offset> <tab> <ranges> <tab> <tag-length> <tab> <skipped-length> <newline>
+ * header  = 'kfdl-part' <tab> <major-version> <tab> <minor-version> <newline>
+ * ranges  = (<start> '-' <end> (',' <start> '-' <end>)*)?
+ * }</pre>
+ * Missing validators are empty, an unknown length is {@code -1}. Everything before the offset is
+ * complete, the ranges (end exclusive) list complete parts after it. Offsets and ranges refer to the
+ * download, not the part file. Part files from before version 1.2 have no tag and are started over.
+ */
+final class PartFile {
+	private static final String V1_HEADER_PREFIX = "kfdl-part\t1\t";
+	private static final String V1_2_HEADER = V1_HEADER_PREFIX + "2\n";
+	private final Path target;
+	private final Path path;
+	private final Path sidecarPath;
+
+	PartFile(Path target) {
+		this.target = target;
+		this.path = target.resolveSibling(target.getFileName() + ".part");
+		this.sidecarPath = target.resolveSibling(target.getFileName() + ".part.meta");
+	}
+
+	Path path() {
+		return path;
+	}
+
+	/**
+	 * Returns the recorded state if it belongs to a download of the given URL and the part file still holds all of it.
+	 */
+	@Nullable
+	State readState(String url) {
+		if (!Files.exists(sidecarPath) || !Files.exists(path)) {
+			return null;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(sidecarPath);
+
+			if (lines.size() != 2 || !(lines.get(0) + "\n").startsWith(V1_HEADER_PREFIX)) {
+				Kfdl.LOGGER.warn("Part file sidecar {} is invalid, ignoring it", sidecarPath);
+				return null;
+			}
+
+			if (!(lines.get(0) + "\n").equals(V1_2_HEADER)) {
+				Kfdl.LOGGER.info("Part file {} was written by an older version, starting it over", path);
+				return null;
+			}
+
+			String[] parts = lines.get(1).split("\t", -1);
+
+			if (parts.length != 8) {
+				Kfdl.LOGGER.warn("Part file sidecar {} has invalid number of parts, ignoring it", sidecarPath);
+				return null;
+			}
+
+			State state = new State(parts[0],
+					parts[1].isEmpty() ? null : parts[1],
+					parts[2].isEmpty() ? null : parts[2],
+					Long.parseLong(parts[3]),
+					Long.parseLong(parts[4]),
+					parseRanges(parts[5]),
+					Integer.parseInt(parts[6]),
+					Long.parseLong(parts[7]));
+
+			if (!state.url().equals(url) || state.toFilePosition(state.offset()) > Files.size(path)) {
+				return null;
+			}
+
+			return state;
+		} catch (IOException | RuntimeException e) {
+			Kfdl.LOGGER.warn("Failed to read part file sidecar {}", sidecarPath, e);
+			return null;
+		}
+	}
+
+	void writeState(State state) throws IOException {
+		StringJoiner ranges = new StringJoiner(",");
+
+		for (Range range : state.completedRanges()) {
+			ranges.add(range.start() + "-" + range.end());
+		}
+
+		String content = V1_2_HEADER
+				+ state.url() + '\t'
+				+ (state.etag() == null ? "" : state.etag()) + '\t'
+				+ (state.lastModified() == null ? "" : state.lastModified()) + '\t'
+				+ state.length() + '\t'
+				+ state.offset() + '\t'
+				+ ranges + '\t'
+				+ state.tagLength() + '\t'
+				+ state.skippedLength() + '\n';
+		Path tempFile = sidecarPath.resolveSibling(sidecarPath.getFileName() + ".tmp");
+		Files.writeString(tempFile, content);
+		Files.move(tempFile, sidecarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes kfdl's tag at the start of the part file, creating it if necessary.
+	 */
+	void writeTag(byte[] tag) throws IOException {
+		try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(tag);
+
+			while (buffer.hasRemaining()) {
+				out.write(buffer, buffer.position());
+			}
+		}
+	}
+
+	private static List<Range> parseRanges(String ranges) {
+		List<Range> ret = new ArrayList<>();
+
+		if (ranges.isEmpty()) {
+			return ret;
+		}
+
+		for (String range : ranges.split(",")) {
+			int separator = range.indexOf('-');
+			ret.add(new Range(Long.parseLong(range.substring(0, separator)), Long.parseLong(range.substring(separator + 1))));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Moves the part file into place and removes the sidecar.
+	 */
+	void complete() throws IOException {
+		Files.move(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.deleteIfExists(sidecarPath);
+	}
+
+	/**
+	 * Removes the part file and its sidecar.
+	 */
+	void delete() throws IOException {
+		Files.deleteIfExists(sidecarPath);
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * The validator to send in an {@code If-Range} header, or {@code null} if the download can't be resumed safely.
+	 */
+	@Nullable
+	static String getRangeValidator(State state) {
+		if (state.etag() != null && !state.etag().startsWith("W/")) {
+			return state.etag();
+		}
+
+		return state.lastModified();
+	}
+
+	/**
+	 * The progress of a download.
+	 *
+	 * @param length The full size of the file, or {@code -1} if the server didn't tell.
+	 * @param offset How many bytes at the start of the download are known to be on disk.
+	 * @param completedRanges Further byte ranges after the offset that are known to be on disk.
+	 * @param tagLength The length of kfdl's tag at the start of the part file.
+	 * @param skippedLength The length of the server's tag, which isn't stored.
+	 */
+	@With
+	record State(String url, @Nullable String etag, @Nullable String lastModified, long length, long offset, List<Range> completedRanges,
+			int tagLength, long skippedLength) {
+		long toFilePosition(long offset) {
+			return offset + tagLength - skippedLength;
+		}
+
+		long toOffset(long filePosition) {
+			return filePosition - tagLength + skippedLength;
+		}
+	}
+
+	/**
+	 * A byte range, end exclusive.
+	 */
+	record Range(long start, long end) {
+		long length() {
+			return end - start;
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package com.github.nebelnidas.kfdl.core;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -12,7 +9,12 @@ import lombok.Value;
 @Value
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Person {
-	private static final Map<String, Person> personsByName = new HashMap<>();
+	private static final InternRegistry<Person> registry = new InternRegistry<>();
+	/**
+	 * Dense number assigned in the order people are first seen in this run. Cache files refer to people by the
+	 * indexes of their {@link CacheFileFormat.Dictionary} instead, which stay the same across runs.
+	 */
+	private final int index;
 	private final String name;
 
 	public static final Person BENJAMIN_GOLLME = getOrCreate("Benjamin Gollme");
@@ -31,10 +33,14 @@ public class Person {
 	public static final Person OLIVER_HOLZER = getOrCreate("Oliver Holzer");
 
 	public static Person getOrCreate(String name) {
-		return personsByName.computeIfAbsent(name.trim(), Person::new);
+		String trimmedName = name.trim();
+		return registry.intern(trimmedName, index -> new Person(index, trimmedName));
 	}
 
-	public static Collection<Person> values() {
-		return Collections.unmodifiableCollection(personsByName.values());
+	/**
+	 * Returns all people ordered by index.
+	 */
+	public static List<Person> values() {
+		return registry.values();
 	}
 }
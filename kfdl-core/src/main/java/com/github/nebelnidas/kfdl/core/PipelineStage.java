@@ -0,0 +1,129 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
+
+/**
+ * One stage of the sync pipeline. Items are put into a bounded queue, which blocks
+ * the producing stage once it is full, and are processed by a fixed number of workers
+ * running on threads of the given {@link ThreadingMode}.
+ */
+class PipelineStage<T> {
+	private static final Object END_OF_INPUT = new Object();
+	private static final long endOfInputPollMillis = 100;
+	private final String name;
+	private final int parallelism;
+	private final BlockingQueue<Object> input;
+	private final ItemProcessor<T> processor;
+	private final ExecutorService workers;
+	private final List<Future<?>> workerFutures = new ArrayList<>();
+	private final Histogram duration;
+	private final AtomicInteger failedItems = new AtomicInteger();
+
+	PipelineStage(String name, int parallelism, int capacity, ThreadingMode threadingMode, ItemProcessor<T> processor) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism of stage '" + name + "' must be positive: " + parallelism);
+		}
+
+		this.name = name;
+		this.parallelism = parallelism;
+		this.input = new ArrayBlockingQueue<>(Math.max(capacity, parallelism));
+		this.processor = processor;
+		this.workers = threadingMode.createExecutor(name);
+		this.duration = getDurationHistogram(name);
+		Kfdl.METRICS.gauge("kfdl_stage_queue_size", "Items waiting in front of a pipeline stage", input::size, "stage", name);
+	}
+
+	/**
+	 * Returns the histogram of the time spent per item in a stage, which work outside of a pipeline can report to as well.
+	 */
+	static Histogram getDurationHistogram(String stage) {
+		return Kfdl.METRICS.histogram("kfdl_stage_duration_seconds", "Time spent on a single item in a pipeline stage", "stage", stage);
+	}
+
+	void start() {
+		for (int i = 0; i < parallelism; i++) {
+			workerFutures.add(workers.submit(this::work));
+		}
+
+		workers.shutdown();
+	}
+
+	/**
+	 * Hands an item to this stage, blocking while the stage's queue is full.
+	 */
+	void put(T item) throws InterruptedException {
+		input.put(item);
+	}
+
+	/**
+	 * Signals that no more items will be put, then waits until all queued items have been processed.
+	 */
+	void finish() throws InterruptedException {
+		for (int i = 0; i < parallelism; i++) {
+			// Workers that already exited, for example after an interrupt, don't drain the queue anymore
+			while (!input.offer(END_OF_INPUT, endOfInputPollMillis, TimeUnit.MILLISECONDS)) {
+				if (workerFutures.stream().allMatch(Future::isDone)) {
+					Kfdl.LOGGER.warn("All workers of pipeline stage '{}' exited early, dropping {} queued items", name, input.size());
+					input.clear();
+					break;
+				}
+			}
+		}
+
+		for (Future<?> future : workerFutures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				Kfdl.LOGGER.error("Worker of pipeline stage '{}' failed", name, e);
+			}
+		}
+	}
+
+	/**
+	 * How many items processing threw an exception for. They weren't handed on or recorded anywhere.
+	 */
+	int getFailedItems() {
+		return failedItems.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void work() {
+		while (true) {
+			try {
+				Object item = input.take();
+
+				if (item == END_OF_INPUT) {
+					return;
+				}
+
+				long start = System.nanoTime();
+
+				try {
+					processor.process((T) item);
+				} finally {
+					duration.observeSince(start);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				failedItems.incrementAndGet();
+				Kfdl.LOGGER.error("Pipeline stage '{}' failed to process an item", name, e);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	interface ItemProcessor<T> {
+		void process(T item) throws Exception;
+	}
+}
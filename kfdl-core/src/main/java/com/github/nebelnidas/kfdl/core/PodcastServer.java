@@ -0,0 +1,382 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.EpisodeCatalog.Episode;
+
+/**
+ * Serves the downloaded episodes in the working directory as a podcast, using the JDK's built-in HTTP server.
+ * The RSS feed at {@code /feed.xml} is built from the {@link EpisodeCatalog} and rebuilt only once the catalog
+ * or the directory changed; episodes are served from {@code /episodes/<date>.mp3} with support for single
+ * byte ranges and conditional requests. Requests are handled on the threads of the given {@link ThreadingMode},
+ * so with virtual threads, listeners that stream slowly don't tie up a platform thread each.
+ */
+public class PodcastServer {
+	private static final String feedPath = "/feed.xml";
+	private static final String episodePathPrefix = "/episodes/";
+	private static final Pattern episodeFilePattern = Pattern.compile("\\d{4}-\\d{2}-\\d{2}\\.mp3");
+	private static final Pattern rangePattern = Pattern.compile("bytes=(\\d*)-(\\d*)");
+	private static final ZoneId episodeZone = ZoneId.of("Europe/Berlin");
+	private final Path workingDir;
+	private final Path catalogFile;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private volatile Feed feed;
+
+	public PodcastServer(Path workingDir, InetSocketAddress address, ThreadingMode threadingMode) throws IOException {
+		this.workingDir = workingDir;
+		this.catalogFile = workingDir.resolve("kfdl-catalog.txt");
+		this.executor = threadingMode.createExecutor("serve");
+		this.server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				sendEmpty(exchange, 405);
+			} else if (path.equals("/") || path.equals(feedPath)) {
+				serveFeed(exchange);
+			} else if (path.startsWith(episodePathPrefix) && episodeFilePattern.matcher(path.substring(episodePathPrefix.length())).matches()) {
+				serveEpisode(exchange, workingDir.resolve(path.substring(episodePathPrefix.length())));
+			} else {
+				sendEmpty(exchange, 404);
+			}
+		} catch (IOException e) {
+			// Mostly listeners that went away mid-response
+			Kfdl.LOGGER.debug("Failed to answer {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+		} catch (RuntimeException e) {
+			Kfdl.LOGGER.error("Failed to answer {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+		}
+	}
+
+	private void serveFeed(HttpExchange exchange) throws IOException {
+		String baseUrl = "http://" + Objects.requireNonNullElse(exchange.getRequestHeaders().getFirst("Host"), "localhost:" + getAddress().getPort());
+		Feed current = getFeed(baseUrl);
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", "application/rss+xml; charset=utf-8");
+		headers.set("ETag", current.etag());
+		headers.set("Last-Modified", formatHttpDate(current.lastModified()));
+
+		if (isNotModified(exchange, current.etag(), current.lastModified())) {
+			sendEmpty(exchange, 304);
+			return;
+		}
+
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			headers.set("Content-Length", Integer.toString(current.content().length));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+
+		exchange.sendResponseHeaders(200, current.content().length);
+		exchange.getResponseBody().write(current.content());
+	}
+
+	/**
+	 * Returns the current feed, rebuilding it if the catalog or the set of files changed since it was last built.
+	 */
+	private Feed getFeed(String baseUrl) throws IOException {
+		String fingerprint = getFingerprint(catalogFile) + "|" + getFingerprint(workingDir) + "|" + baseUrl;
+		Feed current = feed;
+
+		if (current != null && current.fingerprint().equals(fingerprint)) {
+			return current;
+		}
+
+		synchronized (this) {
+			current = feed;
+
+			if (current == null || !current.fingerprint().equals(fingerprint)) {
+				current = buildFeed(baseUrl, fingerprint);
+				feed = current;
+			}
+
+			return current;
+		}
+	}
+
+	private static String getFingerprint(Path path) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+		} catch (NoSuchFileException e) {
+			return "";
+		}
+	}
+
+	private Feed buildFeed(String baseUrl, String fingerprint) throws IOException {
+		NavigableMap<LocalDate, Path> files = new TreeMap<>();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(workingDir, "*.mp3")) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+
+				if (episodeFilePattern.matcher(name).matches()) {
+					files.put(LocalDate.parse(name.substring(0, name.length() - 4)), file);
+				}
+			}
+		}
+
+		EpisodeCatalog catalog = new EpisodeCatalog(catalogFile);
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		Instant lastModified = Instant.EPOCH;
+
+		try {
+			XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(content, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeStartElement("rss");
+			writer.writeAttribute("version", "2.0");
+			writer.writeNamespace("itunes", "http://www.itunes.com/dtds/podcast-1.0.dtd");
+			writer.writeStartElement("channel");
+			writeElement(writer, "title", "Kontrafunk aktuell");
+			writeElement(writer, "link", baseUrl + feedPath);
+			writeElement(writer, "description", "Episodes downloaded by kfdl");
+			writeElement(writer, "language", "de");
+
+			for (Map.Entry<LocalDate, Path> file : files.descendingMap().entrySet()) {
+				LocalDate date = file.getKey();
+				Episode episode = catalog.get(date);
+				BasicFileAttributes attributes = Files.readAttributes(file.getValue(), BasicFileAttributes.class);
+				Instant modified = attributes.lastModifiedTime().toInstant();
+				lastModified = modified.isAfter(lastModified) ? modified : lastModified;
+
+				writer.writeStartElement("item");
+				writeElement(writer, "title", episode != null ? episode.title() : "Kontrafunk aktuell vom " + date);
+				writeElement(writer, "description", episode != null ? episode.description() : null);
+				writeElement(writer, "link", episode != null ? episode.siteUrl() : null);
+				writeElement(writer, "guid", date.toString());
+				writeElement(writer, "pubDate", formatHttpDate(date.atStartOfDay(episodeZone).toInstant()));
+				writer.writeEmptyElement("enclosure");
+				writer.writeAttribute("url", baseUrl + episodePathPrefix + file.getValue().getFileName());
+				writer.writeAttribute("length", Long.toString(attributes.size()));
+				writer.writeAttribute("type", "audio/mpeg");
+
+				if (episode != null) {
+					writeElement(writer, "itunes:author", episode.host().getName());
+					writeElement(writer, "itunes:keywords", episode.tags().stream().map(Tag::getName).collect(Collectors.joining(",")));
+				}
+
+				writer.writeEndElement();
+			}
+
+			writer.writeEndElement();
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to build feed", e);
+		}
+
+		byte[] bytes = content.toByteArray();
+		String etag = "\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "-" + Integer.toHexString(bytes.length) + "\"";
+		Kfdl.LOGGER.debug("Built feed with {} episodes", files.size());
+		return new Feed(fingerprint, bytes, etag, lastModified);
+	}
+
+	private static void writeElement(XMLStreamWriter writer, String name, @Nullable String text) throws XMLStreamException {
+		if (text == null) {
+			return;
+		}
+
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	private void serveEpisode(HttpExchange exchange, Path file) throws IOException {
+		BasicFileAttributes attributes;
+
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			sendEmpty(exchange, 404);
+			return;
+		}
+
+		long size = attributes.size();
+		Instant lastModified = attributes.lastModifiedTime().toInstant();
+		String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified.toEpochMilli()) + "\"";
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", "audio/mpeg");
+		headers.set("Accept-Ranges", "bytes");
+		headers.set("ETag", etag);
+		headers.set("Last-Modified", formatHttpDate(lastModified));
+
+		if (isNotModified(exchange, etag, lastModified)) {
+			sendEmpty(exchange, 304);
+			return;
+		}
+
+		long start = 0;
+		long length = size;
+		boolean partial = false;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		boolean rangeApplies = range != null && (ifRange == null || ifRange.equals(etag));
+		Matcher matcher = rangeApplies ? rangePattern.matcher(range.trim()) : null;
+
+		// Multiple ranges and malformed headers, including ranges that end before they start,
+		// are answered with the whole file, as RFC 9110 allows
+		if (matcher != null && matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+			long first;
+			long last = Long.MAX_VALUE;
+			boolean satisfiable;
+
+			if (matcher.group(1).isEmpty()) {
+				long suffixLength = parseBytePosition(matcher.group(2));
+				first = size - Math.min(suffixLength, size);
+				satisfiable = suffixLength > 0 && size > 0;
+			} else {
+				first = parseBytePosition(matcher.group(1));
+				last = matcher.group(2).isEmpty() ? Long.MAX_VALUE : parseBytePosition(matcher.group(2));
+				satisfiable = first < size;
+			}
+
+			if (last >= first) {
+				if (!satisfiable) {
+					headers.set("Content-Range", "bytes */" + size);
+					sendEmpty(exchange, 416);
+					return;
+				}
+
+				start = first;
+				length = Math.min(last, size - 1) - first + 1;
+				partial = true;
+				headers.set("Content-Range", "bytes " + start + "-" + (start + length - 1) + "/" + size);
+			}
+		}
+
+		int status = partial ? 206 : 200;
+
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			headers.set("Content-Length", Long.toString(length));
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			exchange.sendResponseHeaders(status, length);
+			OutputStream body = exchange.getResponseBody();
+			WritableByteChannel target = Channels.newChannel(body);
+			long position = start;
+			long end = start + length;
+
+			while (position < end) {
+				long transferred = channel.transferTo(position, end - position, target);
+
+				if (transferred <= 0) {
+					throw new IOException("File " + file + " ended early");
+				}
+
+				position += transferred;
+			}
+		}
+	}
+
+	/**
+	 * Parses a position from a range header. Positions too large for a {@code long} are beyond the end of any file.
+	 */
+	private static long parseBytePosition(String digits) {
+		try {
+			return Long.parseLong(digits);
+		} catch (NumberFormatException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Whether the client's cached copy is still current. {@code If-None-Match} takes precedence over {@code If-Modified-Since}.
+	 */
+	private static boolean isNotModified(HttpExchange exchange, String etag, Instant lastModified) {
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+		if (ifNoneMatch != null) {
+			return ifNoneMatch.trim().equals("*") || Arrays.stream(ifNoneMatch.split(","))
+					.map(String::trim)
+					.anyMatch(tag -> tag.equals(etag) || tag.equals("W/" + etag));
+		}
+
+		String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+
+		if (ifModifiedSince == null) {
+			return false;
+		}
+
+		try {
+			Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+			return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	private static String formatHttpDate(Instant instant) {
+		return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+	}
+
+	/**
+	 * @param fingerprint Identifies the state of the catalog and working directory the feed was built from.
+	 */
+	private record Feed(String fingerprint, byte[] content, String etag, Instant lastModified) { }
+}
@@ -0,0 +1,49 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes all metrics to a file in the Prometheus text format, for node-exporter's textfile
+ * collector to pick up. The file is replaced atomically, so the collector never sees a partial write.
+ */
+class PrometheusTextFile implements AutoCloseable {
+	private final MetricsRegistry registry;
+	private final Path path;
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("metrics"));
+
+	PrometheusTextFile(MetricsRegistry registry, Path path, Duration interval) {
+		this.registry = registry;
+		this.path = path;
+		long intervalMillis = Math.max(interval.toMillis(), 1000);
+		writer.scheduleWithFixedDelay(this::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void write() {
+		StringBuilder content = new StringBuilder();
+		registry.writePrometheus(content);
+
+		try {
+			Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+			Files.writeString(tempFile, content);
+			Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Kfdl.LOGGER.warn("Failed to write metrics to {}", path, e);
+		}
+	}
+
+	/**
+	 * Stops the periodic writes after writing the final values.
+	 */
+	@Override
+	public void close() {
+		writer.shutdownNow();
+		write();
+	}
+}
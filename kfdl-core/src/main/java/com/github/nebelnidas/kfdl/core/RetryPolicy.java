@@ -0,0 +1,64 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed download is attempted again. Retry delays grow exponentially
+ * from {@code baseDelay} up to {@code maxDelay}; each one is picked randomly from the upper half of
+ * that range, so downloads that failed together don't all retry at the same moment.
+ */
+public final class RetryPolicy {
+	public static final RetryPolicy NEVER = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+	private final int maxAttempts;
+	private final Duration baseDelay;
+	private final Duration maxDelay;
+
+	/**
+	 * Creates a policy that gives up after {@code maxAttempts} failed attempts in a row.
+	 *
+	 * @param maxAttempts How many attempts a download gets in total, including the first one.
+	 */
+	public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+		this.maxAttempts = Math.max(maxAttempts, 1);
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public Duration getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Whether the failure may go away by itself: network errors, timeouts, server errors and rate limiting.
+	 * Other client errors like a {@code 404} will fail the same way next time.
+	 */
+	public boolean isRetryable(Exception exception) {
+		if (exception instanceof HttpStatusException statusException) {
+			int statusCode = statusException.getStatusCode();
+			return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+		}
+
+		return exception instanceof IOException;
+	}
+
+	/**
+	 * Returns how long to wait after the given number of failed attempts.
+	 */
+	public Duration getDelay(int failedAttempts) {
+		long maxNanos = maxDelay.toNanos();
+		long nanos = baseDelay.toNanos();
+
+		for (int i = 1; i < failedAttempts && nanos < maxNanos; i++) {
+			nanos *= 2;
+		}
+
+		nanos = Math.min(nanos, maxNanos);
+		return Duration.ofNanos(nanos / 2 + ThreadLocalRandom.current().nextLong(nanos / 2 + 1));
+	}
+}
@@ -1,21 +1,44 @@
 package com.github.nebelnidas.kfdl.core;
 
+import java.time.Instant;
 import java.time.LocalDate;
 
-public record SaveFileEntry(LocalDate episodeDate, String downloadLink, DownloadState downloadState) {
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An episode's download progress as recorded in the save file.
+ *
+ * @param attempts How many download attempts failed since the last successful one.
+ * @param nextRetry When the next attempt is due, or {@code null} if none is scheduled.
+ * @param sha256 The hex encoded SHA-256 of the downloaded audio, without ID3 tags.
+ */
+public record SaveFileEntry(LocalDate episodeDate, String downloadLink, DownloadState downloadState, int attempts, @Nullable Instant nextRetry,
+		@Nullable String sha256) {
+	public SaveFileEntry(LocalDate episodeDate, String downloadLink, DownloadState downloadState) {
+		this(episodeDate, downloadLink, downloadState, 0, null, null);
+	}
+
 	public SaveFileEntry(MergedEpisodeData episode, DownloadState downloadState) {
 		this(episode.date(), episode.defaultDownload(), downloadState);
 	}
 
 	public SaveFileEntry withDownloadState(DownloadState downloadState) {
-		return new SaveFileEntry(episodeDate, downloadLink, downloadState);
+		return new SaveFileEntry(episodeDate, downloadLink, downloadState, attempts, nextRetry, sha256);
 	}
 
 	public SaveFileEntry withDownloadLink(String downloadLink) {
-		return new SaveFileEntry(episodeDate, downloadLink, downloadState);
+		return new SaveFileEntry(episodeDate, downloadLink, downloadState, attempts, nextRetry, sha256);
 	}
 
 	public SaveFileEntry withEpisodeDate(LocalDate episodeDate) {
-		return new SaveFileEntry(episodeDate, downloadLink, downloadState);
+		return new SaveFileEntry(episodeDate, downloadLink, downloadState, attempts, nextRetry, sha256);
+	}
+
+	public SaveFileEntry withRetry(int attempts, @Nullable Instant nextRetry) {
+		return new SaveFileEntry(episodeDate, downloadLink, downloadState, attempts, nextRetry, sha256);
+	}
+
+	public SaveFileEntry withSha256(@Nullable String sha256) {
+		return new SaveFileEntry(episodeDate, downloadLink, downloadState, attempts, nextRetry, sha256);
 	}
 }
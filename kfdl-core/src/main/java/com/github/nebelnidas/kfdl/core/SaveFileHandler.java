@@ -1,63 +1,147 @@
 package com.github.nebelnidas.kfdl.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.MetricsRegistry.Histogram;
 
 /**
  * The format of the file is as follows:
  * <pre>{@code
  * file    = <header> <episode>*
  * header  = 'kfdl-save' <tab> <major-version> <tab> <minor-version> <newline>
- * episode = <episode-date> <tab> <download-link> <tab> <download-state> <newline>
- * }</pre>.
+ * episode = <episode-date> <tab> <download-link> <tab> <download-state> (<tab> <attempts> <tab> <next-retry> (<tab> <sha256>)?)? <newline>
+ * }</pre>
+ * The retry columns were added in version 1.1 and are only written for episodes with failed attempts
+ * or a digest. {@code <next-retry>} is an ISO-8601 instant, or {@code -} if no retry is scheduled.
+ * The hex encoded SHA-256 of the downloaded audio was added in version 2.1. Older files are compacted
+ * into the current version before anything is appended to them.
+ *
+ * <p>Since version 2, the file is a journal: each save only appends the episodes that changed since the
+ * previous one, and when reading, the last line for an episode wins. Once the journal has grown to twice
+ * the number of episodes, it's compacted by atomically replacing it with a file holding one line per episode.
+ * A line cut short by a crash is skipped. Version 1 files are read as they are and compacted into version 2
+ * on the first save.
+ *
+ * <p>Writes happen on a background thread. Changes are collected for a commit window and then written
+ * together, so threads reporting state transitions never wait for the disk.
  */
-public class SaveFileHandler {
-	private static final long SAVE_INTERVAL = 1000;
+public class SaveFileHandler implements AutoCloseable {
+	private static final Duration DEFAULT_COMMIT_WINDOW = Duration.ofSeconds(1);
+	private static final int MIN_COMPACTION_THRESHOLD = 256;
 	private static final String V1_HEADER_PREFIX = "kfdl-save\t1\t";
-	private static final String V1_0_HEADER = V1_HEADER_PREFIX + "0\n";
+	private static final String V2_HEADER_PREFIX = "kfdl-save\t2\t";
+	private static final String V2_1_HEADER = V2_HEADER_PREFIX + "1\n";
+	private static final Comparator<SaveFileEntry> NEWEST_FIRST = Comparator.comparing(SaveFileEntry::episodeDate).reversed();
 	private static final Map<Path, Lock> locks = new HashMap<>();
+	private static final Histogram compactDuration = getWriteDurationHistogram("compact");
+	private static final Histogram appendDuration = getWriteDurationHistogram("append");
 	private final Path saveFilePath;
 	private final Lock lock;
-	private volatile TreeSet<SaveFileEntry> episodes;
-	private volatile boolean dirty;
-	private volatile long lastSaveTime = 0;
+	private final long commitWindowNanos;
+	private final boolean fsync;
+	private final ScheduledExecutorService persister = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("save"));
+	private Map<LocalDate, SaveFileEntry> unsavedEpisodes = new LinkedHashMap<>();
+	private Map<LocalDate, SaveFileEntry> episodes;
+	/**
+	 * Completes once the changes in {@link #unsavedEpisodes} have been written, {@code null} if no commit is scheduled.
+	 */
+	private CompletableFuture<Void> pendingCommit;
+	/**
+	 * How many episode lines the file currently holds, including superseded ones.
+	 */
+	private int journalLength;
+	private boolean compactionRequired;
 
 	public SaveFileHandler(Path saveFile) {
+		this(saveFile, DEFAULT_COMMIT_WINDOW, true);
+	}
+
+	/**
+	 * Creates a save file handler that writes changes after they've been collected for {@code commitWindow}.
+	 *
+	 * @param fsync Whether to wait for each write to reach the disk. Without it, a crash of the OS
+	 *              (but not of kfdl) may lose the last changes.
+	 */
+	public SaveFileHandler(Path saveFile, Duration commitWindow, boolean fsync) {
 		this.saveFilePath = saveFile;
 		this.lock = locks.computeIfAbsent(saveFile, path -> new ReentrantLock(true));
+		this.commitWindowNanos = commitWindow.toNanos();
+		this.fsync = fsync;
 	}
 
+	private static Histogram getWriteDurationHistogram(String kind) {
+		return Kfdl.METRICS.histogram("kfdl_save_file_write_duration_seconds", "Time spent writing the save file", "kind", kind);
+	}
+
+	/**
+	 * Returns a snapshot of all episodes, newest first.
+	 */
 	public Set<SaveFileEntry> getEpisodes() {
-		if (episodes != null) {
-			return episodes;
+		lock.lock();
+
+		try {
+			Set<SaveFileEntry> snapshot = new TreeSet<>(NEWEST_FIRST);
+			snapshot.addAll(getEpisodeIndex().values());
+			return Collections.unmodifiableSet(snapshot);
+		} finally {
+			lock.unlock();
 		}
+	}
 
+	@Nullable
+	public SaveFileEntry get(LocalDate episodeDate) {
 		lock.lock();
 
 		try {
-			if (episodes == null) {
-				readEpisodes();
-			}
+			return getEpisodeIndex().get(episodeDate);
 		} finally {
 			lock.unlock();
 		}
+	}
 
-		return Collections.unmodifiableSet(episodes);
+	private Map<LocalDate, SaveFileEntry> getEpisodeIndex() {
+		if (episodes == null) {
+			readEpisodes();
+		}
+
+		return episodes;
 	}
 
 	private void readEpisodes() {
-		episodes = new TreeSet<>((e1, e2) -> e2.episodeDate().compareTo(e1.episodeDate()));
+		episodes = new HashMap<>();
+		journalLength = 0;
+		compactionRequired = true;
 
 		if (!Files.exists(saveFilePath)) {
 			return;
@@ -66,103 +150,289 @@ public class SaveFileHandler {
 		try {
 			String saveFileContent = FileUtils.readFileToString(saveFilePath.toFile(), "UTF-8");
 
-			if (!saveFileContent.startsWith(V1_HEADER_PREFIX)) {
+			if (saveFileContent.startsWith(V2_HEADER_PREFIX)) {
+				int end = saveFileContent.lastIndexOf('\n') + 1;
+
+				if (end < saveFileContent.length()) {
+					Kfdl.LOGGER.warn("Save file ends with an incomplete line, probably from an interrupted save, ignoring it");
+				} else if (!saveFileContent.startsWith(V2_1_HEADER)) {
+					// Lines with digests must not be appended below an older header
+					Kfdl.LOGGER.info("Save file has version 2.0, it will be converted to version 2.1 on the next save");
+				} else {
+					compactionRequired = false;
+				}
+
+				saveFileContent = saveFileContent.substring(0, end);
+			} else if (saveFileContent.startsWith(V1_HEADER_PREFIX)) {
+				Kfdl.LOGGER.info("Save file has version 1, it will be converted to version 2 on the next save");
+			} else {
 				Kfdl.LOGGER.warn("Save file header is invalid, ignoring save file");
 				return;
 			}
 
 			String[] lines = saveFileContent
-					.substring(V1_0_HEADER.length())
+					.substring(saveFileContent.indexOf('\n') + 1)
 					.split("\n");
 
 			for (String line : lines) {
-				String[] parts = line.split("\t");
-
-				if (parts.length != 3) {
-					Kfdl.LOGGER.warn("Save file line has invalid number of parts, ignoring line: {}", line);
+				if (line.isEmpty()) {
 					continue;
 				}
 
-				SaveFileEntry episode = new SaveFileEntry(LocalDate.parse(parts[0]), parts[1], DownloadState.parse(parts[2]));
-				episodes.add(episode);
+				SaveFileEntry episode = parseLine(line);
+
+				if (episode != null) {
+					episodes.put(episode.episodeDate(), episode);
+					journalLength++;
+				}
 			}
 		} catch (IOException e) {
 			Kfdl.LOGGER.error("Failed to read save file", e);
 		}
 	}
 
+	@Nullable
+	private static SaveFileEntry parseLine(String line) {
+		String[] parts = line.split("\t");
+
+		if (parts.length != 3 && parts.length != 5 && parts.length != 6) {
+			Kfdl.LOGGER.warn("Save file line has invalid number of parts, ignoring line: {}", line);
+			return null;
+		}
+
+		try {
+			SaveFileEntry episode = new SaveFileEntry(LocalDate.parse(parts[0]), parts[1], DownloadState.parse(parts[2]));
+
+			if (parts.length >= 5) {
+				episode = episode.withRetry(Integer.parseInt(parts[3]), parts[4].equals("-") ? null : Instant.parse(parts[4]));
+			}
+
+			if (parts.length == 6) {
+				episode = episode.withSha256(parts[5]);
+			}
+
+			return episode;
+		} catch (DateTimeParseException | IllegalArgumentException e) {
+			Kfdl.LOGGER.warn("Save file line is malformed, ignoring line: {}", line);
+			return null;
+		}
+	}
+
 	public void addOrUpdate(MergedEpisodeData episode, DownloadState state) {
 		add(new SaveFileEntry(episode, state));
 	}
 
+	/**
+	 * Updates the episode in memory. The change is written by the background persister
+	 * once the commit window has passed, together with all other changes made in the meantime.
+	 */
 	public void add(SaveFileEntry entry) {
 		lock.lock();
 
 		try {
-			for (SaveFileEntry existingEntry : episodes) {
-				if (existingEntry.episodeDate().equals(entry.episodeDate())) {
-					if (existingEntry.episodeDate().equals(entry.episodeDate())) {
-						if (existingEntry.equals(entry)) {
-							return; // Entry with same properties is already in the set
-						}
-
-						episodes.remove(existingEntry);
-						break;
-					}
+			SaveFileEntry existingEntry = getEpisodeIndex().put(entry.episodeDate(), entry);
+
+			if (!entry.equals(existingEntry)) {
+				unsavedEpisodes.put(entry.episodeDate(), entry);
+
+				if (pendingCommit == null) {
+					pendingCommit = new CompletableFuture<>();
+					persister.schedule(this::commit, commitWindowNanos, TimeUnit.NANOSECONDS);
 				}
 			}
-
-			episodes.add(entry);
-			dirty = true;
 		} finally {
 			lock.unlock();
 		}
 	}
 
-	public void suggestSave() {
+	/**
+	 * Writes all changes made so far right away, without waiting for the commit window to pass.
+	 *
+	 * @return A future that completes once the changes have been written (and synced to disk, if enabled),
+	 *         or completes exceptionally if writing them failed.
+	 */
+	public CompletableFuture<Void> flush() {
 		lock.lock();
 
 		try {
-			if (dirty || System.currentTimeMillis() - lastSaveTime > SAVE_INTERVAL) {
-				forceSave();
+			if (pendingCommit == null) {
+				pendingCommit = new CompletableFuture<>();
 			}
+
+			persister.execute(this::commit);
+			return pendingCommit;
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * Writes all changes made so far and waits until they're on disk.
+	 */
 	public void forceSave() {
+		try {
+			flush().join();
+		} catch (CompletionException e) {
+			Kfdl.LOGGER.error("Failed to write save file", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes all changes made so far and stops the background thread. No changes may be made afterwards.
+	 */
+	@Override
+	public void close() {
+		boolean unsaved;
+
 		lock.lock();
 
 		try {
-			if (!dirty) {
-				return;
+			unsaved = pendingCommit != null || !unsavedEpisodes.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+
+		if (unsaved) {
+			forceSave();
+		}
+
+		// Commits scheduled for the end of a commit window have nothing left to write
+		persister.shutdownNow();
+	}
+
+	/**
+	 * Runs on the persister thread only, so writes never overlap. The lock is only held while
+	 * taking over the pending changes, callers never wait for disk I/O.
+	 */
+	private void commit() {
+		CompletableFuture<Void> commit;
+		Map<LocalDate, SaveFileEntry> batch;
+		List<SaveFileEntry> snapshot = null;
+
+		lock.lock();
+
+		try {
+			if (pendingCommit == null) {
+				return; // Already taken care of by a flush
 			}
 
-			writeFile();
-			lastSaveTime = System.currentTimeMillis();
+			commit = pendingCommit;
+			batch = unsavedEpisodes;
+			pendingCommit = null;
+			unsavedEpisodes = new LinkedHashMap<>();
+
+			if (compactionRequired || journalLength + batch.size() > Math.max(2 * getEpisodeIndex().size(), MIN_COMPACTION_THRESHOLD)) {
+				snapshot = new ArrayList<>(episodes.values());
+			}
 		} finally {
 			lock.unlock();
 		}
+
+		long start = System.nanoTime();
+
+		try {
+			if (snapshot != null) {
+				compact(snapshot);
+				compactDuration.observeSince(start);
+			} else if (!batch.isEmpty()) {
+				append(batch.values());
+				appendDuration.observeSince(start);
+			}
+
+			commit.complete(null);
+		} catch (IOException e) {
+			Kfdl.LOGGER.error("Failed to write save file, trying again later", e);
+
+			lock.lock();
+
+			try {
+				// Changes made since have to stay on top
+				batch.putAll(unsavedEpisodes);
+				unsavedEpisodes = batch;
+
+				if (pendingCommit == null) {
+					pendingCommit = new CompletableFuture<>();
+					persister.schedule(this::commit, commitWindowNanos, TimeUnit.NANOSECONDS);
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			commit.completeExceptionally(e);
+		}
+	}
+
+	private void append(Collection<SaveFileEntry> batch) throws IOException {
+		StringBuilder lines = new StringBuilder();
+
+		for (SaveFileEntry episode : batch) {
+			appendLine(lines, episode);
+		}
+
+		try (FileChannel channel = FileChannel.open(saveFilePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			if (fsync) {
+				channel.force(false);
+			}
+		}
+
+		journalLength += batch.size();
+	}
+
+	private void compact(List<SaveFileEntry> snapshot) throws IOException {
+		StringBuilder saveFileContent = new StringBuilder(V2_1_HEADER);
+		snapshot.sort(NEWEST_FIRST);
+
+		for (SaveFileEntry episode : snapshot) {
+			appendLine(saveFileContent, episode);
+		}
+
+		Path tempFile = saveFilePath.resolveSibling(saveFilePath.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(saveFileContent.toString());
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			if (fsync) {
+				channel.force(false); // The old file is gone after the move, so the new one has to be complete
+			}
+		}
+
+		Files.move(tempFile, saveFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		journalLength = snapshot.size();
+		compactionRequired = false;
 	}
 
-	private void writeFile() {
-		StringBuilder saveFileContent = new StringBuilder(V1_0_HEADER);
+	private static void appendLine(StringBuilder builder, SaveFileEntry episode) {
+		builder
+				.append(episode.episodeDate())
+				.append('\t')
+				.append(episode.downloadLink())
+				.append('\t')
+				.append(episode.downloadState().name());
 
-		for (SaveFileEntry episode : episodes) {
-			saveFileContent
-					.append(episode.episodeDate())
+		if (episode.attempts() > 0 || episode.sha256() != null) {
+			builder
 					.append('\t')
-					.append(episode.downloadLink())
+					.append(episode.attempts())
 					.append('\t')
-					.append(episode.downloadState().name())
-					.append('\n');
+					.append(episode.nextRetry() == null ? "-" : episode.nextRetry().toString());
 		}
 
-		try {
-			Files.writeString(saveFilePath, saveFileContent.toString());
-		} catch (IOException e) {
-			Kfdl.LOGGER.error("Failed to write save file", e);
+		if (episode.sha256() != null) {
+			builder
+					.append('\t')
+					.append(episode.sha256());
 		}
+
+		builder.append('\n');
 	}
 }
@@ -0,0 +1,16 @@
+package com.github.nebelnidas.kfdl.core;
+
+public enum ScraperEngine {
+	/**
+	 * Single-pass extraction via {@link StreamingEpisodePageLoader}, retrying with HtmlUnit if a page can't be understood.
+	 */
+	STREAMING,
+	HTMLUNIT;
+
+	KontrafunkScraper createScraper() {
+		return switch (this) {
+			case STREAMING -> new KontrafunkScraper(new StreamingEpisodePageLoader(KontrafunkScraper.SECTION_IDS), new HtmlUnitEpisodePageLoader());
+			case HTMLUNIT -> new KontrafunkScraper(new HtmlUnitEpisodePageLoader(), null);
+		};
+	}
+}
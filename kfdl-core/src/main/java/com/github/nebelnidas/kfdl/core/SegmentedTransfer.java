@@ -0,0 +1,362 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.github.nebelnidas.kfdl.core.PartFile.Range;
+
+/**
+ * Fetches the missing parts of a download over several connections at once, each one writing
+ * at its own position in the preallocated part file. Chunks are sized so that they take about
+ * {@link #targetChunkNanos} at the throughput their connection achieved so far, and further
+ * connections are only opened while they still increase the overall throughput noticeably.
+ */
+final class SegmentedTransfer {
+	private static final long initialChunkSize = 2 * 1024 * 1024;
+	private static final long minChunkSize = 512 * 1024;
+	private static final long maxChunkSize = 32 * 1024 * 1024;
+	private static final long targetChunkNanos = TimeUnit.SECONDS.toNanos(4);
+	private static final long sampleIntervalNanos = TimeUnit.SECONDS.toNanos(2);
+	private static final double minSpeedup = 1.1;
+	private static final long checkpointInterval = 4 * 1024 * 1024;
+	private final PartFile partFile;
+	private final String rangeValidator;
+	private final ExecutorService executor;
+	private final int maxConnections;
+	private final TransferEngine transferEngine;
+	private final TransferListener listener;
+	private final Deque<Range> missingRanges = new ArrayDeque<>();
+	private final TreeMap<Long, Long> completedRanges = new TreeMap<>();
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private final Object checkpointLock = new Object();
+	private volatile PartFile.State state;
+	private FileChannel out;
+	private long uncheckpointedBytes;
+	private int activeConnections;
+	private int openedConnections;
+	private boolean saturated;
+	private long sampleStartNanos;
+	private long sampleStartBytes;
+	private double bestThroughput;
+	private volatile Exception failure;
+
+	/**
+	 * @param state The progress so far, with validators of the current response.
+	 */
+	SegmentedTransfer(PartFile partFile, PartFile.State state, String rangeValidator, ExecutorService executor, int maxConnections,
+			TransferEngine transferEngine, TransferListener listener) {
+		this.partFile = partFile;
+		this.state = state;
+		this.rangeValidator = rangeValidator;
+		this.executor = executor;
+		this.maxConnections = maxConnections;
+		this.transferEngine = transferEngine;
+		this.listener = listener;
+
+		completedRanges.put(0L, state.offset());
+
+		for (Range range : state.completedRanges()) {
+			addCompleted(range);
+		}
+
+		long position = 0;
+
+		for (Map.Entry<Long, Long> completed : completedRanges.entrySet()) {
+			if (completed.getKey() > position) {
+				missingRanges.add(new Range(position, completed.getKey()));
+			}
+
+			position = Math.max(position, completed.getValue());
+		}
+
+		if (position < state.length()) {
+			missingRanges.add(new Range(position, state.length()));
+		}
+	}
+
+	/**
+	 * Downloads all missing ranges, starting with the already opened response for the first one.
+	 */
+	void run(InputStream firstBody, Range firstChunk) throws IOException, InterruptedException {
+		try (FileChannel out = FileChannel.open(partFile.path(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			this.out = out;
+
+			long fileLength = state.toFilePosition(state.length());
+
+			if (out.size() > fileLength) {
+				out.truncate(fileLength);
+			} else {
+				TransferEngine.preallocate(out, fileLength);
+			}
+
+			partFile.writeState(state);
+
+			synchronized (this) {
+				Range first = missingRanges.pollFirst();
+
+				if (first == null || first.start() != firstChunk.start() || first.end() < firstChunk.end()) {
+					firstBody.close();
+					throw new IOException("First chunk " + firstChunk + " doesn't start the missing data");
+				}
+
+				if (first.end() > firstChunk.end()) {
+					missingRanges.addFirst(new Range(firstChunk.end(), first.end()));
+				}
+
+				sampleStartNanos = System.nanoTime();
+				startConnection(firstBody, firstChunk);
+
+				while (activeConnections > 0) {
+					wait();
+				}
+			}
+
+			if (failure != null) {
+				checkpoint(false);
+
+				if (failure instanceof IOException e) {
+					throw e;
+				}
+
+				throw new IOException(failure);
+			}
+
+			checkpoint(true);
+
+			synchronized (this) {
+				if (!missingRanges.isEmpty() || completedRanges.size() != 1 || completedRanges.firstEntry().getValue() != state.length()) {
+					throw new IOException("Segmented download finished with missing ranges");
+				}
+
+				Kfdl.LOGGER.debug("Downloaded {} using up to {} connections", partFile.path().getFileName(), openedConnections);
+			}
+		}
+	}
+
+	private synchronized void startConnection(@Nullable InputStream body, @Nullable Range chunk) {
+		activeConnections++;
+		openedConnections++;
+		executor.submit(() -> runConnection(body, chunk));
+	}
+
+	private void runConnection(@Nullable InputStream body, @Nullable Range chunk) {
+		long chunkSize = initialChunkSize;
+
+		try {
+			while (failure == null) {
+				if (chunk == null) {
+					chunk = takeChunk(chunkSize);
+
+					if (chunk == null) {
+						break;
+					}
+
+					body = openChunk(chunk);
+				}
+
+				long startNanos = System.nanoTime();
+				transferChunk(body, chunk);
+				long elapsedNanos = Math.max(System.nanoTime() - startNanos, 1);
+				chunkSize = Math.min(Math.max(chunk.length() * targetChunkNanos / elapsedNanos, minChunkSize), maxChunkSize);
+				body = null;
+				chunk = null;
+				considerNewConnection();
+			}
+		} catch (Exception e) {
+			if (failure == null) {
+				failure = e;
+			}
+		} finally {
+			if (body != null) {
+				try {
+					body.close();
+				} catch (IOException e) {
+					// Already failing
+				}
+			}
+
+			synchronized (this) {
+				activeConnections--;
+				notifyAll();
+			}
+		}
+	}
+
+	@Nullable
+	private synchronized Range takeChunk(long size) {
+		Range missing = missingRanges.pollFirst();
+
+		if (missing == null) {
+			return null;
+		}
+
+		// Leave enough work for the other connections
+		long missingBytes = missing.length();
+
+		for (Range range : missingRanges) {
+			missingBytes += range.length();
+		}
+
+		size = Math.min(size, Math.max(missingBytes / maxConnections, minChunkSize));
+
+		// Don't leave a tail that would be too small to be worth its own request
+		if (missing.length() - size < minChunkSize) {
+			return missing;
+		}
+
+		missingRanges.addFirst(new Range(missing.start() + size, missing.end()));
+		return new Range(missing.start(), missing.start() + size);
+	}
+
+	private InputStream openChunk(Range chunk) throws IOException, InterruptedException {
+		HttpRequest request = Http.request(state.url())
+				.header("Range", "bytes=" + chunk.start() + "-" + (chunk.end() - 1))
+				.header("If-Range", rangeValidator)
+				.GET()
+				.build();
+		HttpResponse<InputStream> response = Http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+		if (response.statusCode() != 206) {
+			response.body().close();
+			throw new HttpStatusException(response.statusCode(), state.url());
+		}
+
+		String expectedContentRange = "bytes " + chunk.start() + "-" + (chunk.end() - 1) + "/" + state.length();
+
+		if (!response.headers().firstValue("Content-Range").orElse("").equals(expectedContentRange)) {
+			response.body().close();
+			throw new IOException("Server answered range request for " + state.url() + " with unexpected Content-Range");
+		}
+
+		return response.body();
+	}
+
+	private void transferChunk(InputStream body, Range chunk) throws IOException, InterruptedException {
+		try (ReadableByteChannel in = Channels.newChannel(body)) {
+			long transferred = transferEngine.transfer(in, out, state.toFilePosition(chunk.start()), chunk.length(), (data, filePosition) -> {
+				long start = state.toOffset(filePosition);
+				transferredBytes.addAndGet(data.remaining());
+				recordCompleted(new Range(start, start + data.remaining()));
+				return listener.onChunk(data, filePosition) && failure == null;
+			});
+			long position = chunk.start() + transferred;
+
+			if (position < chunk.end()) {
+				synchronized (this) {
+					missingRanges.addFirst(new Range(position, chunk.end()));
+				}
+
+				if (failure == null) {
+					throw new IOException("Range request for " + state.url() + " ended after " + (position - chunk.start()) + " of " + chunk.length() + " bytes");
+				}
+			}
+		}
+	}
+
+	private void recordCompleted(Range range) throws IOException {
+		boolean checkpointDue;
+
+		synchronized (this) {
+			addCompleted(range);
+			uncheckpointedBytes += range.length();
+			checkpointDue = uncheckpointedBytes >= checkpointInterval;
+
+			if (checkpointDue) {
+				uncheckpointedBytes = 0;
+			}
+		}
+
+		if (checkpointDue) {
+			checkpoint(false);
+		}
+	}
+
+	private void addCompleted(Range range) {
+		long start = range.start();
+		long end = range.end();
+		Map.Entry<Long, Long> previous = completedRanges.floorEntry(start);
+
+		if (previous != null && previous.getValue() >= start) {
+			start = previous.getKey();
+			end = Math.max(end, previous.getValue());
+		}
+
+		Map.Entry<Long, Long> next = completedRanges.ceilingEntry(start + 1);
+
+		while (next != null && next.getKey() <= end) {
+			end = Math.max(end, next.getValue());
+			completedRanges.remove(next.getKey());
+			next = completedRanges.ceilingEntry(start + 1);
+		}
+
+		completedRanges.put(start, end);
+	}
+
+	/**
+	 * Only records progress that is guaranteed to be on disk. The completed ranges are captured before the
+	 * data is forced, so ranges other connections complete in the meantime aren't claimed unsynced.
+	 */
+	private void checkpoint(boolean syncMetadata) throws IOException {
+		synchronized (checkpointLock) {
+			PartFile.State snapshot = snapshotState();
+			out.force(syncMetadata);
+			state = snapshot;
+			partFile.writeState(snapshot);
+		}
+	}
+
+	private synchronized PartFile.State snapshotState() {
+		// There's always an entry starting at 0, possibly empty
+		List<Range> ranges = new ArrayList<>(completedRanges.size());
+
+		for (Map.Entry<Long, Long> completed : completedRanges.tailMap(0L, false).entrySet()) {
+			ranges.add(new Range(completed.getKey(), completed.getValue()));
+		}
+
+		return state.withOffset(completedRanges.get(0L)).withCompletedRanges(ranges);
+	}
+
+	/**
+	 * Opens another connection if the last one that was added sped up the transfer
+	 * by at least {@link #minSpeedup}, judged by the throughput since then.
+	 */
+	private synchronized void considerNewConnection() {
+		long now = System.nanoTime();
+
+		// The first sample only establishes the single connection baseline, so it may be short
+		if (saturated || activeConnections >= maxConnections || missingRanges.isEmpty()
+				|| (bestThroughput > 0 && now - sampleStartNanos < sampleIntervalNanos)) {
+			return;
+		}
+
+		long bytes = transferredBytes.get();
+		double throughput = (double) (bytes - sampleStartBytes) / (now - sampleStartNanos);
+
+		if (throughput < bestThroughput * minSpeedup) {
+			saturated = true;
+			return;
+		}
+
+		bestThroughput = throughput;
+		sampleStartNanos = now;
+		sampleStartBytes = bytes;
+		startConnection(null, null);
+	}
+}
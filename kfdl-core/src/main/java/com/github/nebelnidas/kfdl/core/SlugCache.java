@@ -0,0 +1,100 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers which kontrafunk.radio URL slug turned out to be the right one for each episode date,
+ * so subsequent runs don't have to probe the different date formats again.
+ *
+ * <p>The format of the file is as follows:
+ * <pre>{@code
+ * file    = <header> <episode>*
+ * header  = 'kfdl-slugs' <tab> <major-version> <tab> <minor-version> <newline>
+ * episode = <episode-date> <tab> <slug> <newline>
+ * }</pre>.
+ */
+public class SlugCache {
+	private static final String V1_HEADER_PREFIX = "kfdl-slugs\t1\t";
+	private static final String V1_0_HEADER = V1_HEADER_PREFIX + "0\n";
+	private final Path cacheFilePath;
+	private final Map<LocalDate, String> slugs = new ConcurrentSkipListMap<>();
+	private volatile boolean dirty;
+
+	public SlugCache(Path cacheFile) {
+		this.cacheFilePath = cacheFile;
+		readFile();
+	}
+
+	private void readFile() {
+		if (!Files.exists(cacheFilePath)) {
+			return;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(cacheFilePath);
+
+			if (lines.isEmpty() || !(lines.get(0) + "\n").startsWith(V1_HEADER_PREFIX)) {
+				Kfdl.LOGGER.warn("Slug cache header is invalid, ignoring slug cache");
+				return;
+			}
+
+			for (String line : lines.subList(1, lines.size())) {
+				String[] parts = line.split("\t");
+
+				if (parts.length != 2) {
+					Kfdl.LOGGER.warn("Slug cache line has invalid number of parts, ignoring line: {}", line);
+					continue;
+				}
+
+				slugs.put(LocalDate.parse(parts[0]), parts[1]);
+			}
+		} catch (IOException e) {
+			Kfdl.LOGGER.error("Failed to read slug cache", e);
+		}
+	}
+
+	@Nullable
+	public String get(LocalDate episodeDate) {
+		return slugs.get(episodeDate);
+	}
+
+	public void put(LocalDate episodeDate, String slug) {
+		if (!slug.equals(slugs.put(episodeDate, slug))) {
+			dirty = true;
+		}
+	}
+
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		dirty = false;
+		StringBuilder content = new StringBuilder(V1_0_HEADER);
+
+		for (Map.Entry<LocalDate, String> entry : slugs.entrySet()) {
+			content.append(entry.getKey())
+					.append('\t')
+					.append(entry.getValue())
+					.append('\n');
+		}
+
+		try {
+			Path tempFile = cacheFilePath.resolveSibling(cacheFilePath.getFileName() + ".tmp");
+			Files.writeString(tempFile, content);
+			Files.move(tempFile, cacheFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			dirty = true;
+			Kfdl.LOGGER.error("Failed to write slug cache", e);
+		}
+	}
+}
@@ -8,7 +8,6 @@ import java.time.format.DateTimeFormatter;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -16,7 +15,6 @@ import javax.xml.stream.XMLStreamReader;
 
 public class SpreakerEpisodeExtractor {
 	private static final DateTimeFormatter spreakerDateFormatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
-	private static final DateTimeFormatter titleDateFormatter = DateTimeFormatter.ofPattern("dd. MMMM yyyy", Locale.GERMAN);
 
 	private SpreakerEpisodeExtractor() {
 	}
@@ -114,7 +112,7 @@ public class SpreakerEpisodeExtractor {
 						continue;
 					}
 
-					title = fixTitle(title, publicationDate);
+					title = TitleNormalizer.normalize(title, publicationDate);
 					LocalDate titleDate = getTitleDate(title, publicationDate);
 
 					return new SpreakerEpisodeData(
@@ -145,157 +143,8 @@ public class SpreakerEpisodeExtractor {
 			}
 		}
 
-		private String fixTitle(String title, LocalDate date) {
-			switch (title) {
-				case "KONTRAFUNK aktuell vom 27. September 2024 Mittagsausgabe":
-					title = title.replace(" Mittagsausgabe", "");
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 17. September 2024":
-					assert date.toString().equals("2024-09-07");
-					title = title.replace("17", "07");
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 21. Juli 2024":
-					assert date.toString().equals("2024-07-20");
-					title = title.replace("21", "20");
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 6. Juni 2024":
-					assert date.toString().equals("2024-07-06");
-					title = title.replace("Juni", "Juli");
-					break;
-				case "KONTRAFUNK aktuell vom 25.Juni 2024":
-				case "KONTRAFUNK aktuell vom 19.Juni 2024":
-					title = title.replace(".Juni", ". Juni");
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 14. Juni 2024":
-					assert date.toString().equals("2024-06-15");
-					title = title.replace("14", "15");
-					break;
-				case "KONTRAFUNK aktuell vom 11. Januar 2023":
-					if (date.getYear() == 2024) {
-						title = title.replace("2023", "2024");
-					}
-
-					break;
-				case "KONTRAFUNK aktuell vom 3. Oktober":
-				case "KONTRAFUNK: Wochenrückblick vom 30. September":
-				case "KONTRAFUNK aktuell vom 7. September":
-					assert date.getYear() == 2023;
-					title += " 2023";
-					break;
-				case "Wochenrückblick vom 16. Dezember 2023":
-				case "Wochenrückblick vom 19. August 2023":
-					title = "KONTRAFUNK: Der " + title;
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 29. Juli 2023":
-					if (date.toString().equals("2023-08-05")) {
-						title = title.replace("29. Juli", "5. August");
-					}
-
-					break;
-				case "KONTRAFUNK aktuell vom 3.Juli 2023":
-					title = title.replace("3.Juli", "3. Juli");
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 24. Juni 2023":
-					if (date.toString().equals("2023-07-01")) {
-						title = title.replace("24. Juni", "1. Juli");
-					}
-
-					break;
-				case "KONTRAFUNK: Wochenrückblick vom 10. Juni 2023":
-					if (date.toString().equals("2023-06-17")) {
-						title = title.replace("10", "17");
-					}
-
-					break;
-				case "KONTRAFUNK: Der Wochenrückblick vom 18. Mai 2023":
-					if (date.toString().equals("2023-03-18")) {
-						title = title.replace("Mai", "März");
-					}
-
-					break;
-				case "KONTRAFUNK aktuell vom 23. Juli 2023":
-					assert date.getYear() == 2022;
-					title = title.replace("2023", "2022");
-					break;
-			}
-
-			title = title
-					.replaceAll("\\s{2,}", " ")
-					.replace("Kontrafunk", "KONTRAFUNK")
-					.replace(" der ", " Der ")
-					.replace(" am ", " vom ");
-
-			if (date.getYear() == 2022) {
-				title = title
-						.replace("2022_2", "2022")
-						.replace(" aktuell: Der", ": Der")
-						.replace(": Das Morgenmagazin", "")
-						.replace("KONTRAFUNK vom", "KONTRAFUNK aktuell vom")
-						.replace(" - ", " vom ");
-
-				// aktuell <datum> -> aktuell vom <datum>
-				if (title.matches(".*aktuell \\d+.*")) {
-					String[] parts = title.split("aktuell");
-					title = parts[0] + "aktuell vom" + parts[1];
-				}
-
-				// .22 -> .2022
-				if (title.matches(".*vom (\\d|\\.)+\\.\\d\\d$")) {
-					String[] parts = title.split("\\.");
-					title = parts[0] + "." + parts[1] + ".20" + parts[2];
-				}
-			}
-
-			// 9.8.2024 -> 09.8.2024
-			if (title.matches(".*vom \\d\\..*")) {
-				title = title.replace("vom ", "vom 0");
-			}
-
-			// 09.8.2023 -> 09.08.2023
-			if (title.matches(".*vom \\d\\d\\.\\d\\..*")) {
-				String[] parts = title.split("\\.");
-				title = parts[0] + ".0" + parts[1] + "." + parts[2];
-			}
-
-			// 09.08.2023 -> 09. August 2023
-			Pattern pattern = Pattern.compile(".*vom \\d\\d\\.\\d\\d\\.\\d\\d\\d\\d.*");
-
-			if (pattern.matcher(title).matches()) {
-				String[] parts = title.split("\\.");
-				String month = parts[1];
-				String monthName = switch (month) {
-					case "01" -> "Januar";
-					case "02" -> "Februar";
-					case "03" -> "März";
-					case "04" -> "April";
-					case "05" -> "Mai";
-					case "06" -> "Juni";
-					case "07" -> "Juli";
-					case "08" -> "August";
-					case "09" -> "September";
-					case "10" -> "Oktober";
-					case "11" -> "November";
-					case "12" -> "Dezember";
-					default -> month;
-				};
-				title = parts[0] + ". " + monthName + " " + parts[2];
-			}
-
-			// 01. August.2023 -> 01. August 2023
-			if (title.matches(".*vom \\d\\d\\.\\D+\\.\\d\\d\\d\\d$")) {
-				String[] parts = title.split("\\.");
-				title = parts[0] + "." + parts[1] + " " + parts[2];
-			}
-
-			if (!title.matches(".*vom \\d\\d\\. \\D+ \\d\\d\\d\\d$")) {
-				throw new AssertionError("Title normalization failed: " + title);
-			}
-
-			return title;
-		}
-
 		private LocalDate getTitleDate(String normalizedTitle, LocalDate publicationDate) {
-			LocalDate titleDate = LocalDate.parse(normalizedTitle.substring(normalizedTitle.indexOf("vom") + 4), titleDateFormatter);
+			LocalDate titleDate = TitleNormalizer.getDate(normalizedTitle);
 
 			if (publicationDate.getMonthValue() != titleDate.getMonthValue()
 					|| publicationDate.getMonthValue() != titleDate.getMonthValue()
@@ -0,0 +1,167 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Fetches the Spreaker feed with conditional, gzip-encoded requests and keeps a compressed
+ * copy of the last response, so an unchanged feed only costs a single 304 response.
+ * It also remembers how far the feed has been walked, see {@link #getWalkedThrough()}.
+ *
+ * <p>The format of the state file is as follows:
+ * <pre>{@code
+ * file    = <header> <etag> <tab> <last-modified> <tab> <walked-through> <newline>
+ * header  = 'kfdl-feed' <tab> <major-version> <tab> <minor-version> <newline>
+ * }</pre>
+ * Missing values are empty. Version 1.0 files lack {@code <walked-through>}.
+ */
+public class SpreakerFeedSync {
+	private static final String V1_HEADER_PREFIX = "kfdl-feed\t1\t";
+	private static final String V1_1_HEADER = V1_HEADER_PREFIX + "1\n";
+	private final String feedUrl;
+	private final Path stateFilePath;
+	private final Path feedCopyPath;
+	@Nullable
+	private String etag;
+	@Nullable
+	private String lastModified;
+	@Nullable
+	private LocalDate walkedThrough;
+
+	public SpreakerFeedSync(String feedUrl, Path stateFile, Path feedCopy) {
+		this.feedUrl = feedUrl;
+		this.stateFilePath = stateFile;
+		this.feedCopyPath = feedCopy;
+		readStateFile();
+	}
+
+	private void readStateFile() {
+		if (!Files.exists(stateFilePath)) {
+			return;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(stateFilePath);
+
+			if (lines.size() != 2 || !(lines.get(0) + "\n").startsWith(V1_HEADER_PREFIX)) {
+				Kfdl.LOGGER.warn("Feed state file is invalid, ignoring it");
+				return;
+			}
+
+			String[] parts = lines.get(1).split("\t", -1);
+
+			if (parts.length != 2 && parts.length != 3) {
+				Kfdl.LOGGER.warn("Feed state line has invalid number of parts, ignoring it: {}", lines.get(1));
+				return;
+			}
+
+			// Without the copy, a 304 would leave nothing to read
+			if (Files.exists(feedCopyPath)) {
+				etag = parts[0].isEmpty() ? null : parts[0];
+				lastModified = parts[1].isEmpty() ? null : parts[1];
+			}
+
+			if (parts.length == 3 && !parts[2].isEmpty()) {
+				walkedThrough = LocalDate.parse(parts[2]);
+			}
+		} catch (IOException | RuntimeException e) {
+			Kfdl.LOGGER.error("Failed to read feed state file", e);
+		}
+	}
+
+	/**
+	 * Returns the uncompressed feed, downloading it only if it changed since the last call.
+	 * The caller is responsible for closing the stream.
+	 */
+	public InputStream open() throws IOException, InterruptedException {
+		HttpRequest.Builder request = Http.request(feedUrl)
+				.header("Accept-Encoding", "gzip")
+				.GET();
+
+		if (etag != null) {
+			request.header("If-None-Match", etag);
+		}
+
+		if (lastModified != null) {
+			request.header("If-Modified-Since", lastModified);
+		}
+
+		HttpResponse<InputStream> response = Http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+		try (InputStream body = response.body()) {
+			if (response.statusCode() == 304) {
+				Kfdl.LOGGER.info("Spreaker feed is unchanged since the last run");
+			} else if (response.statusCode() == 200) {
+				boolean gzipped = response.headers().firstValue("Content-Encoding")
+						.map(encoding -> encoding.equalsIgnoreCase("gzip"))
+						.orElse(false);
+				storeFeedCopy(body, gzipped);
+				etag = response.headers().firstValue("ETag").orElse(null);
+				lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+				saveStateFile();
+			} else {
+				throw new HttpStatusException(response.statusCode(), feedUrl);
+			}
+		}
+
+		return new GZIPInputStream(Files.newInputStream(feedCopyPath));
+	}
+
+	/**
+	 * Returns the date of the newest episode that, together with every older episode in the feed, has been
+	 * handed to the pipeline by some run, or {@code null} if the feed was never walked completely.
+	 * Walks may stop early at episodes up to this date without missing anything.
+	 */
+	@Nullable
+	public LocalDate getWalkedThrough() {
+		return walkedThrough;
+	}
+
+	public void setWalkedThrough(LocalDate walkedThrough) {
+		this.walkedThrough = walkedThrough;
+		saveStateFile();
+	}
+
+	private void storeFeedCopy(InputStream body, boolean gzipped) throws IOException {
+		Path tempFile = feedCopyPath.resolveSibling(feedCopyPath.getFileName() + ".tmp");
+
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			if (gzipped) {
+				body.transferTo(out);
+			} else {
+				try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+					body.transferTo(gzipOut);
+				}
+			}
+		}
+
+		Files.move(tempFile, feedCopyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void saveStateFile() {
+		String content = V1_1_HEADER
+				+ (etag == null ? "" : etag) + '\t'
+				+ (lastModified == null ? "" : lastModified) + '\t'
+				+ (walkedThrough == null ? "" : walkedThrough) + '\n';
+
+		try {
+			Path tempFile = stateFilePath.resolveSibling(stateFilePath.getFileName() + ".tmp");
+			Files.writeString(tempFile, content);
+			Files.move(tempFile, stateFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Kfdl.LOGGER.error("Failed to write feed state file", e);
+		}
+	}
+}
@@ -0,0 +1,624 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An episode page parsed in a single pass over the HTML source. Instead of a full DOM,
+ * only the subtrees of the elements with one of the requested IDs are kept, and reading
+ * stops as soon as all of them have been closed.
+ *
+ * <p>Supported XPath subset: {@code //*[@id="<id>"]} followed by child steps of the form
+ * {@code name}, {@code name[<n>]} or {@code name[last()]}.
+ */
+public final class StreamingEpisodePage implements EpisodePage {
+	private static final Pattern xPathRootPattern = Pattern.compile("^//\\*\\[@id=\"([^\"]+)\"\\]");
+	private static final Pattern xPathStepPattern = Pattern.compile("/([a-z0-9]+)(?:\\[(\\d+|last\\(\\))\\])?");
+	private static final Pattern whitespacePattern = Pattern.compile("[\\s\\u00A0]+");
+	private static final Map<String, XPath> parsedXPaths = new ConcurrentHashMap<>();
+	private static final Set<String> voidElements = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input",
+			"link", "meta", "param", "source", "track", "wbr");
+	private static final Set<String> rawTextElements = Set.of("script", "style", "textarea", "title");
+	private static final Set<String> blockElements = Set.of("address", "article", "aside", "blockquote", "div", "dl",
+			"fieldset", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "main",
+			"nav", "ol", "p", "pre", "section", "table", "tr", "ul");
+	private final Map<String, Node> sections;
+	private final Function<String, String> responseHeaders;
+
+	private StreamingEpisodePage(Map<String, Node> sections, Function<String, String> responseHeaders) {
+		this.sections = sections;
+		this.responseHeaders = responseHeaders;
+	}
+
+	/**
+	 * Parses the HTML read from {@code reader}, keeping the subtrees of the elements with the given IDs.
+	 */
+	public static StreamingEpisodePage parse(Reader reader, Set<String> sectionIds) throws IOException {
+		return parse(reader, sectionIds, name -> null);
+	}
+
+	/**
+	 * @param responseHeaders Looks up the headers of the response the HTML was read from.
+	 */
+	public static StreamingEpisodePage parse(Reader reader, Set<String> sectionIds, Function<String, String> responseHeaders) throws IOException {
+		TreeCollector collector = new TreeCollector(sectionIds);
+		new Tokenizer(reader, collector).run();
+		return new StreamingEpisodePage(collector.sections, responseHeaders);
+	}
+
+	@Override
+	@Nullable
+	public PageNode getFirstByXPath(String xPath) {
+		List<PageNode> nodes = getByXPath(xPath);
+		return nodes.isEmpty() ? null : nodes.get(0);
+	}
+
+	@Override
+	public List<PageNode> getByXPath(String xPath) {
+		XPath path = parsedXPaths.computeIfAbsent(xPath, XPath::parse);
+		Node root = sections.get(path.rootId);
+
+		if (root == null) {
+			return new ArrayList<>();
+		}
+
+		List<Node> current = List.of(root);
+
+		for (Step step : path.steps) {
+			List<Node> next = new ArrayList<>();
+
+			for (Node node : current) {
+				step.select(node, next);
+			}
+
+			current = next;
+		}
+
+		return new ArrayList<>(current);
+	}
+
+	@Override
+	@Nullable
+	public String getResponseHeader(String name) {
+		return responseHeaders.apply(name);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private record XPath(String rootId, List<Step> steps) {
+		static XPath parse(String xPath) {
+			Matcher rootMatcher = xPathRootPattern.matcher(xPath);
+
+			if (!rootMatcher.find()) {
+				throw new IllegalArgumentException("Unsupported XPath: " + xPath);
+			}
+
+			List<Step> steps = new ArrayList<>();
+			Matcher stepMatcher = xPathStepPattern.matcher(xPath);
+			int pos = rootMatcher.end();
+
+			while (pos < xPath.length()) {
+				if (!stepMatcher.find(pos) || stepMatcher.start() != pos) {
+					throw new IllegalArgumentException("Unsupported XPath: " + xPath);
+				}
+
+				String predicate = stepMatcher.group(2);
+				int index = predicate == null ? Step.ANY : predicate.equals("last()") ? Step.LAST : Integer.parseInt(predicate);
+				steps.add(new Step(stepMatcher.group(1), index));
+				pos = stepMatcher.end();
+			}
+
+			return new XPath(rootMatcher.group(1), steps);
+		}
+	}
+
+	private record Step(String name, int index) {
+		static final int ANY = 0;
+		static final int LAST = -1;
+
+		void select(Node parent, List<Node> out) {
+			Node last = null;
+			int position = 0;
+
+			for (Node child : parent.children) {
+				if (!child.name.equals(name)) {
+					continue;
+				}
+
+				position++;
+
+				if (index == ANY || index == position) {
+					out.add(child);
+				}
+
+				last = child;
+			}
+
+			if (index == LAST && last != null) {
+				out.add(last);
+			}
+		}
+	}
+
+	private static final class Node implements PageNode {
+		private final String name;
+		private final Map<String, String> attributes;
+		private final List<Node> children = new ArrayList<>();
+		private final Node parent;
+		private final int indexInParent;
+		private String text;
+
+		Node(String name, Map<String, String> attributes, @Nullable Node parent) {
+			this.name = name;
+			this.attributes = attributes;
+			this.parent = parent;
+			this.indexInParent = parent == null ? -1 : parent.children.size();
+
+			if (parent != null) {
+				parent.children.add(this);
+			}
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+
+		@Override
+		@Nullable
+		public String getAttribute(String attributeName) {
+			return attributes.get(attributeName);
+		}
+
+		@Override
+		public String asNormalizedText() {
+			StringBuilder raw = new StringBuilder();
+			appendText(raw);
+
+			StringBuilder ret = new StringBuilder(raw.length());
+
+			for (String line : raw.toString().split("\n")) {
+				String normalizedLine = whitespacePattern.matcher(line).replaceAll(" ").trim();
+
+				if (normalizedLine.isEmpty()) {
+					continue;
+				}
+
+				if (ret.length() > 0) {
+					ret.append('\n');
+				}
+
+				ret.append(normalizedLine);
+			}
+
+			return ret.toString();
+		}
+
+		private void appendText(StringBuilder out) {
+			if (text != null) {
+				out.append(text.replace('\n', ' '));
+				return;
+			}
+
+			boolean block = blockElements.contains(name);
+
+			if (block) {
+				out.append('\n');
+			}
+
+			if (name.equals("br")) {
+				out.append('\n');
+			}
+
+			for (Node child : children) {
+				child.appendText(out);
+			}
+
+			if (block) {
+				out.append('\n');
+			}
+		}
+
+		@Override
+		@Nullable
+		public PageNode getPreviousSibling() {
+			return parent == null || indexInParent == 0 ? null : parent.children.get(indexInParent - 1);
+		}
+
+		@Override
+		@Nullable
+		public PageNode getNextSibling() {
+			return parent == null || indexInParent == parent.children.size() - 1 ? null : parent.children.get(indexInParent + 1);
+		}
+
+		@Override
+		public List<PageNode> getChildNodes() {
+			return Collections.unmodifiableList(children);
+		}
+
+		@Override
+		public String toString() {
+			return text != null ? TEXT_NODE_NAME + ": " + text : "<" + name + ">";
+		}
+	}
+
+	/**
+	 * Builds the subtrees of the requested sections from the tokenizer's events.
+	 */
+	private static final class TreeCollector {
+		private final Set<String> sectionIds;
+		private final Map<String, Node> sections = new HashMap<>();
+		private Node current;
+
+		TreeCollector(Set<String> sectionIds) {
+			this.sectionIds = sectionIds;
+		}
+
+		boolean isCapturing() {
+			return current != null;
+		}
+
+		boolean isDone() {
+			return current == null && sections.size() == sectionIds.size();
+		}
+
+		void startTag(String name, Map<String, String> attributes) {
+			if (current == null) {
+				String id = attributes.get("id");
+
+				if (id == null || !sectionIds.contains(id) || sections.containsKey(id)) {
+					return;
+				}
+
+				current = new Node(name, new HashMap<>(attributes), null);
+				sections.put(id, current);
+			} else {
+				// A block element implicitly closes an open paragraph
+				if (current.name.equals("p") && blockElements.contains(name) && current.parent != null) {
+					current = current.parent;
+				}
+
+				current = new Node(name, attributes.isEmpty() ? Map.of() : new HashMap<>(attributes), current);
+			}
+
+			if (voidElements.contains(name)) {
+				endTag(name);
+			}
+		}
+
+		void endTag(String name) {
+			if (current == null) {
+				return;
+			}
+
+			Node node = current;
+
+			while (node != null && !node.name.equals(name)) {
+				node = node.parent;
+			}
+
+			if (node == null) {
+				return; // Stray end tag
+			}
+
+			current = node.parent;
+		}
+
+		void text(String text) {
+			if (current == null) {
+				return;
+			}
+
+			Node textNode = new Node(PageNode.TEXT_NODE_NAME, Map.of(), current);
+			textNode.text = text;
+		}
+	}
+
+	/**
+	 * A forgiving HTML tokenizer. Text is only materialized while inside a requested section.
+	 */
+	private static final class Tokenizer {
+		private static final Map<String, String> namedEntities = Map.ofEntries(
+				Map.entry("amp", "&"),
+				Map.entry("lt", "<"),
+				Map.entry("gt", ">"),
+				Map.entry("quot", "\""),
+				Map.entry("apos", "'"),
+				Map.entry("nbsp", "\u00A0"),
+				Map.entry("ndash", "–"),
+				Map.entry("mdash", "—"),
+				Map.entry("hellip", "…"),
+				Map.entry("bdquo", "„"),
+				Map.entry("ldquo", "“"),
+				Map.entry("rdquo", "”"),
+				Map.entry("sbquo", "‚"),
+				Map.entry("lsquo", "‘"),
+				Map.entry("rsquo", "’"),
+				Map.entry("auml", "ä"),
+				Map.entry("ouml", "ö"),
+				Map.entry("uuml", "ü"),
+				Map.entry("Auml", "Ä"),
+				Map.entry("Ouml", "Ö"),
+				Map.entry("Uuml", "Ü"),
+				Map.entry("szlig", "ß"),
+				Map.entry("euro", "€"),
+				Map.entry("shy", ""));
+		private final Reader reader;
+		private final TreeCollector collector;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder text = new StringBuilder();
+		private final StringBuilder scratch = new StringBuilder();
+		private final Map<String, String> attributes = new HashMap<>();
+		private int bufferPos;
+		private int bufferLength;
+
+		Tokenizer(Reader reader, TreeCollector collector) {
+			this.reader = reader;
+			this.collector = collector;
+		}
+
+		void run() throws IOException {
+			int c;
+
+			while (!collector.isDone() && (c = read()) != -1) {
+				if (c != '<') {
+					if (collector.isCapturing()) {
+						text.append((char) c);
+					}
+
+					continue;
+				}
+
+				flushText();
+				c = read();
+
+				if (c == '!') {
+					skipMarkupDeclaration();
+				} else if (c == '?') {
+					skipUntil(">");
+				} else if (c == '/') {
+					String name = readName(read());
+					skipUntil(">");
+
+					if (!name.isEmpty()) {
+						collector.endTag(name);
+					}
+				} else if (isNameStart(c)) {
+					readStartTag(c);
+				} else {
+					unread(c);
+
+					if (collector.isCapturing()) {
+						text.append('<');
+					}
+				}
+			}
+
+			flushText();
+		}
+
+		private void readStartTag(int first) throws IOException {
+			String name = readName(first);
+			attributes.clear();
+			int c = skipWhitespace(read());
+
+			while (c != -1 && c != '>') {
+				if (c == '/') {
+					c = skipWhitespace(read());
+					continue;
+				}
+
+				scratch.setLength(0);
+
+				while (c != -1 && c != '=' && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+					scratch.append(Character.toLowerCase((char) c));
+					c = read();
+				}
+
+				String attributeName = scratch.toString();
+				String value = "";
+				c = skipWhitespace(c);
+
+				if (c == '=') {
+					c = skipWhitespace(read());
+					scratch.setLength(0);
+
+					if (c == '"' || c == '\'') {
+						int quote = c;
+
+						while ((c = read()) != -1 && c != quote) {
+							scratch.append((char) c);
+						}
+
+						c = read();
+					} else {
+						while (c != -1 && c != '>' && !Character.isWhitespace(c)) {
+							scratch.append((char) c);
+							c = read();
+						}
+					}
+
+					value = decodeEntities(scratch);
+				}
+
+				if (!attributeName.isEmpty()) {
+					attributes.putIfAbsent(attributeName, value);
+				}
+
+				c = skipWhitespace(c);
+			}
+
+			collector.startTag(name, attributes);
+
+			if (rawTextElements.contains(name)) {
+				skipRawText(name);
+			}
+		}
+
+		private void skipMarkupDeclaration() throws IOException {
+			int c = read();
+
+			if (c == '-') {
+				read();
+				skipUntil("-->");
+			} else if (c != '>') {
+				skipUntil(">");
+			}
+		}
+
+		private void skipRawText(String name) throws IOException {
+			String endTag = "</" + name;
+
+			while (true) {
+				skipUntil(endTag);
+				int c = read();
+
+				if (c == -1 || c == '>' || Character.isWhitespace(c)) {
+					if (c != '>' && c != -1) {
+						skipUntil(">");
+					}
+
+					collector.endTag(name);
+					return;
+				}
+			}
+		}
+
+		private void skipUntil(String terminator) throws IOException {
+			int matched = 0;
+			int c;
+
+			while (matched < terminator.length() && (c = read()) != -1) {
+				if (Character.toLowerCase(c) == terminator.charAt(matched)) {
+					matched++;
+				} else {
+					matched = Character.toLowerCase(c) == terminator.charAt(0) ? 1 : 0;
+				}
+			}
+		}
+
+		private String readName(int first) throws IOException {
+			scratch.setLength(0);
+			int c = first;
+
+			while (c != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == ':')) {
+				scratch.append(Character.toLowerCase((char) c));
+				c = read();
+			}
+
+			unread(c);
+			return scratch.toString();
+		}
+
+		private int skipWhitespace(int c) throws IOException {
+			while (c != -1 && Character.isWhitespace(c)) {
+				c = read();
+			}
+
+			return c;
+		}
+
+		private void flushText() {
+			if (text.length() == 0) {
+				return;
+			}
+
+			collector.text(decodeEntities(text));
+			text.setLength(0);
+		}
+
+		private static boolean isNameStart(int c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+
+		private static String decodeEntities(CharSequence raw) {
+			int ampersand = raw.toString().indexOf('&');
+
+			if (ampersand < 0) {
+				return raw.toString();
+			}
+
+			StringBuilder ret = new StringBuilder(raw.length());
+			ret.append(raw, 0, ampersand);
+
+			for (int i = ampersand; i < raw.length(); i++) {
+				char c = raw.charAt(i);
+				int semicolon;
+
+				if (c != '&' || (semicolon = indexOf(raw, ';', i + 1, i + 12)) < 0) {
+					ret.append(c);
+					continue;
+				}
+
+				String entity = raw.subSequence(i + 1, semicolon).toString();
+				String replacement = null;
+
+				try {
+					if (entity.startsWith("#x") || entity.startsWith("#X")) {
+						replacement = Character.toString(Integer.parseInt(entity.substring(2), 16));
+					} else if (entity.startsWith("#")) {
+						replacement = Character.toString(Integer.parseInt(entity.substring(1)));
+					} else {
+						replacement = namedEntities.get(entity);
+					}
+				} catch (IllegalArgumentException e) {
+					// Not a valid character reference, keep it verbatim
+				}
+
+				if (replacement == null) {
+					ret.append(c);
+					continue;
+				}
+
+				ret.append(replacement);
+				i = semicolon;
+			}
+
+			return ret.toString();
+		}
+
+		private static int indexOf(CharSequence sequence, char c, int from, int to) {
+			for (int i = from; i < Math.min(to, sequence.length()); i++) {
+				if (sequence.charAt(i) == c) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		private int read() throws IOException {
+			if (bufferPos == bufferLength) {
+				bufferLength = reader.read(buffer, 0, buffer.length);
+				bufferPos = 0;
+
+				if (bufferLength <= 0) {
+					bufferLength = 0;
+					return -1;
+				}
+			}
+
+			return buffer[bufferPos++];
+		}
+
+		private void unread(int c) {
+			if (c != -1) {
+				bufferPos--;
+			}
+		}
+	}
+}
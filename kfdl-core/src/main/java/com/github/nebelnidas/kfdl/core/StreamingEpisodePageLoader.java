@@ -0,0 +1,47 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Fetches pages with kfdl's shared HTTP client and extracts the requested sections via {@link StreamingEpisodePage}.
+ */
+public class StreamingEpisodePageLoader implements EpisodePageLoader {
+	private final Set<String> sectionIds;
+
+	/**
+	 * @param sectionIds IDs of the elements whose subtrees the XPath queries are going to need.
+	 */
+	public StreamingEpisodePageLoader(Set<String> sectionIds) {
+		this.sectionIds = sectionIds;
+	}
+
+	@Override
+	public EpisodePage load(String url) throws IOException {
+		HttpRequest request = Http.request(url)
+				.GET()
+				.build();
+		HttpResponse<InputStream> response;
+
+		try {
+			response = Http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching " + url, e);
+		}
+
+		try (Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+			if (response.statusCode() != 200) {
+				throw new HttpStatusException(response.statusCode(), url);
+			}
+
+			return StreamingEpisodePage.parse(reader, sectionIds, name -> response.headers().firstValue(name).orElse(null));
+		}
+	}
+}
@@ -1,10 +1,7 @@
 package com.github.nebelnidas.kfdl.core;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -13,17 +10,25 @@ import lombok.Value;
 @Value
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Tag {
-	private static final Map<String, Tag> tagsById = new HashMap<>();
+	private static final InternRegistry<Tag> registry = new InternRegistry<>();
+	/**
+	 * Dense number assigned in the order tags are first seen in this run. Cache files refer to tags by the
+	 * indexes of their {@link CacheFileFormat.Dictionary} instead, which stay the same across runs.
+	 */
+	private final int index;
 	private final String id;
 	private final String name;
 
 	public static Tag getOrCreate(String name) {
 		String trimmedName = name.trim();
 		String id = trimmedName.toLowerCase(Locale.ROOT);
-		return tagsById.computeIfAbsent(id, key -> new Tag(id, trimmedName));
+		return registry.intern(id, index -> new Tag(index, id, trimmedName));
 	}
 
-	public static Collection<Tag> values() {
-		return Collections.unmodifiableCollection(tagsById.values());
+	/**
+	 * Returns all tags ordered by index.
+	 */
+	public static List<Tag> values() {
+		return registry.values();
 	}
 }
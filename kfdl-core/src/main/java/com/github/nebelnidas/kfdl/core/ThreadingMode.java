@@ -0,0 +1,80 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Which kind of threads kfdl's blocking I/O runs on. Executors created by either mode don't
+ * limit how many tasks run at once; callers bound their concurrency themselves.
+ */
+public enum ThreadingMode {
+	/**
+	 * Virtual threads if the JVM supports them (Java 21+), platform threads otherwise.
+	 */
+	AUTO,
+	PLATFORM,
+	/**
+	 * Virtual threads, falling back to platform threads with a warning if the JVM doesn't support them.
+	 */
+	VIRTUAL;
+
+	public boolean usesVirtualThreads() {
+		return this != PLATFORM && VirtualThreads.supported;
+	}
+
+	/**
+	 * Creates an executor that starts a new thread (or reuses an idle platform thread) for each task.
+	 * Threads are named {@code kfdl-<name>-<n>}.
+	 */
+	public ExecutorService createExecutor(String name) {
+		if (usesVirtualThreads()) {
+			return VirtualThreads.newExecutor(name);
+		}
+
+		if (this == VIRTUAL) {
+			Kfdl.LOGGER.warn("Virtual threads aren't supported by this JVM, using platform threads for '{}'", name);
+		}
+
+		return Executors.newCachedThreadPool(new NamedThreadFactory(name));
+	}
+
+	/**
+	 * Looks up the Java 21 virtual thread API reflectively, since kfdl still targets Java 17.
+	 */
+	private static final class VirtualThreads {
+		@Nullable
+		private static final Method ofVirtual = getMethod(Thread.class, "ofVirtual");
+		@Nullable
+		private static final Method newThreadPerTaskExecutor = getMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+		// Resolved on the public Thread.Builder.OfVirtual interface, the implementing class isn't accessible
+		@Nullable
+		private static final Method builderName = ofVirtual == null ? null : getMethod(ofVirtual.getReturnType(), "name", String.class, long.class);
+		@Nullable
+		private static final Method builderFactory = ofVirtual == null ? null : getMethod(ofVirtual.getReturnType(), "factory");
+		// Java 19 and 20 only have them as a preview feature
+		private static final boolean supported = Runtime.version().feature() >= 21
+				&& newThreadPerTaskExecutor != null && builderName != null && builderFactory != null;
+
+		@Nullable
+		private static Method getMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
+			try {
+				return owner.getMethod(name, parameterTypes);
+			} catch (NoSuchMethodException e) {
+				return null;
+			}
+		}
+
+		static ExecutorService newExecutor(String name) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null), "kfdl-" + name + "-", 1L);
+				return (ExecutorService) newThreadPerTaskExecutor.invoke(null, builderFactory.invoke(builder));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Failed to create virtual thread executor", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Brings the many ways Spreaker episode titles have been spelled over time into the form
+ * {@code <show> vom <dd>. <month> <yyyy>}, and reads the date back from it. Titles that were
+ * simply wrong are corrected from a table first; all patterns are compiled once.
+ */
+public final class TitleNormalizer {
+	private static final DateTimeFormatter titleDateFormatter = DateTimeFormatter.ofPattern("dd. MMMM yyyy", Locale.GERMAN);
+	private static final List<String> monthNames = List.of("Januar", "Februar", "März", "April", "Mai", "Juni",
+			"Juli", "August", "September", "Oktober", "November", "Dezember");
+	private static final Pattern aktuellWithoutVomPattern = Pattern.compile(".*aktuell \\d+.*");
+	private static final Pattern twoDigitYearPattern = Pattern.compile(".*vom (\\d|\\.)+\\.\\d\\d$");
+	private static final Pattern singleDigitDayPattern = Pattern.compile(".*vom \\d\\..*");
+	private static final Pattern singleDigitMonthPattern = Pattern.compile(".*vom \\d\\d\\.\\d\\..*");
+	private static final Pattern numericDatePattern = Pattern.compile(".*vom \\d\\d\\.\\d\\d\\.\\d\\d\\d\\d.*");
+	private static final Pattern dotBeforeYearPattern = Pattern.compile(".*vom \\d\\d\\.\\D+\\.\\d\\d\\d\\d$");
+	private static final Pattern normalizedPattern = Pattern.compile(".*vom \\d\\d\\. \\D+ \\d\\d\\d\\d$");
+	private static final Map<String, TitleFix> titleFixes = Map.ofEntries(
+			Map.entry("KONTRAFUNK aktuell vom 27. September 2024 Mittagsausgabe",
+					new TitleFix("KONTRAFUNK aktuell vom 27. September 2024", null, null)),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 17. September 2024",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 07. September 2024", null, "2024-09-07")),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 21. Juli 2024",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 20. Juli 2024", null, "2024-07-20")),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 6. Juni 2024",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 6. Juli 2024", null, "2024-07-06")),
+			Map.entry("KONTRAFUNK aktuell vom 25.Juni 2024",
+					new TitleFix("KONTRAFUNK aktuell vom 25. Juni 2024", null, null)),
+			Map.entry("KONTRAFUNK aktuell vom 19.Juni 2024",
+					new TitleFix("KONTRAFUNK aktuell vom 19. Juni 2024", null, null)),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 14. Juni 2024",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 15. Juni 2024", null, "2024-06-15")),
+			Map.entry("KONTRAFUNK aktuell vom 11. Januar 2023",
+					new TitleFix("KONTRAFUNK aktuell vom 11. Januar 2024", "2024", null)),
+			Map.entry("KONTRAFUNK aktuell vom 3. Oktober",
+					new TitleFix("KONTRAFUNK aktuell vom 3. Oktober 2023", null, "2023")),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 30. September",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 30. September 2023", null, "2023")),
+			Map.entry("KONTRAFUNK aktuell vom 7. September",
+					new TitleFix("KONTRAFUNK aktuell vom 7. September 2023", null, "2023")),
+			Map.entry("Wochenrückblick vom 16. Dezember 2023",
+					new TitleFix("KONTRAFUNK: Der Wochenrückblick vom 16. Dezember 2023", null, null)),
+			Map.entry("Wochenrückblick vom 19. August 2023",
+					new TitleFix("KONTRAFUNK: Der Wochenrückblick vom 19. August 2023", null, null)),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 29. Juli 2023",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 5. August 2023", "2023-08-05", null)),
+			Map.entry("KONTRAFUNK aktuell vom 3.Juli 2023",
+					new TitleFix("KONTRAFUNK aktuell vom 3. Juli 2023", null, null)),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 24. Juni 2023",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 1. Juli 2023", "2023-07-01", null)),
+			Map.entry("KONTRAFUNK: Wochenrückblick vom 10. Juni 2023",
+					new TitleFix("KONTRAFUNK: Wochenrückblick vom 17. Juni 2023", "2023-06-17", null)),
+			Map.entry("KONTRAFUNK: Der Wochenrückblick vom 18. Mai 2023",
+					new TitleFix("KONTRAFUNK: Der Wochenrückblick vom 18. März 2023", "2023-03-18", null)),
+			Map.entry("KONTRAFUNK aktuell vom 23. Juli 2023",
+					new TitleFix("KONTRAFUNK aktuell vom 23. Juli 2022", null, "2022")));
+
+	private TitleNormalizer() {
+	}
+
+	/**
+	 * @param date The episode's publication date, which some corrections depend on.
+	 * @throws AssertionError If the title can't be brought into the normalized form.
+	 */
+	public static String normalize(String title, LocalDate date) {
+		TitleFix fix = titleFixes.get(title);
+
+		if (fix != null) {
+			assert fix.assumedDate() == null || date.toString().startsWith(fix.assumedDate());
+
+			if (fix.requiredDate() == null || date.toString().startsWith(fix.requiredDate())) {
+				title = fix.fixedTitle();
+			}
+		}
+
+		title = collapseWhitespace(title)
+				.replace("Kontrafunk", "KONTRAFUNK")
+				.replace(" der ", " Der ")
+				.replace(" am ", " vom ");
+
+		if (date.getYear() == 2022) {
+			title = title
+					.replace("2022_2", "2022")
+					.replace(" aktuell: Der", ": Der")
+					.replace(": Das Morgenmagazin", "")
+					.replace("KONTRAFUNK vom", "KONTRAFUNK aktuell vom")
+					.replace(" - ", " vom ");
+
+			// aktuell <datum> -> aktuell vom <datum>
+			if (aktuellWithoutVomPattern.matcher(title).matches()) {
+				String[] parts = title.split("aktuell");
+				title = parts[0] + "aktuell vom" + parts[1];
+			}
+
+			// .22 -> .2022
+			if (twoDigitYearPattern.matcher(title).matches()) {
+				String[] parts = title.split("\\.");
+				title = parts[0] + "." + parts[1] + ".20" + parts[2];
+			}
+		}
+
+		// 9.8.2024 -> 09.8.2024
+		if (singleDigitDayPattern.matcher(title).matches()) {
+			title = title.replace("vom ", "vom 0");
+		}
+
+		// 09.8.2023 -> 09.08.2023
+		if (singleDigitMonthPattern.matcher(title).matches()) {
+			String[] parts = title.split("\\.");
+			title = parts[0] + ".0" + parts[1] + "." + parts[2];
+		}
+
+		// 09.08.2023 -> 09. August 2023
+		if (numericDatePattern.matcher(title).matches()) {
+			String[] parts = title.split("\\.");
+			String month = parts[1];
+			int monthValue = month.length() == 2 ? parseDigits(month, 0, 2) : -1;
+			String monthName = monthValue >= 1 && monthValue <= 12 ? monthNames.get(monthValue - 1) : month;
+			title = parts[0] + ". " + monthName + " " + parts[2];
+		}
+
+		// 01. August.2023 -> 01. August 2023
+		if (dotBeforeYearPattern.matcher(title).matches()) {
+			String[] parts = title.split("\\.");
+			title = parts[0] + "." + parts[1] + " " + parts[2];
+		}
+
+		if (!normalizedPattern.matcher(title).matches()) {
+			throw new AssertionError("Title normalization failed: " + title);
+		}
+
+		return title;
+	}
+
+	/**
+	 * Replaces each run of two or more whitespace characters with a single space, like
+	 * {@code replaceAll("\\s{2,}", " ")}, but without a regex.
+	 */
+	private static String collapseWhitespace(String title) {
+		StringBuilder builder = null;
+		int length = title.length();
+
+		for (int i = 0; i < length; i++) {
+			int runEnd = i;
+
+			while (runEnd < length && isWhitespace(title.charAt(runEnd))) {
+				runEnd++;
+			}
+
+			if (runEnd - i >= 2) {
+				if (builder == null) {
+					builder = new StringBuilder(length).append(title, 0, i);
+				}
+
+				builder.append(' ');
+				i = runEnd - 1;
+			} else if (builder != null) {
+				builder.append(title.charAt(i));
+			}
+		}
+
+		return builder == null ? title : builder.toString();
+	}
+
+	/**
+	 * Matches exactly what {@code \s} matches in a regex.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Reads the date following the first {@code vom} of a normalized title.
+	 */
+	public static LocalDate getDate(String normalizedTitle) {
+		String text = normalizedTitle.substring(normalizedTitle.indexOf("vom") + 4);
+		int length = text.length();
+
+		// dd. <month> yyyy, which is what normalization produces; anything else is left to the formatter
+		if (length > 9 && text.charAt(2) == '.' && text.charAt(3) == ' ' && text.charAt(length - 5) == ' ') {
+			int day = parseDigits(text, 0, 2);
+			int month = monthNames.indexOf(text.substring(4, length - 5)) + 1;
+			int year = parseDigits(text, length - 4, length);
+
+			if (day >= 1 && day <= 28 && month >= 1 && year >= 1) {
+				return LocalDate.of(year, month, day);
+			}
+		}
+
+		return LocalDate.parse(text, titleDateFormatter);
+	}
+
+	/**
+	 * Parses the ASCII digits between {@code start} and {@code end}, or returns {@code -1} if there are others.
+	 */
+	private static int parseDigits(String text, int start, int end) {
+		int value = 0;
+
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+
+			value = value * 10 + (c - '0');
+		}
+
+		return value;
+	}
+
+	/**
+	 * A correction for a title that was wrong in the feed.
+	 *
+	 * @param requiredDate The prefix the publication date has to start with for the fix to apply, or {@code null} if it always applies.
+	 * @param assumedDate The prefix the publication date is expected to start with, checked only if assertions are enabled.
+	 */
+	private record TitleFix(String fixedTitle, @Nullable String requiredDate, @Nullable String assumedDate) { }
+}
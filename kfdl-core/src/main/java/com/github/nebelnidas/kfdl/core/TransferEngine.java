@@ -0,0 +1,151 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copies response bodies into files through a bounded pool of direct buffers, which all transfers
+ * share: the buffers are allocated on demand, reused afterwards, and never take up more than the
+ * memory budget together. A transfer holds its buffer until it's done, so the pool always has room
+ * for as many buffers as transfers may run at once, even if that exceeds the budget; otherwise the
+ * budget would silently cap the number of connections.
+ * Direct buffers let {@link FileChannel} write without copying into a temporary direct buffer first,
+ * which the JDK would otherwise cache for every thread that ever wrote to a file.
+ */
+public final class TransferEngine {
+	private final int bufferSize;
+	private final int maxBuffers;
+	private final Lock lock = new ReentrantLock();
+	private final Condition returned = lock.newCondition();
+	private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+	private int allocatedBuffers;
+
+	/**
+	 * @param bufferSize The size of each buffer, and thereby of the chunks that are written at once.
+	 * @param memoryBudget How many bytes all buffers may take up together.
+	 * @param maxConcurrentTransfers How many transfers may run at once, each of which gets a buffer regardless of the budget.
+	 */
+	public TransferEngine(int bufferSize, long memoryBudget, int maxConcurrentTransfers) {
+		this.bufferSize = Math.max(bufferSize, 4 * 1024);
+		this.maxBuffers = (int) Math.max(Math.min(memoryBudget / this.bufferSize, Integer.MAX_VALUE), Math.max(maxConcurrentTransfers, 1));
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Extends the file to the given length ahead of a transfer, so its size doesn't have to grow with every write.
+	 * Java has no portable way to reserve the blocks themselves, so on most file systems this leaves a sparse file.
+	 */
+	public static void preallocate(FileChannel out, long length) throws IOException {
+		if (out.size() < length) {
+			out.write(ByteBuffer.wrap(new byte[1]), length - 1);
+		}
+	}
+
+	/**
+	 * Reads from {@code in} until it ends or {@code maxBytes} have been read, and writes the data to
+	 * {@code out} starting at {@code position}. Reads are collected until a buffer is full before
+	 * they're written and passed on to the listener.
+	 *
+	 * @return How many bytes were transferred.
+	 */
+	public long transfer(ReadableByteChannel in, FileChannel out, long position, long maxBytes, TransferListener listener)
+			throws IOException, InterruptedException {
+		ByteBuffer buffer = acquire();
+
+		try {
+			ByteBuffer view = buffer.asReadOnlyBuffer();
+			long transferred = 0;
+			boolean ended = false;
+
+			while (!ended && transferred < maxBytes) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), maxBytes - transferred));
+
+				while (buffer.hasRemaining()) {
+					if (in.read(buffer) < 0) {
+						ended = true;
+						break;
+					}
+				}
+
+				buffer.flip();
+
+				if (!buffer.hasRemaining()) {
+					break;
+				}
+
+				long chunkPosition = position + transferred;
+				view.limit(buffer.limit()).position(0);
+
+				while (buffer.hasRemaining()) {
+					transferred += out.write(buffer, position + transferred);
+				}
+
+				if (!listener.onChunk(view, chunkPosition)) {
+					break;
+				}
+			}
+
+			return transferred;
+		} finally {
+			release(buffer);
+		}
+	}
+
+	private ByteBuffer acquire() throws InterruptedException {
+		lock.lock();
+
+		try {
+			while (freeBuffers.isEmpty() && allocatedBuffers >= maxBuffers) {
+				returned.await();
+			}
+
+			ByteBuffer buffer = freeBuffers.pollFirst();
+
+			if (buffer != null) {
+				return buffer;
+			}
+
+			allocatedBuffers++;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			return ByteBuffer.allocateDirect(bufferSize);
+		} catch (OutOfMemoryError e) {
+			lock.lock();
+
+			try {
+				allocatedBuffers--;
+				returned.signal();
+			} finally {
+				lock.unlock();
+			}
+
+			throw e;
+		}
+	}
+
+	private void release(ByteBuffer buffer) {
+		lock.lock();
+
+		try {
+			buffer.clear();
+			freeBuffers.addFirst(buffer); // Recently used buffers are more likely to still be cached
+			returned.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
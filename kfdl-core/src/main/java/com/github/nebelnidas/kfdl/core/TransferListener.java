@@ -0,0 +1,18 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Gets handed every chunk a {@link TransferEngine} writes, to track progress or verify the data,
+ * and may slow the transfer down by blocking.
+ */
+@FunctionalInterface
+public interface TransferListener {
+	/**
+	 * @param data The chunk, as a read-only view that is only valid during the call.
+	 * @param position The file position the chunk was written at.
+	 * @return Whether the transfer should go on.
+	 */
+	boolean onChunk(ByteBuffer data, long position) throws IOException, InterruptedException;
+}
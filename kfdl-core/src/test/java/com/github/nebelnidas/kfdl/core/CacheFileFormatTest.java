@@ -0,0 +1,66 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.nebelnidas.kfdl.core.CacheFileFormat.Dictionary;
+
+class CacheFileFormatTest {
+	private static final String header = "kfdl-names\t1\t0\n";
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void keepsIndexesAcrossRuns() throws IOException {
+		Path file = dir.resolve(Dictionary.fileName);
+		Person first = Person.getOrCreate("Dictionary Test First");
+		Person second = Person.getOrCreate("Dictionary Test Second");
+		Tag tag = Tag.getOrCreate("Dictionary Test Tag");
+
+		Dictionary dictionary = new Dictionary(file);
+		Assertions.assertEquals("0|1", dictionary.joinPersons(List.of(second, first)));
+		Assertions.assertEquals(0, dictionary.indexOf(tag));
+		dictionary.save();
+		String firstRun = Files.readString(file);
+
+		// Interned in a different order, but the file decides
+		Person third = Person.getOrCreate("Dictionary Test Third");
+		dictionary = new Dictionary(file);
+		Assertions.assertEquals(2, dictionary.indexOf(third));
+		Assertions.assertEquals(0, dictionary.indexOf(second));
+		Assertions.assertEquals(first, dictionary.getPerson("1"));
+		Assertions.assertEquals(List.of(tag), dictionary.getTags("0"));
+		dictionary.save();
+
+		String secondRun = Files.readString(file);
+		Assertions.assertTrue(secondRun.startsWith(firstRun), secondRun);
+		Assertions.assertEquals("P\t2\tDictionary Test Third\n", secondRun.substring(firstRun.length()));
+	}
+
+	@Test
+	void rewritesAFileCutShort() throws IOException {
+		Path file = dir.resolve(Dictionary.fileName);
+		Files.writeString(file, header + "P\t0\tDictionary Test First\nP\t1\tDictio");
+
+		Dictionary dictionary = new Dictionary(file);
+		Assertions.assertEquals(1, dictionary.indexOf(Person.getOrCreate("Dictionary Test Second")));
+		dictionary.save();
+
+		Assertions.assertEquals(header + "P\t0\tDictionary Test First\nP\t1\tDictionary Test Second\n", Files.readString(file));
+	}
+
+	@Test
+	void rejectsPeopleInCacheFilesOfTheSharedDictionary() {
+		Dictionary dictionary = new Dictionary(dir.resolve(Dictionary.fileName));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> dictionary.readLine(new String[] {"P", "0", "Someone"}));
+		Assertions.assertFalse(dictionary.readLine(new String[] {"E", "2024-05-01"}));
+	}
+}
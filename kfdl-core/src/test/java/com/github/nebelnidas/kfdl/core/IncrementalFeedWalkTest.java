@@ -0,0 +1,137 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.nebelnidas.kfdl.core.SpreakerEpisodeExtractor.SpreakerEpisodeData;
+
+class IncrementalFeedWalkTest {
+	private static final LocalDate newest = LocalDate.of(2024, 5, 20);
+	private static final int feedLength = 20;
+	private static final int threshold = 3;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void stopsEarlyBelowTheWatermark() throws InterruptedException {
+		Set<LocalDate> downloaded = allDates();
+		List<LocalDate> pending = new ArrayList<>();
+		IncrementalFeedWalk walk = new IncrementalFeedWalk(newest, null, threshold);
+		walk.walk(feed().iterator(), downloaded, entry -> { }, entry -> pending.add(entry.date()));
+
+		Assertions.assertTrue(pending.isEmpty());
+		Assertions.assertEquals(newest, walk.getNextWalkedThrough(0));
+	}
+
+	@Test
+	void walksOnUntilTheOldestPendingEpisode() throws InterruptedException {
+		Set<LocalDate> downloaded = allDates();
+		LocalDate oldestPending = newest.minusDays(10);
+		downloaded.remove(oldestPending);
+		List<LocalDate> pending = new ArrayList<>();
+		IncrementalFeedWalk walk = new IncrementalFeedWalk(newest, oldestPending, threshold);
+		walk.walk(feed().iterator(), downloaded, entry -> { }, entry -> pending.add(entry.date()));
+
+		Assertions.assertEquals(List.of(oldestPending), pending);
+	}
+
+	@Test
+	void keepsTheWatermarkIfAWalkIsCutShort() {
+		IncrementalFeedWalk walk = new IncrementalFeedWalk(newest.minusDays(5), null, threshold);
+
+		Assertions.assertNull(walk.getNextWalkedThrough(0));
+	}
+
+	@Test
+	void offersEpisodesAgainWhoseScrapeFailed() throws InterruptedException {
+		LocalDate previousWatermark = newest.minusDays(6);
+		LocalDate failing = newest.minusDays(3);
+		SpreakerFeedSync feedSync = new SpreakerFeedSync("http://localhost/feed", dir.resolve("kfdl-feed.txt"), dir.resolve("kfdl-feed.xml.gz"));
+		feedSync.setWalkedThrough(previousWatermark);
+
+		// Everything up to the watermark is downloaded, the newer episodes are new
+		Set<LocalDate> downloaded = ConcurrentHashMap.newKeySet();
+
+		for (int i = 6; i < feedLength; i++) {
+			downloaded.add(newest.minusDays(i));
+		}
+
+		Set<LocalDate> offered = run(feedSync, downloaded, failing);
+		Assertions.assertTrue(offered.contains(failing));
+		Assertions.assertFalse(downloaded.contains(failing));
+		Assertions.assertEquals(previousWatermark, feedSync.getWalkedThrough());
+
+		// The next run has to reach the episode again instead of stopping above the watermark
+		SpreakerFeedSync nextFeedSync = new SpreakerFeedSync("http://localhost/feed", dir.resolve("kfdl-feed.txt"), dir.resolve("kfdl-feed.xml.gz"));
+		offered = run(nextFeedSync, downloaded, null);
+		Assertions.assertEquals(Set.of(failing), offered);
+		Assertions.assertTrue(downloaded.contains(failing));
+		Assertions.assertEquals(newest, nextFeedSync.getWalkedThrough());
+	}
+
+	/**
+	 * Walks the feed like {@link Kfdl} does, with a scrape stage that fails for {@code failing}
+	 * and downloads everything else right away.
+	 */
+	private static Set<LocalDate> run(SpreakerFeedSync feedSync, Set<LocalDate> downloaded, @Nullable LocalDate failing) throws InterruptedException {
+		Set<LocalDate> offered = ConcurrentHashMap.newKeySet();
+		PipelineStage<SpreakerEpisodeData> scrapeStage = new PipelineStage<>("scrape", 2, 4, ThreadingMode.PLATFORM, entry -> {
+			offered.add(entry.date());
+
+			if (entry.date().equals(failing)) {
+				throw new IllegalStateException("Page layout changed");
+			}
+
+			downloaded.add(entry.date());
+		});
+		scrapeStage.start();
+
+		IncrementalFeedWalk walk = new IncrementalFeedWalk(feedSync.getWalkedThrough(), null, threshold);
+
+		try {
+			walk.walk(feed().iterator(), Set.copyOf(downloaded), entry -> { }, scrapeStage::put);
+		} finally {
+			scrapeStage.finish();
+			LocalDate nextWalkedThrough = walk.getNextWalkedThrough(scrapeStage.getFailedItems());
+
+			if (nextWalkedThrough != null) {
+				feedSync.setWalkedThrough(nextWalkedThrough);
+			}
+		}
+
+		return offered;
+	}
+
+	private static List<SpreakerEpisodeData> feed() {
+		List<SpreakerEpisodeData> feed = new ArrayList<>();
+
+		for (int i = 0; i < feedLength; i++) {
+			LocalDate date = newest.minusDays(i);
+			feed.add(new SpreakerEpisodeData("KONTRAFUNK aktuell vom " + date, null, null, date, date,
+					"https://example.com/" + date + ".mp3", "audio/mpeg", -1, -1, EpisodeType.AKTUELL));
+		}
+
+		return feed;
+	}
+
+	private static Set<LocalDate> allDates() {
+		Set<LocalDate> dates = new HashSet<>();
+
+		for (int i = 0; i < feedLength; i++) {
+			dates.add(newest.minusDays(i));
+		}
+
+		return dates;
+	}
+}
@@ -0,0 +1,39 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PipelineStageTest {
+	@Test
+	void processesAllItemsBeforeFinishing() throws InterruptedException {
+		List<Integer> processed = new CopyOnWriteArrayList<>();
+		PipelineStage<Integer> stage = new PipelineStage<>("test", 3, 2, ThreadingMode.PLATFORM, processed::add);
+		stage.start();
+
+		for (int i = 0; i < 20; i++) {
+			stage.put(i);
+		}
+
+		stage.finish();
+		Assertions.assertEquals(20, processed.size());
+	}
+
+	@Test
+	void finishesAfterWorkersExitedEarly() throws InterruptedException {
+		PipelineStage<Integer> stage = new PipelineStage<>("test", 2, 4, ThreadingMode.PLATFORM, item -> {
+			throw new InterruptedException();
+		});
+		stage.start();
+
+		// Both workers exit on the first two items, the rest stays queued
+		for (int i = 0; i < 6; i++) {
+			stage.put(i);
+		}
+
+		Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), stage::finish);
+	}
+}
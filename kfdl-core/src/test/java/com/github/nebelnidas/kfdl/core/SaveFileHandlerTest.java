@@ -0,0 +1,161 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SaveFileHandlerTest {
+	private static final String v1Header = "kfdl-save\t1\t1\n";
+	private static final String v2Header = "kfdl-save\t2\t0\n";
+	private static final String v2_1Header = "kfdl-save\t2\t1\n";
+	private static final LocalDate firstDate = LocalDate.of(2024, 5, 1);
+	private static final LocalDate secondDate = LocalDate.of(2024, 5, 2);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void lastLineWins() throws IOException {
+		Path saveFile = write(v2_1Header
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n"
+				+ "2024-05-02\thttps://example.com/2.mp3\tQUEUED\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tFAILED\t2\t2024-05-03T10:00:00Z\n"
+				+ "2024-05-01\thttps://example.com/1b.mp3\tSUCCESSFUL\t0\t-\tabcdef\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(new SaveFileEntry(firstDate, "https://example.com/1b.mp3", DownloadState.SUCCESSFUL, 0, null, "abcdef"),
+					handler.get(firstDate));
+			Assertions.assertEquals(new SaveFileEntry(secondDate, "https://example.com/2.mp3", DownloadState.QUEUED), handler.get(secondDate));
+			Assertions.assertEquals(List.of(secondDate, firstDate), handler.getEpisodes().stream().map(SaveFileEntry::episodeDate).toList());
+		}
+	}
+
+	@Test
+	void appendsChangedEpisodesOnly() throws IOException {
+		Path saveFile = write(v2_1Header
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n"
+				+ "2024-05-02\thttps://example.com/2.mp3\tQUEUED\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			handler.add(handler.get(secondDate));
+			handler.add(handler.get(firstDate).withDownloadState(DownloadState.SUCCESSFUL));
+			handler.forceSave();
+		}
+
+		Assertions.assertEquals(v2_1Header
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n"
+				+ "2024-05-02\thttps://example.com/2.mp3\tQUEUED\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tSUCCESSFUL\n", Files.readString(saveFile));
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(DownloadState.SUCCESSFUL, handler.get(firstDate).downloadState());
+		}
+	}
+
+	@Test
+	void skipsIncompleteTrailingLine() throws IOException {
+		Path saveFile = write(v2_1Header
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tSUCC");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(DownloadState.QUEUED, handler.get(firstDate).downloadState());
+			handler.add(new SaveFileEntry(secondDate, "https://example.com/2.mp3", DownloadState.QUEUED));
+		}
+
+		// The cut off line must not end up in front of the next one
+		Assertions.assertEquals(v2_1Header
+				+ "2024-05-02\thttps://example.com/2.mp3\tQUEUED\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n", Files.readString(saveFile));
+	}
+
+	@Test
+	void skipsMalformedLines() throws IOException {
+		Path saveFile = write(v2_1Header
+				+ "2024-05-01\thttps://example.com/1.mp3\tQUEUED\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tUNKNOWN\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\n"
+				+ "not-a-date\thttps://example.com/1.mp3\tSUCCESSFUL\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(DownloadState.QUEUED, handler.get(firstDate).downloadState());
+			Assertions.assertEquals(1, handler.getEpisodes().size());
+		}
+	}
+
+	@Test
+	void readsAndConvertsVersion1() throws IOException {
+		Path saveFile = write(v1Header
+				+ "2024-05-02\thttps://example.com/2.mp3\tFAILED\t3\t2024-05-04T08:30:00Z\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tSUCCESSFUL\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(new SaveFileEntry(secondDate, "https://example.com/2.mp3", DownloadState.FAILED, 3,
+					Instant.parse("2024-05-04T08:30:00Z"), null), handler.get(secondDate));
+			Assertions.assertEquals(DownloadState.SUCCESSFUL, handler.get(firstDate).downloadState());
+			handler.add(handler.get(secondDate).withRetry(0, null).withDownloadState(DownloadState.SUCCESSFUL));
+		}
+
+		Assertions.assertEquals(v2_1Header
+				+ "2024-05-02\thttps://example.com/2.mp3\tSUCCESSFUL\n"
+				+ "2024-05-01\thttps://example.com/1.mp3\tSUCCESSFUL\n", Files.readString(saveFile));
+	}
+
+	@Test
+	void compactsVersion2_0BeforeAppendingDigests() throws IOException {
+		Path saveFile = write(v2Header + "2024-05-01\thttps://example.com/1.mp3\tDOWNLOADING\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			handler.add(handler.get(firstDate).withDownloadState(DownloadState.SUCCESSFUL).withSha256("abcdef"));
+		}
+
+		Assertions.assertEquals(v2_1Header + "2024-05-01\thttps://example.com/1.mp3\tSUCCESSFUL\t0\t-\tabcdef\n", Files.readString(saveFile));
+	}
+
+	@Test
+	void compactsOnceTheJournalHasGrown() throws IOException {
+		Path saveFile = dir.resolve("kfdl-state.txt");
+		int updates = 300;
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			for (int i = 1; i <= updates; i++) {
+				handler.add(new SaveFileEntry(firstDate, "https://example.com/1.mp3", DownloadState.FAILED, i, null, null));
+				handler.forceSave();
+			}
+		}
+
+		List<String> lines = Files.readAllLines(saveFile);
+		Assertions.assertTrue(lines.size() < updates, "Journal wasn't compacted, it has " + lines.size() + " lines");
+		Assertions.assertEquals(v2_1Header.trim(), lines.get(0));
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertEquals(updates, handler.get(firstDate).attempts());
+		}
+	}
+
+	@Test
+	void ignoresInvalidHeader() throws IOException {
+		Path saveFile = write("something else\n2024-05-01\thttps://example.com/1.mp3\tQUEUED\n");
+
+		try (SaveFileHandler handler = open(saveFile)) {
+			Assertions.assertNull(handler.get(firstDate));
+			Assertions.assertTrue(handler.getEpisodes().isEmpty());
+		}
+	}
+
+	private Path write(String content) throws IOException {
+		return Files.writeString(dir.resolve("kfdl-state.txt"), content);
+	}
+
+	private static SaveFileHandler open(Path saveFile) {
+		return new SaveFileHandler(saveFile, Duration.ofMinutes(1), false);
+	}
+}
@@ -0,0 +1,172 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.nebelnidas.kfdl.core.EpisodePage.PageNode;
+
+class StreamingEpisodePageTest {
+	private static final String html = """
+			<!DOCTYPE html>
+			<html>
+			<head>
+				<title>Ignored <div id="a">not a section</div></title>
+				<script>if (a < b) { document.write('<div id="a">'); }</script>
+			</head>
+			<body>
+				<!-- <div id="a">commented out</div> -->
+				<div id="a" class="outer">
+					<div>
+						<div>
+							<div data-kind=first>Sonntag, 1.&nbsp;Dezember&nbsp;2024</div>
+							<div>second</div>
+							<div>
+								<div><span>Moderation: </span><span>Anna Beispiel &amp; Co</span></div>
+							</div>
+						</div>
+					</div>
+				</div>
+				<section id="b">
+					<p>First paragraph<br>continued
+					<div>Implicitly closes the paragraph</div>
+					<span>Text&#x2019;s &#8211; entities &unknown; &amp</span></span>
+					<a href='/download/episode.mp3' download>Download</a>
+					<img src="cover.jpg">
+				</section>
+			</body>
+			</html>
+			""";
+
+	@Test
+	void selectsChildStepsByPosition() throws IOException {
+		StreamingEpisodePage page = parse(html, Set.of("a", "b"));
+
+		PageNode first = page.getFirstByXPath("//*[@id=\"a\"]/div/div/div[1]");
+		Assertions.assertNotNull(first);
+		Assertions.assertEquals("first", first.getAttribute("data-kind"));
+		Assertions.assertEquals("Sonntag, 1. Dezember 2024", first.asNormalizedText());
+
+		Assertions.assertEquals("second", page.getFirstByXPath("//*[@id=\"a\"]/div/div/div[2]").asNormalizedText());
+		Assertions.assertEquals(3, page.getByXPath("//*[@id=\"a\"]/div/div/div").size());
+		Assertions.assertTrue(page.getByXPath("//*[@id=\"a\"]/div/div/div[4]").isEmpty());
+
+		List<PageNode> spans = page.getByXPath("//*[@id=\"a\"]/div/div/div[last()]/div/span");
+		Assertions.assertEquals(2, spans.size());
+		Assertions.assertEquals("Moderation:", spans.get(0).asNormalizedText());
+		Assertions.assertEquals("Anna Beispiel & Co", spans.get(1).asNormalizedText());
+		Assertions.assertSame(spans.get(1), spans.get(0).getNextSibling());
+		Assertions.assertSame(spans.get(0), spans.get(1).getPreviousSibling());
+		Assertions.assertNull(spans.get(0).getPreviousSibling());
+		Assertions.assertNull(spans.get(1).getNextSibling());
+	}
+
+	@Test
+	void skipsCommentsAndRawText() throws IOException {
+		StreamingEpisodePage page = parse(html, Set.of("a"));
+
+		PageNode section = page.getFirstByXPath("//*[@id=\"a\"]");
+		Assertions.assertNotNull(section);
+		Assertions.assertEquals("div", section.getNodeName());
+		Assertions.assertEquals("outer", section.getAttribute("class"));
+	}
+
+	@Test
+	void toleratesSloppyMarkup() throws IOException {
+		StreamingEpisodePage page = parse(html, Set.of("a", "b"));
+
+		PageNode paragraph = page.getFirstByXPath("//*[@id=\"b\"]/p");
+		Assertions.assertNotNull(paragraph);
+		Assertions.assertEquals("First paragraph\ncontinued", paragraph.asNormalizedText());
+		Assertions.assertEquals("Implicitly closes the paragraph", page.getFirstByXPath("//*[@id=\"b\"]/div").asNormalizedText());
+		Assertions.assertEquals("Text’s – entities &unknown; &amp", page.getFirstByXPath("//*[@id=\"b\"]/span").asNormalizedText());
+
+		PageNode link = page.getFirstByXPath("//*[@id=\"b\"]/a");
+		Assertions.assertEquals("/download/episode.mp3", link.getAttribute("href"));
+		Assertions.assertEquals("", link.getAttribute("download"));
+		Assertions.assertNull(link.getAttribute("missing"));
+
+		PageNode image = page.getFirstByXPath("//*[@id=\"b\"]/img");
+		Assertions.assertEquals("cover.jpg", image.getAttribute("src"));
+		Assertions.assertTrue(image.getChildNodes().isEmpty());
+
+		List<PageNode> children = page.getFirstByXPath("//*[@id=\"b\"]").getChildNodes();
+		Assertions.assertEquals(PageNode.TEXT_NODE_NAME, children.get(0).getNodeName());
+		Assertions.assertEquals(List.of("p", "div", "span", "a", "img"), children.stream()
+				.map(PageNode::getNodeName)
+				.filter(name -> !name.equals(PageNode.TEXT_NODE_NAME))
+				.toList());
+	}
+
+	@Test
+	void stopsReadingAfterTheLastSection() throws IOException {
+		String tail = "<div>" + "x".repeat(1024 * 1024) + "</div>";
+		CountingReader reader = new CountingReader(new StringReader(html + tail));
+		StreamingEpisodePage page = StreamingEpisodePage.parse(reader, Set.of("a", "b"));
+
+		Assertions.assertNotNull(page.getFirstByXPath("//*[@id=\"b\"]/img"));
+		Assertions.assertTrue(reader.count < html.length() + tail.length() / 2, "Read " + reader.count + " characters");
+	}
+
+	@Test
+	void handlesMissingSections() throws IOException {
+		StreamingEpisodePage page = parse(html, Set.of("a", "missing"));
+
+		Assertions.assertTrue(page.getByXPath("//*[@id=\"missing\"]/div").isEmpty());
+		Assertions.assertNull(page.getFirstByXPath("//*[@id=\"b\"]"));
+		Assertions.assertNotNull(page.getFirstByXPath("//*[@id=\"a\"]/div"));
+	}
+
+	@Test
+	void rejectsUnsupportedXPaths() throws IOException {
+		StreamingEpisodePage page = parse(html, Set.of("a"));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> page.getByXPath("//div[@class=\"outer\"]"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> page.getByXPath("//*[@id=\"a\"]//span"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> page.getByXPath("//*[@id=\"a\"]/div[position()>1]"));
+	}
+
+	@Test
+	void looksUpResponseHeaders() throws IOException {
+		Map<String, String> headers = Map.of("Content-Type", "text/html; charset=UTF-8");
+		StreamingEpisodePage page = StreamingEpisodePage.parse(new StringReader(html), Set.of("a"), headers::get);
+
+		Assertions.assertEquals("text/html; charset=UTF-8", page.getResponseHeader("Content-Type"));
+		Assertions.assertNull(page.getResponseHeader("ETag"));
+	}
+
+	private static StreamingEpisodePage parse(String html, Set<String> sectionIds) throws IOException {
+		return StreamingEpisodePage.parse(new StringReader(html), sectionIds);
+	}
+
+	private static final class CountingReader extends Reader {
+		private final Reader delegate;
+		private long count;
+
+		CountingReader(Reader delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			int read = delegate.read(buffer, offset, length);
+
+			if (read > 0) {
+				count += read;
+			}
+
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.nebelnidas.kfdl.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TitleNormalizerTest {
+	@Test
+	void normalizesFixtureTitles() throws IOException {
+		List<String[]> rows = readFixture();
+		Assertions.assertFalse(rows.isEmpty());
+
+		for (String[] row : rows) {
+			LocalDate publicationDate = LocalDate.parse(row[0]);
+			String normalized = TitleNormalizer.normalize(row[1], publicationDate);
+			Assertions.assertEquals(row[2], normalized, () -> "Title '" + row[1] + "' published on " + publicationDate);
+			Assertions.assertEquals(LocalDate.parse(row[3]), TitleNormalizer.getDate(normalized), () -> "Date of '" + normalized + "'");
+		}
+	}
+
+	@Test
+	void collapsesWhitespace() {
+		LocalDate date = LocalDate.of(2024, 3, 5);
+
+		Assertions.assertEquals("KONTRAFUNK aktuell vom 05. März 2024", TitleNormalizer.normalize("KONTRAFUNK  aktuell vom\t 5. März  2024", date));
+		Assertions.assertEquals("KONTRAFUNK aktuell vom 05. März 2024", TitleNormalizer.normalize("KONTRAFUNK\r\n\taktuell vom 5. März\n\n2024", date));
+		// Single whitespace characters other than spaces are kept
+		Assertions.assertEquals("KONTRAFUNK\taktuell vom 05. März 2024", TitleNormalizer.normalize("KONTRAFUNK\taktuell vom 5.3.2024", date));
+		// A no-break space isn't matched by \s
+		Assertions.assertThrows(AssertionError.class, () -> TitleNormalizer.normalize("KONTRAFUNK aktuell vom  5.3.2024", date));
+	}
+
+	@Test
+	void normalizesNumericDates() {
+		Assertions.assertEquals("KONTRAFUNK aktuell vom 09. August 2023",
+				TitleNormalizer.normalize("Kontrafunk aktuell am 9.8.2023", LocalDate.of(2023, 8, 9)));
+		Assertions.assertEquals("KONTRAFUNK aktuell vom 12. Oktober 2022",
+				TitleNormalizer.normalize("KONTRAFUNK aktuell 12.10.22", LocalDate.of(2022, 10, 12)));
+		Assertions.assertEquals("KONTRAFUNK: Der Wochenrückblick vom 01. August 2023",
+				TitleNormalizer.normalize("KONTRAFUNK: der Wochenrückblick vom 1. August.2023", LocalDate.of(2023, 8, 1)));
+		Assertions.assertThrows(AssertionError.class, () -> TitleNormalizer.normalize("KONTRAFUNK aktuell vom 9.13.2023", LocalDate.of(2023, 8, 9)));
+		Assertions.assertThrows(AssertionError.class, () -> TitleNormalizer.normalize("KONTRAFUNK aktuell", LocalDate.of(2023, 8, 9)));
+	}
+
+	@Test
+	void readsDates() {
+		Assertions.assertEquals(LocalDate.of(2024, 3, 5), TitleNormalizer.getDate("KONTRAFUNK aktuell vom 05. März 2024"));
+		Assertions.assertEquals(LocalDate.of(2024, 1, 31), TitleNormalizer.getDate("KONTRAFUNK aktuell vom 31. Januar 2024"));
+		Assertions.assertEquals(LocalDate.of(2024, 2, 29), TitleNormalizer.getDate("KONTRAFUNK aktuell vom 29. Februar 2024"));
+		Assertions.assertEquals(LocalDate.of(2023, 12, 28), TitleNormalizer.getDate("KONTRAFUNK: Der Wochenrückblick vom 28. Dezember 2023"));
+		Assertions.assertEquals(LocalDate.of(2023, 2, 28), TitleNormalizer.getDate("KONTRAFUNK aktuell vom 29. Februar 2023"));
+		Assertions.assertThrows(RuntimeException.class, () -> TitleNormalizer.getDate("KONTRAFUNK aktuell vom 05. Mrz 2024"));
+		Assertions.assertThrows(RuntimeException.class, () -> TitleNormalizer.getDate("KONTRAFUNK aktuell vom 00. März 2024"));
+	}
+
+	/**
+	 * Reads {@code titles.tsv}, which the title benchmark uses as well.
+	 */
+	private static List<String[]> readFixture() throws IOException {
+		try (InputStream in = TitleNormalizerTest.class.getClassLoader().getResourceAsStream("titles.tsv")) {
+			Assertions.assertNotNull(in, "Missing fixture titles.tsv");
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			return reader.lines()
+					.filter(line -> !line.isBlank() && !line.startsWith("#"))
+					.map(line -> line.split("\t"))
+					.toList();
+		}
+	}
+}